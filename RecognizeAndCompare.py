@@ -3,9 +3,11 @@
 
 import sys
 import json
+import base64
 import os
 import difflib
-from typing import List, Dict, Any
+import time
+from typing import Callable, List, Dict, Any, Optional
 import tempfile
 
 # unittest から RecognizeAndCompare.sr / .whisper をパッチできるようにモジュール変数として保持
@@ -58,25 +60,45 @@ def ensure_wav_for_engine(audio_path: str, engine: str) -> str:
 _TEMP_FILES: List[str] = []
 
 
-def recognize_audio_google(audio_path: str, language_code: str) -> str:
-    """Google Speech-to-Text APIを使用した音声認識"""
+class TransientRecognitionError(Exception):
+    """再試行で回復しうる失敗（ネットワークエラーなど）"""
+
+
+def is_transient(e: Exception) -> bool:
+    """通信エラーなど一時的な失敗かどうか（speech_recognition の RequestError を含む）"""
+    return isinstance(e, (TimeoutError, ConnectionError)) or type(e).__name__ == "RequestError"
+
+
+def load_audio_data(recognizer: Any, audio_path: str, pcm: Optional[bytes], sample_rate: int) -> Any:
+    """speech_recognition の AudioData を作成（Java側で変換済みのPCMがあればファイルを読まない）"""
+    if pcm is not None:
+        return sr.AudioData(pcm, sample_rate, 2)
+    with sr.AudioFile(audio_path) as source:
+        return recognizer.record(source)
+
+
+def recognize_audio_google(audio_path: str, language_code: str,
+                           pcm: Optional[bytes] = None, sample_rate: int = 16000) -> str:
+    """Google Speech-to-Text APIを使用した音声認識（pcm には16bit・モノラルのPCMを渡せる）"""
     global sr
     try:
         if sr is None:
             import speech_recognition as _sr  # 遅延インポート
             sr = _sr
         recognizer = sr.Recognizer()
-        with sr.AudioFile(audio_path) as source:
-            audio = recognizer.record(source)
+        audio = load_audio_data(recognizer, audio_path, pcm, sample_rate)
         return recognizer.recognize_google(audio, language=language_code)
     except ImportError:
         raise Exception("SpeechRecognitionが未インストールです。'pip install -r requirements.txt' を実行してください。")
     except Exception as e:
+        if is_transient(e):
+            raise TransientRecognitionError(f"Google recognition failed: {str(e)}")
         raise Exception(f"Google recognition failed: {str(e)}")
 
 
-def recognize_audio_whisper(audio_path: str, language_code: str, model_name: str) -> str:
-    """Whisperを使用した音声認識"""
+def recognize_audio_whisper(audio_path: str, language_code: str, model_name: str,
+                            pcm: Optional[bytes] = None) -> str:
+    """Whisperを使用した音声認識（pcm には16kHz・16bit・モノラルのPCMを渡せ、その場合はffmpegを起動しない）"""
     global whisper
     try:
         if whisper is None:
@@ -89,7 +111,12 @@ def recognize_audio_whisper(audio_path: str, language_code: str, model_name: str
             _whisper_model_cache[model_name] = whisper.load_model(model_name)
 
         model = _whisper_model_cache[model_name]
-        result = model.transcribe(audio_path, language=language_code)
+        if pcm is not None:
+            import numpy as np
+            audio = np.frombuffer(pcm, dtype=np.int16).astype(np.float32) / 32768.0
+            result = model.transcribe(audio, language=language_code)
+        else:
+            result = model.transcribe(audio_path, language=language_code)
         return result.get("text", "")
     except ImportError:
         raise Exception("Whisperが未インストールです。'pip install -r requirements.txt' を実行してください（torch含む）。")
@@ -97,16 +124,16 @@ def recognize_audio_whisper(audio_path: str, language_code: str, model_name: str
         raise Exception(f"Whisper recognition failed: {str(e)}")
 
 
-def recognize_audio_sphinx(audio_path: str, language_code: str) -> str:
-    """Sphinxを使用した音声認識"""
+def recognize_audio_sphinx(audio_path: str, language_code: str,
+                           pcm: Optional[bytes] = None, sample_rate: int = 16000) -> str:
+    """Sphinxを使用した音声認識（pcm には16bit・モノラルのPCMを渡せる）"""
     global sr
     try:
         if sr is None:
             import speech_recognition as _sr  # 遅延インポート
             sr = _sr
         recognizer = sr.Recognizer()
-        with sr.AudioFile(audio_path) as source:
-            audio = recognizer.record(source)
+        audio = load_audio_data(recognizer, audio_path, pcm, sample_rate)
         return recognizer.recognize_sphinx(audio)
     except ImportError:
         raise Exception("SpeechRecognitionが未インストールです。'pip install -r requirements.txt' を実行してください。")
@@ -114,29 +141,54 @@ def recognize_audio_sphinx(audio_path: str, language_code: str) -> str:
         raise Exception(f"Sphinx recognition failed: {str(e)}")
 
 
-def process_task(task: Dict[str, Any], engine: str, language_code: str, whisper_model: str) -> Dict[str, Any]:
-    """単一のタスクを処理"""
+def recognize(audio_path: str, engine: str, language_code: str, whisper_model: str,
+              on_stage: Optional[Callable[[str], None]] = None,
+              pcm: Optional[bytes] = None, sample_rate: int = 16000) -> str:
+    """エンジンを選択して音声認識を行う（on_stage には各段階の開始時に段階名を渡す）
+
+    pcm にJava側で変換済みの16bit・モノラルのPCMを渡した場合は、ファイルの変換・読み込みを行わない。
+    """
+    if on_stage:
+        on_stage("decode")
+    # Google/Sphinx は WAV 変換を試行（Whisper は元のフォーマットを使う）
+    prepped_path = audio_path if pcm is not None else ensure_wav_for_engine(audio_path, engine)
+    if prepped_path != audio_path:
+        _TEMP_FILES.append(prepped_path)
+
+    if on_stage:
+        on_stage("recognize")
+    if engine == "google":
+        return recognize_audio_google(prepped_path, language_code, pcm, sample_rate)
+    elif engine == "whisper":
+        # Whisperは16kHzのPCMだけをそのまま受け取れる
+        return recognize_audio_whisper(audio_path, language_code, whisper_model,
+                                       pcm if sample_rate == 16000 else None)
+    elif engine == "sphinx":
+        return recognize_audio_sphinx(prepped_path, language_code, pcm, sample_rate)
+    else:
+        raise Exception(f"Unknown engine: {engine}")
+
+
+def process_task(task: Dict[str, Any], engine: str, language_code: str, whisper_model: str,
+                 score: bool = True, on_stage: Optional[Callable[[str], None]] = None) -> Dict[str, Any]:
+    """単一のタスクを処理（score=False の場合は認識のみ行い、比較は呼び出し側に任せる）
+
+    on_stage には処理段階（decode / recognize / score）の開始時に段階名を渡す。
+    タスクに "pcm"（16bit・モノラルのPCMのbase64）と "sampleRate" があれば、ファイルの代わりにそれを認識する。
+    """
     try:
         audio_path = task["audioPath"]
         script_text = task["scriptText"]
         task_id = task["id"]
+        pcm = base64.b64decode(task["pcm"]) if task.get("pcm") else None
+        sample_rate = int(task.get("sampleRate", 16000))
 
-        # Google/Sphinx は WAV 変換を試行（Whisper は元のフォーマットを使う）
-        prepped_path = ensure_wav_for_engine(audio_path, engine)
-        if prepped_path != audio_path:
-            _TEMP_FILES.append(prepped_path)
-
-        if engine == "google":
-            recognized_text = recognize_audio_google(prepped_path, language_code)
-        elif engine == "whisper":
-            recognized_text = recognize_audio_whisper(audio_path, language_code, whisper_model)
-        elif engine == "sphinx":
-            recognized_text = recognize_audio_sphinx(prepped_path, language_code)
-        else:
-            raise Exception(f"Unknown engine: {engine}")
+        recognized_text = recognize(audio_path, engine, language_code, whisper_model, on_stage, pcm, sample_rate)
 
-        similarity = calculate_similarity(script_text, recognized_text)
-        diff = get_diff(script_text, recognized_text)
+        if score and on_stage:
+            on_stage("score")
+        similarity = calculate_similarity(script_text, recognized_text) if score else 0.0
+        diff = get_diff(script_text, recognized_text) if score else []
 
         return {
             "id": task_id,
@@ -153,14 +205,101 @@ def process_task(task: Dict[str, Any], engine: str, language_code: str, whisper_
             "script_text": task.get("scriptText", ""),
             "recognized_text": "",
             "diff": [],
-            "error": str(e)
+            "error": str(e),
+            "retryable": isinstance(e, TransientRecognitionError)
         }
 
 
+def cleanup_temp_files():
+    """記録済みテンポラリファイルを削除"""
+    while _TEMP_FILES:
+        temp_file = _TEMP_FILES.pop()
+        try:
+            if os.path.exists(temp_file):
+                os.unlink(temp_file)
+        except Exception:
+            pass
+
+
+def stage_event(task_id: str, stage: str, started: float) -> str:
+    """処理段階の通知行（"event" キーで結果の行と区別する）"""
+    elapsed_ms = int((time.monotonic() - started) * 1000)
+    return json.dumps({"event": "stage", "id": task_id, "stage": stage, "elapsedMs": elapsed_ms},
+                      ensure_ascii=False)
+
+
+def run_worker(engine: str, language_code: str, whisper_model: str, score: bool = True,
+               events: bool = False) -> None:
+    """常駐ワーカーモード
+
+    標準入力から1行1タスクのJSONを受け取り、1行1結果のJSONを標準出力に返す。
+    EOFまたは空行で終了する。モデルはプロセス内にキャッシュされるため、
+    Java側はプロセスを使い回すことでロード時間を1回分に抑えられる。
+    score=False の場合は類似度・差分を計算しない（Java側で採点する）。
+    events=True の場合は結果の行の前に、処理段階ごとの通知行
+    {"event": "stage", "id", "stage", "elapsedMs"} を出力する。
+    """
+    global whisper
+    # プロトコル用の出力を確保し、ライブラリのprintはstderrに逃がす
+    proto_out = sys.stdout
+    sys.stdout = sys.stderr
+
+    # Whisperは起動時にモデルを温めておく（失敗時はタスク処理時にエラーとして返す）
+    if engine == "whisper":
+        try:
+            if whisper is None:
+                import whisper as _whisper  # 遅延インポート
+                whisper = _whisper
+            if whisper_model not in _whisper_model_cache:
+                _whisper_model_cache[whisper_model] = whisper.load_model(whisper_model)
+        except Exception as e:
+            print(f"Warning: Could not preload whisper model: {e}", file=sys.stderr)
+
+    proto_out.write(json.dumps({"ready": True}) + "\n")
+    proto_out.flush()
+
+    while True:
+        line = sys.stdin.readline()
+        if not line or not line.strip():
+            break
+        try:
+            task = json.loads(line)
+        except Exception as e:
+            result = {
+                "id": "unknown",
+                "similarity": 0.0,
+                "script_text": "",
+                "recognized_text": "",
+                "diff": [],
+                "error": f"Invalid task line: {e}"
+            }
+        else:
+            on_stage = None
+            if events:
+                task_id = str(task.get("id", "unknown"))
+                started = time.monotonic()
+
+                def on_stage(stage: str) -> None:
+                    proto_out.write(stage_event(task_id, stage, started) + "\n")
+                    proto_out.flush()
+            result = process_task(task, engine, language_code, whisper_model, score, on_stage)
+        finally:
+            cleanup_temp_files()
+        proto_out.write(json.dumps(result, ensure_ascii=False) + "\n")
+        proto_out.flush()
+
+
 def main():
     """メイン関数"""
-    if len(sys.argv) != 5:
-        print("Usage: python RecognizeAndCompare.py <engine> <language_code> <whisper_model> <json_file>", file=sys.stderr)
+    if len(sys.argv) >= 5 and sys.argv[1] == "--worker":
+        flags = set(sys.argv[5:])
+        run_worker(sys.argv[2], sys.argv[3], sys.argv[4], "--no-score" not in flags, "--events" in flags)
+        return
+
+    ndjson = len(sys.argv) == 6 and sys.argv[5] == "--ndjson"
+    if len(sys.argv) != 5 and not ndjson:
+        print("Usage: python RecognizeAndCompare.py <engine> <language_code> <whisper_model> <json_file> [--ndjson]", file=sys.stderr)
+        print("       python RecognizeAndCompare.py --worker <engine> <language_code> <whisper_model> [--no-score] [--events]", file=sys.stderr)
         sys.exit(1)
 
     engine = sys.argv[1]
@@ -183,34 +322,35 @@ def main():
             print(f"Processing task {i+1}/{len(tasks)} ({progress}%)", file=sys.stderr)
 
             result = process_task(task, engine, language_code, whisper_model)
-            results.append(result)
+            if ndjson:
+                # 1結果1行で逐次出力（呼び出し側は届いた順に処理できる）
+                print(json.dumps(result, ensure_ascii=False), flush=True)
+            else:
+                results.append(result)
 
         # 結果をJSONとして出力
-        output = {"results": results}
-        print(json.dumps(output, ensure_ascii=False, indent=2))
+        if not ndjson:
+            output = {"results": results}
+            print(json.dumps(output, ensure_ascii=False, indent=2))
 
     except Exception as e:
         # エラー結果を出力
-        error_output = {
-            "results": [{
-                "id": "error",
-                "similarity": 0.0,
-                "script_text": "",
-                "recognized_text": "",
-                "diff": [],
-                "error": str(e)
-            }]
+        error_result = {
+            "id": "error",
+            "similarity": 0.0,
+            "script_text": "",
+            "recognized_text": "",
+            "diff": [],
+            "error": str(e)
         }
-        print(json.dumps(error_output, ensure_ascii=False, indent=2))
+        if ndjson:
+            print(json.dumps(error_result, ensure_ascii=False))
+        else:
+            print(json.dumps({"results": [error_result]}, ensure_ascii=False, indent=2))
         sys.exit(1)
     finally:
         # テンポラリファイルのクリーンアップ
-        for temp_file in _TEMP_FILES:
-            try:
-                if os.path.exists(temp_file):
-                    os.unlink(temp_file)
-            except Exception:
-                pass
+        cleanup_temp_files()
 
 
 if __name__ == "__main__":
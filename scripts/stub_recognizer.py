@@ -0,0 +1,98 @@
+#!/usr/bin/env python
+# -*- coding: utf-8 -*-
+"""ベンチマーク用の認識スタブ
+
+RecognizeAndCompare.py の常駐ワーカーモードと同じプロトコルで動き、
+音声を読まずに台本テキストを少し崩したものを認識結果として返す。
+Java側の処理（ワーカーとの通信・振り分け・採点）の負荷を、
+Whisperなどのモデルと切り離して測るために使う。
+
+    python stub_recognizer.py --worker <engine> <language_code> <settings> [--no-score] [--events]
+
+<settings> は Whisper のモデル名の位置に "latency=20,jitter=10,errors=0.01" の形式で指定する
+（latency: 1件あたりの待ち時間(ミリ秒), jitter: 待ち時間のばらつき(ミリ秒), errors: エラーにする割合）。
+待ち時間のばらつきとエラーはタスクのIDから決めるため、同じ入力なら毎回同じ結果になる。
+"""
+
+import json
+import sys
+import time
+import zlib
+from typing import Dict
+
+
+def parse_settings(text: str) -> Dict[str, float]:
+    """latency=20,jitter=10,errors=0.01 形式の設定を読む（不明なキーや不正な値は無視）"""
+    settings = {"latency": 0.0, "jitter": 0.0, "errors": 0.0}
+    for part in text.split(","):
+        key, _, value = part.partition("=")
+        if key.strip() in settings:
+            try:
+                settings[key.strip()] = float(value)
+            except ValueError:
+                pass
+    return settings
+
+
+def fraction(task_id: str, salt: str) -> float:
+    """IDから決まる 0.0〜1.0 の値"""
+    return (zlib.crc32((salt + task_id).encode("utf-8")) & 0xFFFFFFFF) / 0xFFFFFFFF
+
+
+def recognize(script: str) -> str:
+    """台本の10文字に1文字を落とした文字列を認識結果とする"""
+    return "".join(c for i, c in enumerate(script) if i % 10 != 9)
+
+
+def run_worker(settings: Dict[str, float], events: bool) -> None:
+    out = sys.stdout
+    out.write(json.dumps({"ready": True}) + "\n")
+    out.flush()
+
+    while True:
+        line = sys.stdin.readline()
+        if not line or not line.strip():
+            break
+        try:
+            task = json.loads(line)
+        except Exception as e:
+            task = {"id": "unknown", "scriptText": ""}
+            error = f"Invalid task line: {e}"
+        else:
+            error = None
+        task_id = str(task.get("id", "unknown"))
+        script = task.get("scriptText") or ""
+
+        if events:
+            out.write(json.dumps({"event": "stage", "id": task_id, "stage": "recognize", "elapsedMs": 0},
+                                 ensure_ascii=False) + "\n")
+            out.flush()
+
+        delay = settings["latency"] + settings["jitter"] * (2 * fraction(task_id, "jitter") - 1)
+        if delay > 0:
+            time.sleep(delay / 1000)
+        if error is None and fraction(task_id, "error") < settings["errors"]:
+            error = "stub: simulated recognition failure"
+
+        result = {
+            "id": task_id,
+            "similarity": 0.0,
+            "script_text": script,
+            "recognized_text": "" if error else recognize(script),
+            "diff": [],
+            "error": error,
+        }
+        out.write(json.dumps(result, ensure_ascii=False) + "\n")
+        out.flush()
+
+
+def main() -> None:
+    if len(sys.argv) < 5 or sys.argv[1] != "--worker":
+        print("Usage: python stub_recognizer.py --worker <engine> <language_code> <settings> [--no-score] [--events]",
+              file=sys.stderr)
+        sys.exit(1)
+    run_worker(parse_settings(sys.argv[4]), "--events" in sys.argv[5:])
+
+
+if __name__ == "__main__":
+    main()
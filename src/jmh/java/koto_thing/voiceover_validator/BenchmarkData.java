@@ -0,0 +1,168 @@
+package koto_thing.voiceover_validator;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * ベンチマーク用の合成データ（台本CSV・ワーカーの出力・検証結果）を作る
+ * 乱数の種は固定し、実行ごとに同じデータで比較できるようにする
+ */
+final class BenchmarkData {
+
+    private static final String[] WORDS = {
+            "おはよう", "ございます", "今日は", "いい天気", "ですね", "勇者よ", "よくぞ", "来た", "この剣を",
+            "受け取れ", "ありがとう", "また会おう", "気をつけて", "行ってらっしゃい", "ここは", "始まりの村",
+            "魔王", "倒す", "ために", "旅に出る", "ＨＰ", "回復", "した！", "レベル", "上がった", "、", "。",
+            "「", "」", "？", "ー", "カタカナ", "ひらがな", "ABC", "123"
+    };
+
+    private BenchmarkData() {}
+
+    /**
+     * 台本のID（ゼロ埋めの連番）
+     * @param i 番号
+     * @return ID
+     */
+    static String id(int i) {
+        return String.format(Locale.ROOT, "vo_%07d", i);
+    }
+
+    /**
+     * 日本語のセリフを作る
+     * @param random 乱数
+     * @param length おおよその文字数
+     * @return セリフ
+     */
+    static String line(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length + 8);
+        while (sb.length() < length)
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+        return sb.toString();
+    }
+
+    /**
+     * 認識結果らしく、セリフの1割ほどの文字を置き換え・欠落させる（短いセリフでも必ず1か所は違える）
+     * @param random 乱数
+     * @param script 元のセリフ
+     * @return 認識テキスト
+     */
+    static String recognized(Random random, String script) {
+        StringBuilder sb = new StringBuilder(script.length());
+        int offset = random.nextInt(10);
+        for (int i = 0; i < script.length(); i++) {
+            int r = (i + offset) % 10;
+            if (r == 0)
+                continue;
+            sb.append(r == 5 ? 'あ' : script.charAt(i));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 台本CSVの全行（ヘッダを含む）をメモリ上に作る
+     * @param rows データ行の数
+     * @return 全行
+     */
+    static List<String[]> scriptRows(int rows) {
+        Random random = new Random(rows);
+        List<String[]> list = new ArrayList<>(rows + 1);
+        list.add(new String[] { "id", "context", "note" });
+        for (int i = 0; i < rows; i++)
+            list.add(new String[] { id(i), line(random, 10 + random.nextInt(50)), "" });
+        return list;
+    }
+
+    /**
+     * 台本CSVを書き出す（50行に1行は、カンマ・改行・引用符を含むクォートつきのフィールドにする）
+     * @param file 出力先
+     * @param rows データ行の数
+     * @throws IOException 書き込みに失敗した場合
+     */
+    static void writeScriptCsv(Path file, int rows) throws IOException {
+        Random random = new Random(rows);
+        try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            w.write("id,context,note\n");
+            for (int i = 0; i < rows; i++) {
+                w.write(id(i));
+                w.write(',');
+                w.write(line(random, 10 + random.nextInt(50)));
+                w.write(',');
+                if (i % 50 == 0)
+                    w.write("\"演出メモ, \"\"小声で\"\"\n2行目\"");
+                w.write('\n');
+            }
+        }
+    }
+
+    /**
+     * ワーカーの出力（1行1JSON）を作る
+     * @param count 結果の件数
+     * @param events 結果の前に処理段階の通知行を入れる場合はtrue
+     * @return 出力全体
+     */
+    static String ndjson(int count, boolean events) {
+        Random random = new Random(count);
+        StringBuilder sb = new StringBuilder(count * 256);
+        for (int i = 0; i < count; i++) {
+            String id = id(i);
+            if (events) {
+                sb.append("{\"event\": \"stage\", \"id\": \"").append(id).append("\", \"stage\": \"decode\", \"elapsedMs\": 0}\n");
+                sb.append("{\"event\": \"stage\", \"id\": \"").append(id).append("\", \"stage\": \"recognize\", \"elapsedMs\": 12}\n");
+            }
+            appendResult(sb, random, id);
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * バッチ実行の出力（{"results": [...]}）を作る
+     * @param count 結果の件数
+     * @return 出力全体
+     */
+    static String batchJson(int count) {
+        Random random = new Random(count);
+        StringBuilder sb = new StringBuilder(count * 256);
+        sb.append("{\"results\": [");
+        for (int i = 0; i < count; i++) {
+            if (i > 0)
+                sb.append(", ");
+            appendResult(sb, random, id(i));
+        }
+        return sb.append("]}").toString();
+    }
+
+    private static void appendResult(StringBuilder sb, Random random, String id) {
+        String script = line(random, 10 + random.nextInt(50));
+        sb.append("{\"id\": \"").append(id)
+                .append("\", \"audioPath\": \"/data/voice/").append(id)
+                .append(".wav\", \"similarity\": 0.0, \"script_text\": \"").append(script)
+                .append("\", \"recognized_text\": \"").append(recognized(random, script))
+                .append("\", \"diff\": [], \"error\": null}");
+    }
+
+    /**
+     * 書き出し用の検証結果を作る（10件に1件はカンマやクォートを含む）
+     * @param count 件数
+     * @return 検証結果
+     */
+    static List<ValidationResult> results(int count) {
+        Random random = new Random(count);
+        List<ValidationResult> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String script = line(random, 10 + random.nextInt(50));
+            if (i % 10 == 0)
+                script = "「" + script + "」, \"強調\"";
+            list.add(new ValidationResult(id(i), random.nextDouble(), script, recognized(random, script),
+                    random.nextInt(10) == 0 ? "ng" : "ok"));
+        }
+        return list;
+    }
+}
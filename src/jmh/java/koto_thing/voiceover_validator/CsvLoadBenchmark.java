@@ -0,0 +1,60 @@
+package koto_thing.voiceover_validator;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 台本CSVの読み込み（文字コード判定・パース・索引の作成）の速さを測る
+ * 画面の loadCsvFile() と同じ手順で、ファイルから ScriptIndex を作るまでを1回とする
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvLoadBenchmark {
+
+    @Param({ "10000", "100000", "1000000" })
+    public int rows;
+
+    private Path csv;
+
+    @Setup(Level.Trial)
+    public void writeCsv() throws IOException {
+        csv = Files.createTempFile("vvt_bench_", ".csv");
+        BenchmarkData.writeScriptCsv(csv, rows);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteCsv() throws IOException {
+        Files.deleteIfExists(csv);
+    }
+
+    @Benchmark
+    public int load() throws IOException {
+        List<String[]> list = new ArrayList<>();
+        try (CsvReader reader = CsvReader.open(csv)) {
+            String[] row;
+            while ((row = reader.next()) != null)
+                list.add(row);
+        }
+        return ScriptIndex.build(list).ids().size();
+    }
+
+    @Benchmark
+    public int parseOnly() throws IOException {
+        int n = 0;
+        try (CsvReader reader = CsvReader.open(csv)) {
+            while (reader.next() != null)
+                n++;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,50 @@
+package koto_thing.voiceover_validator;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 検証結果のCSV書き出しの速さを測る
+ * 書式化だけ（出力を捨てる）と、ファイルへの書き込みを含む場合を比べる
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExportBenchmark {
+
+    @Param({ "10000", "100000" })
+    public int count;
+
+    private List<ValidationResult> results;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        results = BenchmarkData.results(count);
+        file = Files.createTempFile("vvt_bench_", ".csv");
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void format() throws IOException {
+        ResultExporter.writeCsv(Writer.nullWriter(), results);
+    }
+
+    @Benchmark
+    public void writeFile() throws IOException {
+        ResultExporter.writeCsv(file, results);
+    }
+}
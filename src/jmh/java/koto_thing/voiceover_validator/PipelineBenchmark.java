@@ -0,0 +1,220 @@
+package koto_thing.voiceover_validator;
+
+import com.google.gson.GsonBuilder;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 認識スタブ（scripts/stub_recognizer.py）を使って、検証の流れ全体のスループットを測る
+ * GUIの検証と同じ ValidationEngine（振り分け・ワーカーとの通信・採点）に合成したタスクを流し、
+ * ワーカー数ごとに 件数/秒・1件あたりの処理時間（p50/p99）・ヒープの最大使用量を出力する
+ * モデルを使わないため、GPUや音声ファイルがなくてもJava側の処理の負荷と並列度の効果を確認できる
+ *
+ * ./gradlew pipelineBenchmark -PbenchArgs="--tasks 5000 --workers 1,2,4,8 --latency 20"
+ */
+public final class PipelineBenchmark {
+
+    static final String USAGE = """
+            使用方法: PipelineBenchmark [オプション]
+              --tasks <n>              タスク数（既定: 2000）
+              --workers <n,n,...>      試すワーカー数（既定: 1,2,4,8）
+              --latency <ms>           スタブの1件あたりの待ち時間（既定: 20）
+              --jitter <ms>            待ち時間のばらつき（既定: 10）
+              --error-rate <0-1>       エラーにする割合（既定: 0）
+              --script-length <n>      台本テキストの文字数（既定: 40）
+              --pcm-seconds <sec>      タスクに付けるPCMの長さ（既定: 0 = 付けない）
+              --python <path>          Pythonの実行ファイル（既定: python）
+              --stub <path>            スタブのパス（既定: scripts/stub_recognizer.py）
+              --json <path>            結果をJSONでも書き出す
+            """;
+
+    /**
+     * ワーカー数ごとの測定結果
+     * @param workers ワーカー数
+     * @param tasks タスク数
+     * @param errors エラーになった件数
+     * @param seconds 全件の処理時間（秒）
+     * @param filesPerSecond 1秒あたりの件数
+     * @param p50Millis 1件あたりの処理時間の中央値（ミリ秒）
+     * @param p99Millis 1件あたりの処理時間の99パーセンタイル（ミリ秒）
+     * @param peakHeapMb ヒープの最大使用量（MB）
+     * @param efficiency スタブの待ち時間だけから求めた理論値に対する割合（待ち時間が0なら0）
+     */
+    record Row(int workers, int tasks, int errors, double seconds, double filesPerSecond,
+               double p50Millis, double p99Millis, double peakHeapMb, double efficiency) {}
+
+    private int tasks = 2000;
+    private int[] workers = { 1, 2, 4, 8 };
+    private double latency = 20;
+    private double jitter = 10;
+    private double errorRate = 0;
+    private int scriptLength = 40;
+    private double pcmSeconds = 0;
+    private String python = "python";
+    private String stub = "scripts/stub_recognizer.py";
+    private Path json;
+
+    private PipelineBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        PipelineBenchmark bench;
+        try {
+            bench = parse(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.print(USAGE);
+            System.exit(2);
+            return;
+        }
+        bench.run();
+    }
+
+    private static PipelineBenchmark parse(String[] args) {
+        PipelineBenchmark b = new PipelineBenchmark();
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            switch (a) {
+                case "--tasks" -> b.tasks = (int) number(args, ++i, a);
+                case "--workers" -> b.workers = numbers(args, ++i, a);
+                case "--latency" -> b.latency = number(args, ++i, a);
+                case "--jitter" -> b.jitter = number(args, ++i, a);
+                case "--error-rate" -> b.errorRate = number(args, ++i, a);
+                case "--script-length" -> b.scriptLength = (int) number(args, ++i, a);
+                case "--pcm-seconds" -> b.pcmSeconds = number(args, ++i, a);
+                case "--python" -> b.python = value(args, ++i, a);
+                case "--stub" -> b.stub = value(args, ++i, a);
+                case "--json" -> b.json = Paths.get(value(args, ++i, a));
+                default -> throw new IllegalArgumentException("不明なオプション: " + a);
+            }
+        }
+        if (b.tasks < 1 || b.workers.length == 0 || Arrays.stream(b.workers).anyMatch(w -> w < 1))
+            throw new IllegalArgumentException("--tasks と --workers には1以上を指定してください");
+        if (b.latency < 0 || b.jitter < 0 || b.jitter > b.latency || b.errorRate < 0 || b.errorRate > 1)
+            throw new IllegalArgumentException("--latency・--jitter（latency以下）・--error-rate（0〜1）の値が不正です");
+        return b;
+    }
+
+    private static String value(String[] args, int i, String name) {
+        if (i >= args.length)
+            throw new IllegalArgumentException(name + " に値がありません");
+        return args[i];
+    }
+
+    private static double number(String[] args, int i, String name) {
+        try {
+            return Double.parseDouble(value(args, i, name));
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException(name + " には数値を指定してください");
+        }
+    }
+
+    private static int[] numbers(String[] args, int i, String name) {
+        try {
+            return Arrays.stream(value(args, i, name).split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException(name + " にはカンマ区切りの整数を指定してください");
+        }
+    }
+
+    private void run() throws IOException, InterruptedException {
+        List<ProcessingTask> list = syntheticTasks();
+        System.err.printf(Locale.US, "%d件, スタブの待ち時間 %.0f±%.0fms, エラー率 %.1f%%, PCM %.1f秒%n",
+                tasks, latency, jitter, errorRate * 100, pcmSeconds);
+        System.err.println("ワーカー    件/秒   p50(ms)   p99(ms)  最大ヒープ(MB)  効率   エラー");
+
+        List<Row> rows = new ArrayList<>();
+        for (int w : workers) {
+            Row row = measure(list, w);
+            rows.add(row);
+            String efficiency = latency > 0 ? String.format(Locale.US, "%4.0f%%", row.efficiency() * 100) : "    -";
+            System.err.printf(Locale.US, "%6d  %8.1f  %8.1f  %8.1f  %14.1f  %s  %6d%n",
+                    row.workers(), row.filesPerSecond(), row.p50Millis(), row.p99Millis(),
+                    row.peakHeapMb(), efficiency, row.errors());
+        }
+
+        if (json != null) {
+            try (Writer out = Files.newBufferedWriter(json, StandardCharsets.UTF_8)) {
+                new GsonBuilder().setPrettyPrinting().create().toJson(rows, out);
+            }
+        }
+    }
+
+    /**
+     * 指定のワーカー数で全タスクを1回処理する（ワーカーの起動は測定に含めない）
+     */
+    private Row measure(List<ProcessingTask> list, int size) throws IOException, InterruptedException {
+        String settings = String.format(Locale.US, "latency=%s,jitter=%s,errors=%s", latency, jitter, errorRate);
+        PythonWorkerPool.Config config = new PythonWorkerPool.Config(python, stub, "stub", "ja-JP", settings, 1);
+        try (PythonWorkerPool pool = new PythonWorkerPool(config, size)) {
+            ValidationEngine engine = new ValidationEngine(pool, null, SimilarityEngine.difflibCompatible(), ScoringProfile.DEFAULT,
+                    RetryPolicy.DEFAULT, new Quarantine(RetryPolicy.QUARANTINE_STRIKES),
+                    new AudioPreprocessor(AudioPreprocessor.Settings.DEFAULT), null, null);
+
+            // 全ワーカーを起動し、JITを温める
+            engine.run(list.subList(0, Math.min(list.size(), size * 4)), (index, res) -> {}, () -> false);
+
+            System.gc();
+            List<MemoryPoolMXBean> heap = ManagementFactory.getMemoryPoolMXBeans().stream()
+                    .filter(p -> p.getType() == MemoryType.HEAP).toList();
+            heap.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+            // シャードのスレッドはタスクを続けて処理するので、前の結果からの経過時間が1件の処理時間になる
+            long start = System.nanoTime();
+            long[] latencies = new long[list.size()];
+            ThreadLocal<long[]> previous = ThreadLocal.withInitial(() -> new long[] { start });
+            AtomicInteger errors = new AtomicInteger();
+            engine.run(list, (index, res) -> {
+                long now = System.nanoTime();
+                long[] prev = previous.get();
+                latencies[index] = now - prev[0];
+                prev[0] = now;
+                if (res.error != null)
+                    errors.incrementAndGet();
+            }, () -> false);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            long peak = 0;
+            for (MemoryPoolMXBean p : heap)
+                peak += p.getPeakUsage().getUsed();
+
+            Arrays.sort(latencies);
+            double ideal = list.size() * latency / 1000 / size;
+            return new Row(size, list.size(), errors.get(), seconds, list.size() / seconds,
+                    percentile(latencies, 0.50) / 1e6, percentile(latencies, 0.99) / 1e6,
+                    peak / (1024.0 * 1024.0), ideal > 0 ? ideal / seconds : 0);
+        }
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+    }
+
+    /**
+     * 合成したタスク（音声ファイルは実在しないmp3のパスにして、Java側の変換を通らないようにする）
+     */
+    private List<ProcessingTask> syntheticTasks() {
+        Random random = new Random(tasks);
+        byte[] pcm = pcmSeconds > 0 ? new byte[(int) (pcmSeconds * AudioDecoder.SAMPLE_RATE) * 2] : null;
+        List<ProcessingTask> list = new ArrayList<>(tasks);
+        for (int i = 0; i < tasks; i++) {
+            String id = BenchmarkData.id(i);
+            ProcessingTask task = new ProcessingTask(id, "bench/" + id + ".mp3", BenchmarkData.line(random, scriptLength));
+            list.add(pcm != null ? task.withPcm(pcm) : task);
+        }
+        return list;
+    }
+}
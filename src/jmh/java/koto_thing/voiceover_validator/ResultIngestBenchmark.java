@@ -0,0 +1,60 @@
+package koto_thing.voiceover_validator;
+
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ワーカーの出力の取り込み（JSONのパース）の速さを測る
+ * 常駐ワーカーの1行1JSON（通知行あり・なし）と、バッチ実行の {"results": [...]} を比べる
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResultIngestBenchmark {
+
+    @Param({ "1000", "10000" })
+    public int count;
+
+    private final Gson gson = new Gson();
+    private String ndjson;
+    private String ndjsonWithEvents;
+    private String batch;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        ndjson = BenchmarkData.ndjson(count, false);
+        ndjsonWithEvents = BenchmarkData.ndjson(count, true);
+        batch = BenchmarkData.batchJson(count);
+    }
+
+    @Benchmark
+    public void ndjson(Blackhole bh) throws IOException {
+        try (NdjsonResultReader reader = new NdjsonResultReader(new StringReader(ndjson), gson)) {
+            PythonResult r;
+            while ((r = reader.next()) != null)
+                bh.consume(r);
+        }
+    }
+
+    @Benchmark
+    public void ndjsonWithEvents(Blackhole bh) throws IOException {
+        try (NdjsonResultReader reader = new NdjsonResultReader(new StringReader(ndjsonWithEvents), gson)) {
+            PythonResult r;
+            while ((r = reader.next(bh::consume)) != null)
+                bh.consume(r);
+        }
+    }
+
+    @Benchmark
+    public int batch() {
+        return gson.fromJson(batch, BatchResult.class).results.size();
+    }
+}
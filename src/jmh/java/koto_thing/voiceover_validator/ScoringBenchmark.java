@@ -0,0 +1,52 @@
+package koto_thing.voiceover_validator;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 採点（正規化・類似度・差分）の1件あたりの速さを測る
+ * 200文字はdifflibの autojunk が効き始める長さ
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScoringBenchmark {
+
+    @Param({ "20", "200", "1000" })
+    public int length;
+
+    // 全角・半角、句読点、ひらがな・カタカナを揃えてから比べる場合はtrue
+    @Param({ "false", "true" })
+    public boolean normalize;
+
+    private final SimilarityEngine engine = SimilarityEngine.difflibCompatible();
+    private ScoringProfile profile;
+    private String script;
+    private String recognized;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        Random random = new Random(length);
+        script = BenchmarkData.line(random, length);
+        recognized = BenchmarkData.recognized(random, script);
+        profile = normalize ? new ScoringProfile(0.9, true, true, true) : ScoringProfile.DEFAULT;
+    }
+
+    @Benchmark
+    public int score() {
+        PythonResult res = new PythonResult();
+        res.script_text = script;
+        res.recognized_text = recognized;
+        return engine.score(res, profile).diff.length;
+    }
+
+    @Benchmark
+    public double ratioOnly() {
+        return engine.ratio(script, recognized);
+    }
+}
@@ -0,0 +1,53 @@
+package koto_thing.voiceover_validator;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IDからのセリフ検索（旧 findScriptTextById() に当たる処理）と索引の作成の速さを測る
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScriptIndexBenchmark {
+
+    @Param({ "10000", "100000", "1000000" })
+    public int rows;
+
+    private List<String[]> data;
+    private ScriptIndex index;
+    private int column;
+    // 検索するID（1割は台本にないID）
+    private String[] keys;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void build() {
+        data = BenchmarkData.scriptRows(rows);
+        index = ScriptIndex.build(data);
+        column = index.columnOf("context");
+
+        Random random = new Random(42);
+        keys = new String[4096];
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = BenchmarkData.id(random.nextInt(rows + rows / 10));
+    }
+
+    @Benchmark
+    public String lookup() {
+        String key = keys[cursor++ & (keys.length - 1)];
+        return index.text(key, column);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int buildIndex() {
+        return ScriptIndex.build(data).ids().size();
+    }
+}
@@ -0,0 +1,28 @@
+package koto_thing.voiceover_validator;
+
+import javax.swing.filechooser.FileSystemView;
+import java.io.File;
+
+/**
+ * アプリが使うフォルダの場所（GUIとCLIで共通）
+ * ログ・キャッシュ・結果などは、ドキュメントフォルダ配下の VoiceValidator/ に置く
+ */
+final class AppDirectories {
+
+    private AppDirectories() {}
+
+    /**
+     * ユーザーのドキュメントフォルダを取得（取れなければユーザーホーム配下の Documents を作って使う）
+     * @return ドキュメントフォルダ
+     */
+    static File documentsDirectory() {
+        try {
+            File def = FileSystemView.getFileSystemView().getDefaultDirectory();
+            if (def != null && def.exists()) return def;
+        } catch (Throwable ignored) { }
+        // フォールバック: ユーザーホーム配下の Documents
+        File fb = new File(System.getProperty("user.home"), "Documents");
+        if (!fb.exists()) fb.mkdirs();
+        return fb;
+    }
+}
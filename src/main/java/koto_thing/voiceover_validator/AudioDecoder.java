@@ -0,0 +1,284 @@
+package koto_thing.voiceover_validator;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * 音声ファイルを認識エンジン向けの16kHz・モノラル・16bitのPCMに変換する
+ * WAV/AIFF/AUをjavax.soundで読み、チャンネルを平均してから帯域制限つきの補間でリサンプリングする
+ * 読み込みと変換は一定量ずつ行い、元の音声全体をメモリに展開しない
+ * 読めない形式（mp3・FLAC・圧縮WAVなど）はnullを返し、これまでどおりPython側で変換させる
+ */
+final class AudioDecoder {
+
+    // 認識エンジンに渡すサンプリング周波数（Whisper・Sphinxの入力と同じ）
+    static final int SAMPLE_RATE = 16_000;
+
+    // これより長い音声は変換しない（結果のPCMをタスクの行に載せるため）
+    private static final int MAX_SECONDS = 600;
+
+    // 補間フィルタの片側のゼロ交差数と、前もって計算する位相の最大数
+    private static final int ZERO_CROSSINGS = 16;
+    private static final int MAX_PHASES = 1024;
+
+    private AudioDecoder() {}
+
+    /**
+     * Java側で変換できる拡張子かどうか
+     * @param audioPath 音声ファイルのパス
+     * @return 変換を試みる場合にtrue
+     */
+    static boolean supports(String audioPath) {
+        String name = audioPath.toLowerCase(Locale.ROOT);
+        return name.endsWith(".wav") || name.endsWith(".aif") || name.endsWith(".aiff")
+                || name.endsWith(".aifc") || name.endsWith(".au");
+    }
+
+    /**
+     * 音声の長さをファイルのヘッダから見積もる（音声本体は読まない）
+     * ヘッダを読めない形式（mp3・FLACなど）はファイルサイズと一般的なビットレートから見積もる
+     * @param audioPath 音声ファイルのパス
+     * @return 長さ（秒、ファイルがなければ0）
+     */
+    static double estimateSeconds(String audioPath) {
+        File file = new File(audioPath);
+        if (supports(audioPath)) {
+            try {
+                AudioFileFormat format = AudioSystem.getAudioFileFormat(file);
+                long frames = format.getFrameLength();
+                float rate = format.getFormat().getFrameRate();
+                if (frames > 0 && rate > 0)
+                    return frames / rate;
+            } catch (UnsupportedAudioFileException | IOException ignored) {
+                // サイズから見積もる
+            }
+        }
+
+        String name = audioPath.toLowerCase(Locale.ROOT);
+        double bytesPerSecond;
+        if (name.endsWith(".mp3") || name.endsWith(".m4a") || name.endsWith(".ogg"))
+            bytesPerSecond = 16_000;      // 128kbps
+        else if (name.endsWith(".flac"))
+            bytesPerSecond = 100_000;     // 44.1kHz・ステレオの可逆圧縮
+        else
+            bytesPerSecond = 176_400;     // 44.1kHz・16bit・ステレオ
+        return file.length() / bytesPerSecond;
+    }
+
+    /**
+     * 音声ファイルを16kHz・モノラル・16bit（リトルエンディアン）のPCMに変換
+     * @param file 音声ファイル
+     * @return PCMのバイト列、この形式を扱えない場合はnull
+     * @throws IOException 読み込みに失敗した場合
+     */
+    static byte[] decode(Path file) throws IOException {
+        if (!supports(file.toString()))
+            return null;
+
+        try (InputStream raw = new BufferedInputStream(Files.newInputStream(file), 64 * 1024);
+             AudioInputStream source = AudioSystem.getAudioInputStream(raw)) {
+            AudioFormat src = source.getFormat();
+            long frames = source.getFrameLength();
+            if (frames != AudioSystem.NOT_SPECIFIED && frames > (long) MAX_SECONDS * src.getSampleRate())
+                return null;
+
+            // 符号つき16bitへの変換（8bit・24bit・浮動小数点・ビッグエンディアンなど）はjavax.soundに任せる
+            AudioFormat pcm16 = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, src.getSampleRate(), 16,
+                    src.getChannels(), src.getChannels() * 2, src.getSampleRate(), false);
+            if (!AudioSystem.isConversionSupported(pcm16, src))
+                return null;
+
+            try (AudioInputStream in = AudioSystem.getAudioInputStream(pcm16, source)) {
+                return resample(in, Math.round(src.getSampleRate()), src.getChannels());
+            }
+        } catch (UnsupportedAudioFileException | IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * 16bitのPCMを読みながらモノラルにまとめ、16kHzに変換する
+     */
+    private static byte[] resample(AudioInputStream in, int inRate, int channels) throws IOException {
+        Resampler resampler = new Resampler(inRate, SAMPLE_RATE);
+        int frameBytes = channels * 2;
+        byte[] buf = new byte[frameBytes * 8192];
+        float[] mono = new float[8192];
+        int pending = 0;
+        int n;
+        while ((n = in.read(buf, pending, buf.length - pending)) != -1) {
+            int avail = pending + n;
+            int frames = avail / frameBytes;
+            for (int f = 0; f < frames; f++) {
+                int sum = 0;
+                for (int c = 0, off = f * frameBytes; c < channels; c++, off += 2)
+                    sum += (short) ((buf[off] & 0xFF) | (buf[off + 1] << 8));
+                mono[f] = (float) sum / channels;
+            }
+            resampler.push(mono, frames);
+            // フレームの途中で切れた分は次回に回す
+            pending = avail - frames * frameBytes;
+            System.arraycopy(buf, frames * frameBytes, buf, 0, pending);
+        }
+        return resampler.finish();
+    }
+
+    /**
+     * 窓関数つきsincによる帯域制限補間のリサンプラー（入力は一定量ずつ渡す）
+     * 間引く場合は出力のナイキスト周波数でフィルタをかけ、折り返し雑音を防ぐ
+     * 入出力の周波数の比から出力位置の端数（位相）ごとのフィルタを前もって計算し、1サンプルを積和だけで求める
+     */
+    static final class Resampler {
+        // 出力 k の位置は入力の k * down / up 番目
+        private final long up;
+        private final long down;
+        private final int phases;
+        // フィルタの片側のタップ数
+        private final int half;
+        // 位相ごとのフィルタ（入力 i0 - half + 1 .. i0 + half に掛ける）
+        private final float[][] filters;
+        private final boolean passThrough;
+
+        // まだ使う入力（buf[0] が入力全体の base 番目。先頭には half 個の無音を置く）
+        private float[] buf = new float[16384];
+        private int len;
+        private long base;
+        // 受け取った入力のサンプル数
+        private long consumed;
+        // 次に出力するサンプルの番号
+        private long next;
+        private byte[] out = new byte[32768];
+        private int outLen;
+
+        Resampler(int inRate, int outRate) {
+            long g = gcd(inRate, outRate);
+            this.up = outRate / g;
+            this.down = inRate / g;
+            this.passThrough = inRate == outRate;
+            this.phases = (int) Math.min(up, MAX_PHASES);
+
+            double scale = Math.min(1.0, (double) outRate / inRate);
+            double width = ZERO_CROSSINGS / scale;
+            this.half = (int) Math.ceil(width);
+            this.filters = new float[phases][2 * half];
+            for (int p = 0; p < phases; p++) {
+                double frac = (double) p / phases;
+                double sum = 0;
+                for (int j = 0; j < 2 * half; j++) {
+                    double d = Math.abs(j - half + 1 - frac);
+                    if (d >= width)
+                        continue;
+                    double x = d * scale;
+                    double sinc = x == 0 ? 1.0 : Math.sin(Math.PI * x) / (Math.PI * x);
+                    // Hann窓
+                    double w = 0.5 + 0.5 * Math.cos(Math.PI * d / width);
+                    filters[p][j] = (float) (sinc * w);
+                    sum += sinc * w;
+                }
+                // 直流の利得を1にそろえる
+                for (int j = 0; j < 2 * half; j++)
+                    filters[p][j] /= (float) sum;
+            }
+            this.len = half;
+            this.base = -half;
+        }
+
+        /**
+         * 入力を追加し、計算できるところまで出力する
+         * @param samples 入力（モノラル、16bitの値の範囲）
+         * @param count 入力のサンプル数
+         */
+        void push(float[] samples, int count) {
+            if (passThrough) {
+                for (int i = 0; i < count; i++)
+                    emit(samples[i]);
+                return;
+            }
+            append(samples, count);
+            consumed += count;
+            drain(Long.MAX_VALUE);
+        }
+
+        /**
+         * 残りの入力を出力して変換を終える
+         * @return 変換後のPCM（16bit、リトルエンディアン）
+         */
+        byte[] finish() {
+            if (!passThrough) {
+                // 末尾の出力に使う分の無音を足し、入力の終端までを出力する
+                append(new float[half + 1], half + 1);
+                drain((consumed * up + down - 1) / down);
+            }
+            return Arrays.copyOf(out, outLen);
+        }
+
+        private void append(float[] samples, int count) {
+            if (len + count > buf.length)
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + count));
+            System.arraycopy(samples, 0, buf, len, count);
+            len += count;
+        }
+
+        private void drain(long total) {
+            long end = base + len;
+            while (next < total) {
+                long pos = next * down;
+                long i0 = pos / up;
+                int p = (int) (phases == up ? pos % up : Math.round((double) (pos % up) * phases / up));
+                if (p == phases) {
+                    i0++;
+                    p = 0;
+                }
+                if (i0 + half >= end)
+                    break;
+
+                float[] f = filters[p];
+                int from = (int) (i0 - half + 1 - base);
+                float acc = 0;
+                for (int j = 0; j < f.length; j++)
+                    acc += f[j] * buf[from + j];
+                emit(acc);
+                next++;
+            }
+
+            // 以降の出力で使わない入力を捨てる
+            long keepFrom = next * down / up - half;
+            int drop = (int) Math.min(len, keepFrom - base);
+            if (drop > 0) {
+                System.arraycopy(buf, drop, buf, 0, len - drop);
+                len -= drop;
+                base += drop;
+            }
+        }
+
+        private void emit(float v) {
+            int s = Math.round(v);
+            if (s > Short.MAX_VALUE) s = Short.MAX_VALUE;
+            else if (s < Short.MIN_VALUE) s = Short.MIN_VALUE;
+            if (outLen + 2 > out.length)
+                out = Arrays.copyOf(out, out.length * 2);
+            out[outLen++] = (byte) s;
+            out[outLen++] = (byte) (s >> 8);
+        }
+
+        private static long gcd(long a, long b) {
+            while (b != 0) {
+                long t = a % b;
+                a = b;
+                b = t;
+            }
+            return a;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package koto_thing.voiceover_validator;
 
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 
@@ -9,6 +11,7 @@ import javafx.beans.property.StringProperty;
 public class AudioMapping {
     private final StringProperty fileName; // 音声ファイル名
     private final StringProperty csvId;       // CSVのID
+    private final DoubleProperty confidence;  // 割り当ての一致度（手動で選んだ場合は1.0）
     
     /**
      * コンストラクタ
@@ -25,6 +28,7 @@ public class AudioMapping {
     public AudioMapping(String fileName, String csvId) {
         this.fileName = new SimpleStringProperty(fileName);
         this.csvId = new SimpleStringProperty(csvId);
+        this.confidence = new SimpleDoubleProperty(0.0);
     }
     
     // ファイル名のプロパティ
@@ -53,8 +57,21 @@ public class AudioMapping {
         this.csvId.set(csvId);
     }
     
+    // 一致度のプロパティ
+    public DoubleProperty confidenceProperty() {
+        return confidence;
+    }
+    
+    public double getConfidence() {
+        return confidence.get();
+    }
+    
+    public void setConfidence(double confidence) {
+        this.confidence.set(confidence);
+    }
+    
     @Override
     public String toString() {
-        return String.format("AudioMapping{fileName='%s', csvId='%s'}", getFileName(), getCsvId());
+        return String.format("AudioMapping{fileName='%s', csvId='%s', confidence=%.2f}", getFileName(), getCsvId(), getConfidence());
     }
 }
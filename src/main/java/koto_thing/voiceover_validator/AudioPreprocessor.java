@@ -0,0 +1,171 @@
+package koto_thing.voiceover_validator;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * ワーカーに渡す前に音声をPCMに変換し、前後の無音（ルームトーン）を除く処理段
+ * 無音の判定は20ミリ秒ごとの音量（dBFS）で行い、しきい値を超える区間が続いた最初と最後の位置に余白を足して切り出す
+ * しきい値を超える区間がないテイクはエンジンに渡さず、その場で無音のエラー結果にする
+ * Java側で変換できない形式（mp3など）はそのまま次の処理段に渡す
+ */
+final class AudioPreprocessor {
+
+    /**
+     * 無音カットの設定
+     * @param trim 前後の無音を除く場合はtrue（falseでも変換は行う）
+     * @param thresholdDb 音声とみなす音量（dBFS）
+     * @param paddingMillis 切り出す区間の前後に残す余白（ミリ秒）
+     */
+    record Settings(boolean trim, double thresholdDb, int paddingMillis) {
+        static final Settings DEFAULT = new Settings(true, -45, 200);
+
+        /**
+         * 認識に渡す音声を変える設定の識別子（認識結果キャッシュ・チェックポイント・マニフェストのキーに含める）
+         * 無音カットをしない場合は空文字列にし、無音カットを入れる前に作ったキーと同じにする
+         * @return 識別子
+         */
+        String key() {
+            return trim ? String.format(Locale.ROOT, "trim:%.1f:%d", thresholdDb, paddingMillis) : "";
+        }
+    }
+
+    // 音量を測る区間の長さと、音声とみなすのに必要な連続区間数（クリック音などを無視する）
+    private static final int FRAME_MILLIS = 20;
+    private static final int MIN_VOICED_FRAMES = 3;
+
+    private final Settings settings;
+    private final AtomicInteger silent = new AtomicInteger();
+    private final AtomicLong decodedSamples = new AtomicLong();
+    private final AtomicLong trimmedSamples = new AtomicLong();
+
+    /**
+     * コンストラクタ
+     * @param settings 無音カットの設定
+     */
+    AudioPreprocessor(Settings settings) {
+        this.settings = settings;
+    }
+
+    Settings settings() {
+        return settings;
+    }
+
+    /**
+     * 変換と無音カットを行ってから次の処理段に渡す処理段で包む
+     * @param next 次の処理段（ワーカープール）
+     * @param onStage 処理段階の通知を受け取るリスナー
+     * @return 包んだ処理段
+     */
+    TaskProcessor wrap(TaskProcessor next, Consumer<StageEvent> onStage) {
+        return task -> {
+            if (!AudioDecoder.supports(task.audioPath))
+                return next.process(task);
+
+            onStage.accept(new StageEvent(task.id, "decode", 0));
+            long begin = System.nanoTime();
+            byte[] pcm;
+            try {
+                pcm = AudioDecoder.decode(Path.of(task.audioPath));
+            } catch (IOException | RuntimeException ex) {
+                // 読めないファイルのエラーはPython側から結果として返させる
+                pcm = null;
+            }
+            if (pcm == null) {
+                long failed = System.nanoTime() - begin;
+                PythonResult res = next.process(task);
+                res.addTime(RunMetrics.Stage.DECODE, failed);
+                return res;
+            }
+
+            int total = pcm.length / 2;
+            decodedSamples.addAndGet(total);
+            if (settings.trim()) {
+                int[] range = voicedRange(pcm, AudioDecoder.SAMPLE_RATE, settings.thresholdDb(), settings.paddingMillis());
+                if (range == null) {
+                    silent.incrementAndGet();
+                    trimmedSamples.addAndGet(total);
+                    PythonResult res = PythonResult.error(task, String.format(Locale.US,
+                            "無音のテイクです（%.0fdBFSを超える音声がありません）", settings.thresholdDb()));
+                    res.addTime(RunMetrics.Stage.DECODE, System.nanoTime() - begin);
+                    return res;
+                }
+                if (range[0] > 0 || range[1] < total) {
+                    trimmedSamples.addAndGet(total - (range[1] - range[0]));
+                    pcm = Arrays.copyOfRange(pcm, range[0] * 2, range[1] * 2);
+                }
+            }
+            long decoded = System.nanoTime() - begin;
+            PythonResult res = next.process(task.withPcm(pcm));
+            res.addTime(RunMetrics.Stage.DECODE, decoded);
+            return res;
+        };
+    }
+
+    /**
+     * 音声とみなす区間（余白を含む）を求める
+     * @param pcm 16bit・モノラル（リトルエンディアン）のPCM
+     * @param sampleRate サンプリング周波数
+     * @param thresholdDb 音声とみなす音量（dBFS）
+     * @param paddingMillis 前後に残す余白（ミリ秒）
+     * @return {開始サンプル, 終了サンプル（含まない）}、音声がなければnull
+     */
+    static int[] voicedRange(byte[] pcm, int sampleRate, double thresholdDb, int paddingMillis) {
+        int samples = pcm.length / 2;
+        int frame = sampleRate * FRAME_MILLIS / 1000;
+        int frames = samples / frame;
+        double limit = 32768.0 * Math.pow(10, thresholdDb / 20);
+        double limitSquared = limit * limit * frame;
+
+        int first = -1, last = -1, run = 0;
+        for (int f = 0; f < frames; f++) {
+            double energy = 0;
+            for (int i = f * frame, end = i + frame; i < end; i++) {
+                int s = (short) ((pcm[2 * i] & 0xFF) | (pcm[2 * i + 1] << 8));
+                energy += (double) s * s;
+            }
+            if (energy > limitSquared) {
+                if (++run == MIN_VOICED_FRAMES && first < 0)
+                    first = f - MIN_VOICED_FRAMES + 1;
+                if (run >= MIN_VOICED_FRAMES)
+                    last = f;
+            } else {
+                run = 0;
+            }
+        }
+        if (first < 0)
+            return null;
+
+        int pad = (int) ((long) sampleRate * paddingMillis / 1000);
+        return new int[] { Math.max(0, first * frame - pad), Math.min(samples, (last + 1) * frame + pad) };
+    }
+
+    /**
+     * 無音のため認識しなかったテイクの数
+     * @return テイク数
+     */
+    int silentTakes() {
+        return silent.get();
+    }
+
+    /**
+     * 除いた無音の合計（秒）
+     * @return 秒数
+     */
+    double trimmedSeconds() {
+        return (double) trimmedSamples.get() / AudioDecoder.SAMPLE_RATE;
+    }
+
+    /**
+     * Java側で変換した音声の合計（秒）
+     * @return 秒数
+     */
+    double decodedSeconds() {
+        return (double) decodedSamples.get() / AudioDecoder.SAMPLE_RATE;
+    }
+}
@@ -0,0 +1,222 @@
+package koto_thing.voiceover_validator;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 音声ファイル名からCSVのIDを自動で割り当てるクラス
+ * 次の順に試し、最初に見つかったものを一致度つきで返す
+ * 1. 拡張子を除いたファイル名とIDの完全一致（大文字小文字・全角半角の違いは一致度を少し下げて許容）
+ * 2. 正規表現で取り出した部分とIDの一致（名前付きグループ "id"、なければグループ1、なければ全体）
+ * 3. 英数字トークンの重なり（数字は先頭の0を無視）によるあいまい一致（IDのトークンがファイル名にどれだけ含まれるかで採点）
+ * IDはすべて索引に登録するため、ファイル数・ID数に対してほぼ線形の時間で割り当てられる
+ */
+final class AutoMapper {
+
+    /**
+     * 割り当て結果
+     * @param id 割り当てたID
+     * @param confidence 一致度（0.0〜1.0）
+     * @param method 割り当て方法（"exact" / "regex" / "fuzzy"）
+     */
+    record Match(String id, double confidence, String method) {}
+
+    // あいまい一致として採用する最低スコア
+    private static final double FUZZY_MIN_SCORE = 0.5;
+    // 出現するIDがこれより多いトークンは候補探しに使わない（"vo" など共通の接頭辞）
+    private static final int MAX_POSTINGS = 256;
+
+    private final List<String> ids;
+    private final Map<String, String> exact = new HashMap<>();
+    private final Map<String, String> folded = new HashMap<>();
+    private final Map<String, List<Integer>> postings = new HashMap<>();
+    private final String[][] idTokens;
+    private final Pattern pattern;
+
+    /**
+     * コンストラクタ
+     * @param ids 割り当て先のID一覧（重複なし）
+     * @param pattern ファイル名からIDを取り出す正規表現（不要ならnull）
+     */
+    AutoMapper(List<String> ids, Pattern pattern) {
+        this.ids = ids;
+        this.pattern = pattern;
+        this.idTokens = new String[ids.size()][];
+
+        for (int i = 0; i < ids.size(); i++) {
+            String id = ids.get(i);
+            exact.putIfAbsent(id, id);
+            folded.putIfAbsent(fold(id), id);
+
+            String[] tokens = tokens(id);
+            idTokens[i] = tokens;
+            for (String t : tokens) {
+                List<Integer> list = postings.computeIfAbsent(t, k -> new ArrayList<>(1));
+                if (list.isEmpty() || list.get(list.size() - 1) != i)
+                    list.add(i);
+            }
+        }
+    }
+
+    /**
+     * 正規表現の文字列をコンパイル（空ならnull）
+     * @param regex 正規表現の文字列
+     * @return コンパイルした正規表現、空ならnull
+     * @throws java.util.regex.PatternSyntaxException 正規表現が不正な場合
+     */
+    static Pattern compile(String regex) {
+        return regex == null || regex.isBlank() ? null : Pattern.compile(regex.trim());
+    }
+
+    /**
+     * ファイル名にIDを割り当てる
+     * @param fileName 音声ファイル名
+     * @return 割り当て結果、見つからなければnull
+     */
+    Match map(String fileName) {
+        String stem = stem(fileName);
+
+        Match m = lookup(stem, 1.0, "exact");
+        if (m != null)
+            return m;
+
+        if (pattern != null) {
+            Matcher mt = pattern.matcher(stem);
+            if (mt.find()) {
+                m = lookup(extract(mt), 0.9, "regex");
+                if (m != null)
+                    return m;
+            }
+        }
+
+        return fuzzy(stem);
+    }
+
+    private Match lookup(String key, double confidence, String method) {
+        if (key == null || key.isEmpty())
+            return null;
+
+        String id = exact.get(key);
+        if (id != null)
+            return new Match(id, confidence, method);
+        id = folded.get(fold(key));
+        return id != null ? new Match(id, confidence * 0.95, method) : null;
+    }
+
+    private static String extract(Matcher mt) {
+        try {
+            return mt.group("id");
+        } catch (IllegalArgumentException noNamedGroup) {
+            return mt.groupCount() >= 1 ? mt.group(1) : mt.group();
+        }
+    }
+
+    /**
+     * トークンの重なりによるあいまい一致
+     * IDF で重み付けし、IDのトークンがファイル名に含まれる割合を主に、ファイル名側の余分なトークンを少しだけ減点する
+     */
+    private Match fuzzy(String stem) {
+        String[] tokens = tokens(stem);
+        if (tokens.length == 0)
+            return null;
+
+        // 出現数の少ないトークンから候補のIDを集める
+        Set<Integer> candidates = new HashSet<>();
+        for (String t : tokens) {
+            List<Integer> list = postings.get(t);
+            if (list != null && list.size() <= MAX_POSTINGS)
+                candidates.addAll(list);
+        }
+        if (candidates.isEmpty())
+            return null;
+
+        Set<String> stemTokens = Set.of(tokens);
+        double stemWeight = 0;
+        for (String t : tokens)
+            stemWeight += weight(t);
+
+        int best = -1;
+        double bestScore = 0, secondScore = 0;
+        for (int i : candidates) {
+            double idWeight = 0, shared = 0;
+            for (String t : idTokens[i]) {
+                double w = weight(t);
+                idWeight += w;
+                if (stemTokens.contains(t))
+                    shared += w;
+            }
+            double score = shared / idWeight * (0.75 + 0.25 * shared / stemWeight);
+            if (score > bestScore) {
+                secondScore = bestScore;
+                bestScore = score;
+                best = i;
+            } else if (score > secondScore) {
+                secondScore = score;
+            }
+        }
+
+        if (best < 0 || bestScore < FUZZY_MIN_SCORE)
+            return null;
+
+        // 僅差の候補がある場合は一致度を下げる
+        double margin = Math.min(1.0, 0.5 + 2.5 * (bestScore - secondScore));
+        return new Match(ids.get(best), 0.8 * bestScore * margin, "fuzzy");
+    }
+
+    private double weight(String token) {
+        List<Integer> list = postings.get(token);
+        int df = list == null ? 0 : list.size();
+        return Math.log(1.0 + (ids.size() + 1.0) / (df + 1.0));
+    }
+
+    private static String stem(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot > 0 ? fileName.substring(0, dot) : fileName;
+    }
+
+    private static String fold(String s) {
+        return Normalizer.normalize(s, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT).trim();
+    }
+
+    /**
+     * 英字・数字・その他の文字の境界で分割したトークン（数字は先頭の0を除く）
+     */
+    static String[] tokens(String s) {
+        String f = fold(s);
+        List<String> out = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        int kind = 0;
+        for (int i = 0; i < f.length(); ) {
+            int cp = f.codePointAt(i);
+            i += Character.charCount(cp);
+            int k = Character.isDigit(cp) ? 1 : Character.isLetter(cp) ? 2 : 0;
+            if (k != kind && sb.length() > 0) {
+                out.add(token(sb, kind));
+                sb.setLength(0);
+            }
+            kind = k;
+            if (k != 0)
+                sb.appendCodePoint(cp);
+        }
+        if (sb.length() > 0)
+            out.add(token(sb, kind));
+        return out.stream().distinct().toArray(String[]::new);
+    }
+
+    private static String token(StringBuilder sb, int kind) {
+        if (kind != 1)
+            return sb.toString();
+        int z = 0;
+        while (z < sb.length() - 1 && sb.charAt(z) == '0')
+            z++;
+        return sb.substring(z);
+    }
+}
@@ -0,0 +1,84 @@
+package koto_thing.voiceover_validator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * ワーカー側で受け取った項目をためておき、一定間隔でまとめてUIスレッドへ渡す
+ * 1件ごとに Platform.runLater を呼ぶとFXのイベントキューがあふれ、テーブルの並べ替え・再レイアウトも毎回走るため、
+ * 反映は間隔ごとに1回（予約中の反映があれば追加の予約はしない）にまとめる
+ * @param <T> 項目の型
+ */
+final class CoalescingSink<T> {
+
+    // 反映の予約に使うタイマー（全インスタンスで共有）
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "coalescing-sink");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Executor uiExecutor;
+    private final long intervalNanos;
+    private final Consumer<List<T>> sink;
+    private final ConcurrentLinkedQueue<T> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile long lastFlush;
+
+    /**
+     * コンストラクタ
+     * @param uiExecutor 反映を実行するスレッド（GUIでは Platform::runLater）
+     * @param intervalMillis 反映の最小間隔（ミリ秒）
+     * @param sink ためた項目をまとめて受け取る処理（uiExecutor のスレッドで呼ばれる）
+     */
+    CoalescingSink(Executor uiExecutor, long intervalMillis, Consumer<List<T>> sink) {
+        this.uiExecutor = uiExecutor;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.sink = sink;
+        this.lastFlush = System.nanoTime() - intervalNanos;
+    }
+
+    /**
+     * 項目を追加する（どのスレッドから呼んでもよい）
+     * @param item 追加する項目
+     */
+    void offer(T item) {
+        pending.add(item);
+        if (!scheduled.compareAndSet(false, true))
+            return;
+
+        long delay = lastFlush + intervalNanos - System.nanoTime();
+        if (delay <= 0)
+            uiExecutor.execute(this::flush);
+        else
+            TIMER.schedule(() -> uiExecutor.execute(this::flush), delay, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 残っている項目をすぐに反映する
+     * 後から uiExecutor に渡した処理は、ここで反映した項目より後に実行される
+     */
+    void flushNow() {
+        uiExecutor.execute(this::flush);
+    }
+
+    private void flush() {
+        // 取り出す前に予約を解除し、取り出し中に追加された項目は次の予約で反映する
+        scheduled.set(false);
+        lastFlush = System.nanoTime();
+
+        List<T> batch = new ArrayList<>();
+        T item;
+        while ((item = pending.poll()) != null)
+            batch.add(item);
+        if (!batch.isEmpty())
+            sink.accept(batch);
+    }
+}
@@ -0,0 +1,239 @@
+package koto_thing.voiceover_validator;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RFC 4180 形式のCSVを1行ずつ読み込むストリーミングリーダー
+ * ダブルクォートで囲まれたフィールド内のカンマ・改行・"" エスケープに対応する
+ * 文字コードはファイル先頭のバイト列（BOM / UTF-8としての妥当性）から1回で判定し、
+ * UTF-8でなければ Windows-31J（Shift_JIS）として読む
+ */
+class CsvReader implements Closeable {
+
+    // 文字コード判定に使う先頭バイト数
+    private static final int SAMPLE_SIZE = 64 * 1024;
+    static final Charset WINDOWS_31J = Charset.forName("Windows-31J");
+
+    private final Reader in;
+    private final CountingInputStream counter;
+    private final Charset charset;
+    private final char[] buf = new char[8192];
+    // レコードごとに使い回す作業領域
+    private final List<String> fields = new ArrayList<>();
+    private final StringBuilder field = new StringBuilder();
+    private int pos = 0, len = 0;
+    private boolean eof = false;
+
+    private CsvReader(CountingInputStream counter, Charset charset) {
+        this.counter = counter;
+        this.charset = charset;
+        this.in = new InputStreamReader(counter, charset);
+    }
+
+    /**
+     * ファイルを開き、文字コードを判定する
+     * @param path CSVファイル
+     * @return リーダー
+     * @throws IOException 読み込みに失敗した場合
+     */
+    static CsvReader open(Path path) throws IOException {
+        BufferedInputStream bin = new BufferedInputStream(Files.newInputStream(path), SAMPLE_SIZE);
+        try {
+            bin.mark(SAMPLE_SIZE);
+            byte[] sample = bin.readNBytes(SAMPLE_SIZE);
+            bin.reset();
+
+            int bom = bomLength(sample);
+            Charset cs = bom > 0 ? StandardCharsets.UTF_8 : detectCharset(sample, sample.length);
+            CountingInputStream counter = new CountingInputStream(bin);
+            counter.skipNBytes(bom);
+            return new CsvReader(counter, cs);
+        } catch (IOException | RuntimeException ex) {
+            bin.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * 先頭バイト列から文字コードを判定（UTF-8として妥当ならUTF-8、そうでなければWindows-31J）
+     * @param sample 先頭バイト列
+     * @param n 有効なバイト数
+     * @return 判定した文字コード
+     */
+    static Charset detectCharset(byte[] sample, int n) {
+        if (bomLength(sample) > 0)
+            return StandardCharsets.UTF_8;
+
+        int i = 0;
+        while (i < n) {
+            int b = sample[i] & 0xFF;
+            int follow;
+            if (b < 0x80) { i++; continue; }
+            else if (b >= 0xC2 && b <= 0xDF) follow = 1;
+            else if (b >= 0xE0 && b <= 0xEF) follow = 2;
+            else if (b >= 0xF0 && b <= 0xF4) follow = 3;
+            else return WINDOWS_31J;
+
+            // サンプルの末尾で途切れた文字は判定に使わない
+            if (i + follow >= n)
+                break;
+            for (int k = 1; k <= follow; k++) {
+                if ((sample[i + k] & 0xC0) != 0x80)
+                    return WINDOWS_31J;
+            }
+            i += follow + 1;
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    private static int bomLength(byte[] b) {
+        return b.length >= 3 && (b[0] & 0xFF) == 0xEF && (b[1] & 0xFF) == 0xBB && (b[2] & 0xFF) == 0xBF ? 3 : 0;
+    }
+
+    /**
+     * 判定した文字コード
+     * @return 文字コード
+     */
+    Charset charset() {
+        return charset;
+    }
+
+    /**
+     * これまでに読み込んだバイト数（進捗表示用）
+     * @return バイト数
+     */
+    long bytesRead() {
+        return counter.count;
+    }
+
+    /**
+     * 次のレコードを読み込む（空行は読み飛ばす）
+     * @return フィールドの配列、終端ならnull
+     * @throws IOException 読み込みに失敗した場合
+     */
+    String[] next() throws IOException {
+        fields.clear();
+        field.setLength(0);
+        boolean quoted = false, wasQuoted = false;
+
+        while (true) {
+            int c = read();
+            if (c < 0) {
+                if (fields.isEmpty() && field.length() == 0 && !wasQuoted)
+                    return null;
+                fields.add(field.toString());
+                return fields.toArray(new String[0]);
+            }
+
+            if (quoted) {
+                if (c == '"') {
+                    if (peek() == '"') {
+                        read();
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+                continue;
+            }
+
+            switch (c) {
+                case '"' -> {
+                    // フィールドの途中の " はそのまま文字として扱う
+                    if (field.length() == 0 && !wasQuoted) {
+                        quoted = true;
+                        wasQuoted = true;
+                    } else {
+                        field.append('"');
+                    }
+                }
+                case ',' -> {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                    wasQuoted = false;
+                }
+                case '\r', '\n' -> {
+                    if (c == '\r' && peek() == '\n')
+                        read();
+                    if (fields.isEmpty() && field.length() == 0 && !wasQuoted)
+                        continue;
+                    fields.add(field.toString());
+                    return fields.toArray(new String[0]);
+                }
+                default -> field.append((char) c);
+            }
+        }
+    }
+
+    private int read() throws IOException {
+        if (pos >= len && !fill())
+            return -1;
+        return buf[pos++];
+    }
+
+    private int peek() throws IOException {
+        if (pos >= len && !fill())
+            return -1;
+        return buf[pos];
+    }
+
+    private boolean fill() throws IOException {
+        if (eof)
+            return false;
+        int n = in.read(buf, 0, buf.length);
+        if (n <= 0) {
+            eof = true;
+            return false;
+        }
+        pos = 0;
+        len = n;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * 読み込んだバイト数を数えるストリーム
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        volatile long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0)
+                count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0)
+                count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long k = super.skip(n);
+            count += k;
+            return k;
+        }
+    }
+}
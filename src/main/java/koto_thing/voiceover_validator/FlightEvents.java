@@ -0,0 +1,197 @@
+package koto_thing.voiceover_validator;
+
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+
+/**
+ * Java Flight Recorder に記録する検証の流れのイベント
+ * 記録中でなければ commit() は何もしないため、常に発行しておいてよい（ファイルサイズなどは記録する場合だけ調べる）
+ * JDK Mission Control では「Voiceover Validator」の分類にまとまって表示される
+ */
+final class FlightEvents {
+
+    private static final String CATEGORY = "Voiceover Validator";
+
+    private FlightEvents() {}
+
+    @Name("koto_thing.voiceover_validator.CsvLoad")
+    @Label("台本CSVの読み込み")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class CsvLoad extends Event {
+        @Label("パス") String path;
+        @Label("文字コード") String charset;
+        @Label("行数") int rows;
+        @Label("ファイルサイズ") @DataAmount long fileSize;
+
+        void finish(Path file, String charsetName, int rowCount) {
+            end();
+            if (!shouldCommit())
+                return;
+            path = file.toString();
+            charset = charsetName;
+            rows = rowCount;
+            fileSize = size(file);
+            commit();
+        }
+    }
+
+    @Name("koto_thing.voiceover_validator.AudioScan")
+    @Label("音声フォルダの読み込み")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class AudioScan extends Event {
+        @Label("フォルダ") String folder;
+        @Label("ファイル数") int files;
+
+        void finish(Path dir, int count) {
+            end();
+            if (!shouldCommit())
+                return;
+            folder = dir.toString();
+            files = count;
+            commit();
+        }
+    }
+
+    @Name("koto_thing.voiceover_validator.TaskDispatch")
+    @Label("タスクの処理")
+    @Description("シャードがタスクを取り出してから結果を受け取るまで（キャッシュ・再試行・採点を含む）")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class TaskDispatch extends Event {
+        @Label("ID") String taskId;
+        @Label("音声ファイル") String audioPath;
+        @Label("ファイルサイズ") @DataAmount long fileSize;
+        @Label("シャード") int shard;
+        @Label("結果") @Description("ok / error / replayed / failed（例外で中断）") String status;
+
+        void finish(ProcessingTask task, int shardIndex, PythonResult res) {
+            end();
+            if (!shouldCommit())
+                return;
+            taskId = task.id;
+            audioPath = task.audioPath;
+            fileSize = task.audioPath != null ? size(Paths.get(task.audioPath)) : -1;
+            shard = shardIndex;
+            status = res == null ? "failed" : res.replayed ? "replayed" : res.error != null ? "error" : "ok";
+            commit();
+        }
+    }
+
+    @Name("koto_thing.voiceover_validator.WorkerStart")
+    @Label("ワーカーの起動")
+    @Description("Pythonワーカーのプロセスを起動してから準備完了の通知が届くまで（Whisperはモデルの読み込みを含む）")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class WorkerStart extends Event {
+        @Label("番号") int worker;
+        @Label("PID") long pid;
+        @Label("エンジン") String engine;
+        @Label("モデル") String model;
+        @Label("準備完了") boolean ready;
+    }
+
+    @Name("koto_thing.voiceover_validator.WorkerExit")
+    @Label("ワーカーの終了")
+    @Description("Pythonワーカーのプロセスを止めるまで（正常終了の待ち時間を含む）")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class WorkerExit extends Event {
+        @Label("番号") int worker;
+        @Label("PID") long pid;
+        @Label("理由") @Description("close（正常終了） / timeout（制限時間で強制終了）") String reason;
+        @Label("終了コード") int exitCode;
+        @Label("稼働時間") @Timespan long uptime;
+    }
+
+    @Name("koto_thing.voiceover_validator.ResultParse")
+    @Label("結果の取り込み")
+    @Description("ワーカーの出力1行を結果に変換する時間（行が届くのを待つ時間は含まない）")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class ResultParse extends Event {
+        @Label("ID") String taskId;
+        @Label("エラー") boolean error;
+    }
+
+    @Name("koto_thing.voiceover_validator.Export")
+    @Label("結果の書き出し")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class Export extends Event {
+        @Label("パス") String path;
+        @Label("件数") int rows;
+        @Label("ファイルサイズ") @DataAmount long fileSize;
+
+        void finish(Path file, int count) {
+            end();
+            if (!shouldCommit())
+                return;
+            path = file.toString();
+            rows = count;
+            fileSize = size(file);
+            commit();
+        }
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException | RuntimeException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * 実行の記録を開始する（JDKの "profile" 設定に、この分類のイベントを加えたもの）
+     * @param name 記録の名前
+     * @return 開始した記録
+     * @throws IOException 設定を読み込めなかった場合
+     */
+    static Recording startRecording(String name) throws IOException {
+        Configuration profile;
+        try {
+            profile = Configuration.getConfiguration("profile");
+        } catch (ParseException ex) {
+            throw new IOException("JFRの設定を読み込めません: " + ex.getMessage(), ex);
+        }
+        Recording recording = new Recording(profile);
+        recording.setName(name);
+        recording.setToDisk(true);
+        recording.start();
+        return recording;
+    }
+
+    /**
+     * 記録を止めてファイルに書き出す（書き出しに失敗しても記録は閉じる）
+     * @param recording 記録
+     * @param file 出力先（.jfr）
+     * @throws IOException 書き出しに失敗した場合
+     */
+    static void stopRecording(Recording recording, Path file) throws IOException {
+        try {
+            recording.stop();
+            Path dir = file.toAbsolutePath().getParent();
+            if (dir != null)
+                Files.createDirectories(dir);
+            recording.dump(file);
+        } finally {
+            recording.close();
+        }
+    }
+}
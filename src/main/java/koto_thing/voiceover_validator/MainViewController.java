@@ -12,16 +12,16 @@ import javafx.fxml.Initializable;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.control.TableCell;
+import javafx.beans.property.ReadOnlyStringWrapper;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.VBox;
 import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.util.Duration;
 
-import com.google.gson.Gson;
+import jdk.jfr.Recording;
 import org.kordamp.ikonli.javafx.FontIcon;
 
-import javax.swing.filechooser.FileSystemView;
 import java.io.*;
 import java.net.URL;
 import java.nio.charset.Charset;
@@ -32,8 +32,12 @@ import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.prefs.Preferences;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import javafx.scene.image.ImageView;
 import javafx.scene.image.WritableImage;
 import javafx.scene.SnapshotParameters;
@@ -57,25 +61,45 @@ import javafx.scene.paint.Color;
  * メインビューのコントローラクラス
  */
 public class MainViewController implements Initializable {
+    // 検証結果をテーブルへ反映する間隔（ミリ秒）
+    private static final long UI_FLUSH_INTERVAL_MS = 75;
+
     // 設定関連
     @FXML private TextField pythonPathField;
     @FXML private ComboBox<String> engineComboBox;
     @FXML private TextField languageCodeField;
     @FXML private Label whisperModelLabel;
     @FXML private ComboBox<String> whisperModelComboBox;
+    @FXML private Spinner<Integer> workerCountSpinner;
+    @FXML private Spinner<Integer> threadsPerWorkerSpinner;
+    @FXML private CheckBox useCacheCheckBox;
+    @FXML private CheckBox incrementalCheckBox;
+    @FXML private Spinner<Double> thresholdSpinner;
+    @FXML private CheckBox foldWidthCheckBox;
+    @FXML private CheckBox ignorePunctuationCheckBox;
+    @FXML private CheckBox foldKanaCheckBox;
+    @FXML private Spinner<Integer> timeoutSpinner;
+    @FXML private CheckBox trimSilenceCheckBox;
+    // 実行の記録は調査のときだけ使うため、設定には保存しない
+    @FXML private CheckBox recordRunCheckBox;
+    @FXML private Spinner<Integer> silenceThresholdSpinner;
+    @FXML private Spinner<Integer> silencePaddingSpinner;
 
     // 入力関連
     @FXML private TextField scriptPathField;
     @FXML private TextField audioFolderPathField;
     @FXML private TextField columnNameField;
+    @FXML private TextField mappingPatternField;
 
     // プレビューとマッピング
     @FXML private VBox csvPreviewCard;
-    @FXML private TableView<ObservableList<String>> csvPreviewTable;
+    @FXML private TableView<String[]> csvPreviewTable;
+    @FXML private TextArea csvDetailArea;
     @FXML private VBox audioMappingCard;
     @FXML private TableView<AudioMapping> audioMappingTable;
     @FXML private TableColumn<AudioMapping, String> fileNameColumn;
     @FXML private TableColumn<AudioMapping, String> csvIdColumn;
+    @FXML private TableColumn<AudioMapping, Double> confidenceColumn;
 
     // アクションボタン
     @FXML private Button validateButton;
@@ -93,6 +117,7 @@ public class MainViewController implements Initializable {
     @FXML private TableColumn<ValidationResult, String> scriptColumn;
     @FXML private TableColumn<ValidationResult, String> recognizedColumn;
     @FXML private TableColumn<ValidationResult, String> statusColumn;
+    @FXML private TextArea metricsArea;
 
     // ステータスバー
     @FXML private Label statusLabel;
@@ -106,12 +131,36 @@ public class MainViewController implements Initializable {
 
     // データモデル
     private final ObservableList<String> csvIds = FXCollections.observableArrayList();
-    private final List<String[]> csvData = new ArrayList<>();
+    // 台本CSVの全行と ID → 行 の索引（CSV読み込み時に作成）
+    private ScriptIndex scriptIndex = ScriptIndex.build(List.of());
     private final ObservableList<ValidationResult> results = FXCollections.observableArrayList();
     private final ObservableList<AudioMapping> audioMappings = FXCollections.observableArrayList();
 
     // 現在の処理タスク
     private Task<Void> currentTask;
+    // 処理タスクを実行するスレッド（中止した後も、処理中のタスクが終わるまでは動いている）
+    private Thread validationThread;
+    // 読み込み中の台本CSV
+    private Task<ScriptIndex> csvLoadTask;
+    // 直近の実行の処理段階ごとの集計
+    private volatile RunMetrics lastMetrics;
+
+    // 常駐Pythonワーカーのプール（実行をまたいで使い回す）
+    private PythonWorkerPool workerPool;
+
+    // 認識結果キャッシュ（ドキュメント/VoiceValidator/cache）
+    private RecognitionCache recognitionCache;
+
+    // ワーカーの異常が続いた音声ファイル（アプリの終了まで再処理しない）
+    private final Quarantine quarantine = new Quarantine(RetryPolicy.QUARANTINE_STRIKES);
+
+    // FFmpegが見つかったかどうか（見つからなかった場合はインストール後に再確認できるよう覚えない）
+    private boolean ffmpegFound;
+
+    // 台本と認識結果の採点（difflib互換）
+    private final SimilarityEngine similarityEngine = SimilarityEngine.difflibCompatible();
+    // 合格ラインと正規化の設定（変更時は認識結果を使って再採点する）
+    private ScoringProfile scoringProfile = ScoringProfile.DEFAULT;
 
     // 設定
     private final Preferences prefs = Preferences.userNodeForPackage(MainViewController.class);
@@ -206,13 +255,76 @@ public class MainViewController implements Initializable {
         whisperModelComboBox.setItems(FXCollections.observableArrayList("tiny", "base", "small", "medium", "large"));
         whisperModelComboBox.setValue("base");
 
+        // ワーカー1つあたりのスレッド数とワーカー数（既定: コア数 / スレッド数）
+        int cores = Runtime.getRuntime().availableProcessors();
+        int threads = Math.min(cores, Math.max(1, prefs.getInt("threadsPerWorker", Math.min(4, cores))));
+        threadsPerWorkerSpinner.setValueFactory(new SpinnerValueFactory.IntegerSpinnerValueFactory(1, cores, threads));
+        threadsPerWorkerSpinner.valueProperty().addListener((obs, o, n) -> {
+            if (n != null) prefs.putInt("threadsPerWorker", n);
+        });
+
+        int maxWorkers = Math.max(8, cores);
+        int workers = prefs.getInt("workerCount", ShardedDispatcher.defaultShardCount(threads));
+        workerCountSpinner.setValueFactory(new SpinnerValueFactory.IntegerSpinnerValueFactory(
+                1, maxWorkers, Math.min(maxWorkers, Math.max(1, workers))));
+        workerCountSpinner.valueProperty().addListener((obs, o, n) -> {
+            if (n != null) prefs.putInt("workerCount", n);
+        });
+
+        // 認識結果キャッシュ
+        useCacheCheckBox.setSelected(prefs.getBoolean("useRecognitionCache", true));
+        useCacheCheckBox.selectedProperty().addListener((obs, o, n) -> prefs.putBoolean("useRecognitionCache", n));
+
+        // 差分検証（前回から変わったタスクだけを検証）
+        incrementalCheckBox.setSelected(prefs.getBoolean("incrementalValidation", false));
+        incrementalCheckBox.selectedProperty().addListener((obs, o, n) -> prefs.putBoolean("incrementalValidation", n));
+
+        // 採点の設定（変更するとその場で再採点）
+        scoringProfile = ScoringProfile.load(prefs);
+        thresholdSpinner.setValueFactory(new SpinnerValueFactory.DoubleSpinnerValueFactory(0.0, 1.0, scoringProfile.threshold(), 0.01));
+        foldWidthCheckBox.setSelected(scoringProfile.foldWidth());
+        ignorePunctuationCheckBox.setSelected(scoringProfile.ignorePunctuation());
+        foldKanaCheckBox.setSelected(scoringProfile.foldKana());
+        thresholdSpinner.valueProperty().addListener((obs, o, n) -> updateScoringProfile());
+        foldWidthCheckBox.selectedProperty().addListener((obs, o, n) -> updateScoringProfile());
+        ignorePunctuationCheckBox.selectedProperty().addListener((obs, o, n) -> updateScoringProfile());
+        foldKanaCheckBox.selectedProperty().addListener((obs, o, n) -> updateScoringProfile());
+
+        // 1件あたりの制限時間（秒）
+        int timeout = prefs.getInt("taskTimeoutSeconds", (int) (RetryPolicy.DEFAULT.timeoutMillis() / 1000));
+        timeoutSpinner.setValueFactory(new SpinnerValueFactory.IntegerSpinnerValueFactory(10, 3600, Math.max(10, Math.min(3600, timeout)), 10));
+        timeoutSpinner.valueProperty().addListener((obs, o, n) -> {
+            if (n != null) prefs.putInt("taskTimeoutSeconds", n);
+        });
+
+        // 無音カット（しきい値はdBFS、余白はミリ秒）
+        AudioPreprocessor.Settings trim = AudioPreprocessor.Settings.DEFAULT;
+        trimSilenceCheckBox.setSelected(prefs.getBoolean("trimSilence", trim.trim()));
+        trimSilenceCheckBox.selectedProperty().addListener((obs, o, n) -> prefs.putBoolean("trimSilence", n));
+        int thresholdDb = prefs.getInt("silenceThresholdDb", (int) trim.thresholdDb());
+        silenceThresholdSpinner.setValueFactory(new SpinnerValueFactory.IntegerSpinnerValueFactory(-80, -10, Math.max(-80, Math.min(-10, thresholdDb))));
+        silenceThresholdSpinner.valueProperty().addListener((obs, o, n) -> {
+            if (n != null) prefs.putInt("silenceThresholdDb", n);
+        });
+        int padding = prefs.getInt("silencePaddingMs", trim.paddingMillis());
+        silencePaddingSpinner.setValueFactory(new SpinnerValueFactory.IntegerSpinnerValueFactory(0, 2000, Math.max(0, Math.min(2000, padding)), 50));
+        silencePaddingSpinner.valueProperty().addListener((obs, o, n) -> {
+            if (n != null) prefs.putInt("silencePaddingMs", n);
+        });
+        silenceThresholdSpinner.disableProperty().bind(trimSilenceCheckBox.selectedProperty().not());
+        silencePaddingSpinner.disableProperty().bind(trimSilenceCheckBox.selectedProperty().not());
+
         // デフォルト値
         languageCodeField.setText("ja-JP");
         columnNameField.setText("context");
+        mappingPatternField.setText(prefs.get("mappingPattern", ""));
+        mappingPatternField.textProperty().addListener((obs, o, n) -> prefs.put("mappingPattern", n != null ? n : ""));
 
         // テーブル
         setupAudioMappingTable();
         setupResultsTable();
+        // CSVプレビューで選択した行は詳細欄に全列を折り返して表示
+        csvPreviewTable.getSelectionModel().selectedItemProperty().addListener((obs, o, row) -> showCsvRowDetail(row));
         
         // テーブルの初期高さ設定
         setupTableHeights();
@@ -290,7 +402,11 @@ public class MainViewController implements Initializable {
                     AudioMapping rowItem = getTableRow() != null ? getTableRow().getItem() : null;
                     if (rowItem != null) {
                         String newVal = combo.getValue();
-                        preserveScrollBoth(audioMappingTable, mainScroll, () -> rowItem.setCsvId(newVal));
+                        // 手動で選んだ割り当ては自動割り当てで上書きしない
+                        preserveScrollBoth(audioMappingTable, mainScroll, () -> {
+                            rowItem.setCsvId(newVal);
+                            rowItem.setConfidence("未選択".equals(newVal) ? 0.0 : 1.0);
+                        });
                     }
                 });
             }
@@ -310,6 +426,27 @@ public class MainViewController implements Initializable {
             }
         });
 
+        // 一致度は色分けしてパーセント表示（未割り当ては空欄）
+        confidenceColumn.setCellValueFactory(new PropertyValueFactory<>("confidence"));
+        confidenceColumn.setCellFactory(col -> new TableCell<>() {
+            @Override protected void updateItem(Double c, boolean empty) {
+                super.updateItem(c, empty);
+                if (empty || c == null || c <= 0) {
+                    setText(null);
+                    setStyle("");
+                    return;
+                }
+
+                setText(String.format(Locale.US, "%.0f%%", c * 100));
+                if (c >= 0.9)
+                    setStyle("-fx-text-fill:#2E7D32;");
+                else if (c >= 0.6)
+                    setStyle("-fx-text-fill:#F57F17;");
+                else
+                    setStyle("-fx-text-fill:#C62828;");
+            }
+        });
+
         // データバインディング
         audioMappingTable.setItems(audioMappings);
         audioMappingTable.setEditable(true);
@@ -407,9 +544,9 @@ public class MainViewController implements Initializable {
                 }
                 
                 setText(String.format(Locale.US, "%.1f%%", s * 100));
-                if (s >= 0.9) 
+                if (s >= scoringProfile.threshold())
                     setStyle("-fx-background-color:#C8E6C9;-fx-text-fill:#2E7D32;");
-                else if (s >= 0.7) 
+                else if (s >= Math.min(0.7, scoringProfile.threshold()))
                     setStyle("-fx-background-color:#FFF9C4;-fx-text-fill:#F57F17;");
                 else 
                     setStyle("-fx-background-color:#FFCDD2;-fx-text-fill:#C62828;");
@@ -513,6 +650,8 @@ public class MainViewController implements Initializable {
      */
     private void setupCsvPreviewTable(List<String[]> data) {
         csvPreviewTable.getColumns().clear();
+        csvPreviewTable.setItems(FXCollections.emptyObservableList());
+        csvDetailArea.clear();
         if (data.isEmpty()) 
             return;
         
@@ -520,37 +659,21 @@ public class MainViewController implements Initializable {
         for (int i = 0; i < headers.length; i++) {
             final int idx = i;
             
-            TableColumn<ObservableList<String>, String> col = new TableColumn<>(headers[i]);
-            col.setCellValueFactory(param -> new javafx.beans.property.SimpleStringProperty(
-                    param.getValue().size() > idx ? param.getValue().get(idx) : ""));
-            col.setCellFactory(c -> new TableCell<>() {
-                private final Text text = new Text();
-                { text.wrappingWidthProperty().bind(col.widthProperty().subtract(16)); }
-                
-                // アイテム更新時にテキストを設定
-                @Override protected void updateItem(String item, boolean empty) {
-                    super.updateItem(item, empty);
-                    
-                    if (empty || item == null) {
-                        setGraphic(null); setText(null); 
-                    } else { 
-                        text.setText(item); 
-                        setGraphic(text);
-                        setContentDisplay(ContentDisplay.GRAPHIC_ONLY); 
-                        setPrefHeight(Region.USE_COMPUTED_SIZE); 
-                    }
-                }
-            });
+            // 行の高さを固定するため折り返さず1行で表示（全文は下の詳細欄に表示）
+            TableColumn<String[], String> col = new TableColumn<>(headers[i]);
+            col.setCellValueFactory(param -> new ReadOnlyStringWrapper(
+                    param.getValue().length > idx ? param.getValue()[idx] : ""));
+            col.setPrefWidth(idx == 0 ? 100 : 250);
             
             csvPreviewTable.getColumns().add(col);
         }
         
-        ObservableList<ObservableList<String>> tableData = FXCollections.observableArrayList();
-        for (int i = 1; i < data.size(); i++) 
-            tableData.add(FXCollections.observableArrayList(data.get(i)));
+        // パース済みの行をコピーせずにそのまま表示する（ヘッダ行を除いたビュー）
+        ObservableList<String[]> tableData = FXCollections.unmodifiableObservableList(
+                FXCollections.observableList(data.subList(1, data.size())));
         
         csvPreviewTable.setItems(tableData);
-        csvPreviewTable.setFixedCellSize(Region.USE_COMPUTED_SIZE);
+        csvPreviewTable.setFixedCellSize(28);
         
         // テーブルの高さを可変にする設定
         csvPreviewTable.setPrefHeight(Region.USE_COMPUTED_SIZE);
@@ -559,11 +682,31 @@ public class MainViewController implements Initializable {
         // データ量に応じて適切な高さを設定（最大500px、最小150px）
         Platform.runLater(() -> {
             int rowCount = Math.min(tableData.size() + 1, 15); // ヘッダー+データ行(最大15行)
-            double computedHeight = Math.max(150, Math.min(500, rowCount * 35 + 50)); // 1行35px+ヘッダー分
+            double computedHeight = Math.max(150, Math.min(500, rowCount * 28 + 50)); // 1行28px+ヘッダー分
             csvPreviewTable.setPrefHeight(computedHeight);
         });
     }
 
+    /**
+     * CSVプレビューで選択した行の全列を詳細欄に表示
+     * @param row 選択した行（未選択ならnull）
+     */
+    private void showCsvRowDetail(String[] row) {
+        if (row == null || scriptIndex.rows().isEmpty()) {
+            csvDetailArea.clear();
+            return;
+        }
+        
+        String[] headers = scriptIndex.rows().get(0);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < row.length; i++) {
+            if (i > 0)
+                sb.append('\n');
+            sb.append(i < headers.length ? headers[i] : "#" + (i + 1)).append(": ").append(row[i]);
+        }
+        csvDetailArea.setText(sb.toString());
+    }
+
     /**
      * デフォルト設定の読み込み
      */
@@ -767,62 +910,132 @@ public class MainViewController implements Initializable {
      * @param filePath CSVファイルのパス
      */
     private void loadCsvFile(String filePath) {
-        try {
-            csvData.clear();
-            csvIds.clear();
-            csvIds.add("未選択");
-            Path p = Paths.get(filePath);
-            if (!Files.exists(p))
-                return;
+        if (csvLoadTask != null)
+            csvLoadTask.cancel();
 
-            // まずUTF-8で読み込み、文字化けを検知したらWindows-31Jにフォールバック
-            List<String> lines = Files.readAllLines(p, StandardCharsets.UTF_8);
-            if (isLikelyMojibake(lines)) {
-                try {
-                    lines = Files.readAllLines(p, Charset.forName("Windows-31J"));
-                } catch (Exception ignore) { 
-                    /* 失敗してもUTF-8��まま続行 */
+        scriptIndex = ScriptIndex.build(List.of());
+        csvIds.setAll("未選択");
+        Path p = Paths.get(filePath);
+        if (!Files.isRegularFile(p))
+            return;
+
+        // 巨大な台本でもUIを止めないよう、読み込みと索引の作成はバックグラウンドで行う
+        Task<ScriptIndex> task = new Task<>() {
+            private Charset charset;
+
+            @Override protected ScriptIndex call() throws IOException {
+                FlightEvents.CsvLoad event = new FlightEvents.CsvLoad();
+                event.begin();
+                long size = Math.max(1, Files.size(p));
+                List<String[]> rows = new ArrayList<>();
+                try (CsvReader reader = CsvReader.open(p)) {
+                    charset = reader.charset();
+                    String[] row;
+                    while ((row = reader.next()) != null) {
+                        if (isCancelled())
+                            return null;
+                        rows.add(row);
+                        if ((rows.size() & 0xFFF) == 0)
+                            updateMessage("CSVファイルを読み込み中... " + (reader.bytesRead() * 100 / size) + "%");
+                    }
+                    event.finish(p, charset.name(), rows.size());
                 }
+                return ScriptIndex.build(rows);
             }
-            
-            if (lines.isEmpty())
-                return;
-            
-            for (int i = 0; i < lines.size(); i++) {
-                String[] row = lines.get(i).split(",", -1);
-                csvData.add(row);
-                
-                if (i > 0 && row.length > 0) 
-                    csvIds.add(row[0].trim());
+
+            @Override protected void succeeded() {
+                if (csvLoadTask != this)
+                    return;
+                applyScriptIndex(getValue(), charset);
             }
-            setupCsvPreviewTable(csvData);
-            showCardWithAnimation(csvPreviewCard);
-            updateStatus("CSVファイルを読み込みました", false);
-        } catch (Exception ex) {
-            updateStatus("CSVファイルの読み込みに失敗: " + ex.getMessage(), true);
-        }
+
+            @Override protected void failed() {
+                if (csvLoadTask != this)
+                    return;
+                Throwable ex = getException();
+                updateStatus("CSVファイルの読み込みに失敗: " + (ex != null ? ex.getMessage() : ""), true);
+            }
+        };
+        task.messageProperty().addListener((obs, o, n) -> {
+            if (csvLoadTask == task && n != null && !n.isEmpty())
+                updateStatus(n, false);
+        });
+
+        csvLoadTask = task;
+        updateStatus("CSVファイルを読み込み中...", false);
+        Thread th = new Thread(task, "csv-loader"); th.setDaemon(true); th.start();
     }
 
     /**
-     * 文字化けの簡易判定
-     * @param lines ファイルの行リスト
-     * @return 文字化けの可能性が高い場合にtrue
+     * 読み込んだ台本を画面に反映する
+     * @param index 台本の索引
+     * @param charset 判定した文字コード
      */
-    private boolean isLikelyMojibake(List<String> lines) {
-        // 先頭数行に"�"（置換文字）が一定以上あれば文字化けとみなす簡易判定
-        int check = Math.min(10, lines.size());
-        int junk = 0, total = 0;
-        for (int i = 0; i < check; i++) {
-            String s = lines.get(i);
-            total += s.length();
-            
-            for (int j = 0; j < s.length(); j++) if (s.charAt(j) == '\uFFFD')
-                junk++;
+    private void applyScriptIndex(ScriptIndex index, Charset charset) {
+        scriptIndex = index;
+        csvIds.setAll("未選択");
+        csvIds.addAll(index.ids());
+        if (index.rows().isEmpty())
+            return;
+
+        setupCsvPreviewTable(index.rows());
+        showCardWithAnimation(csvPreviewCard);
+        if (!audioMappings.isEmpty())
+            autoMapAudio();
+
+        String loaded = "CSVファイルを読み込みました (" + (index.rows().size() - 1) + "行, " + charset.displayName() + ")";
+        Map<String, List<Integer>> dup = index.duplicates();
+        if (dup.isEmpty()) {
+            updateStatus(loaded, false);
+        } else {
+            // 重複したIDは最初の行を使う
+            String detail = dup.entrySet().stream()
+                    .limit(5)
+                    .map(e -> e.getKey() + " (行 " + e.getValue().stream().map(String::valueOf).collect(Collectors.joining(", ")) + ")")
+                    .collect(Collectors.joining(", "));
+            updateStatus(loaded + "（IDの重複 " + dup.size() + "件: " + shorten(detail, 120) + "）", true);
         }
-        
-        return total > 0 && junk > Math.max(5, total / 20); // 5%超 or 5文字以上
     }
 
+    /**
+     * 音声ファイルにCSVのIDを自動で割り当てる
+     * 手動で選んだもの（一致度1.0）はそのまま残し、未選択と自動で割り当てたものだけを割り当て直す
+     */
+    @FXML private void autoMapAudio() {
+        if (scriptIndex.ids().isEmpty() || audioMappings.isEmpty())
+            return;
+
+        Pattern pattern = null;
+        try {
+            pattern = AutoMapper.compile(mappingPatternField.getText());
+        } catch (PatternSyntaxException ex) {
+            updateStatus("ファイル名パターンが不正です: " + ex.getDescription(), true);
+        }
+
+        AutoMapper mapper = new AutoMapper(scriptIndex.ids(), pattern);
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        int unmatched = 0;
+        for (AudioMapping m : audioMappings) {
+            if (m.getConfidence() >= 1.0 && !"未選択".equals(m.getCsvId()))
+                continue;
+
+            AutoMapper.Match match = mapper.map(m.getFileName());
+            if (match == null) {
+                m.setCsvId("未選択");
+                m.setConfidence(0.0);
+                unmatched++;
+            } else {
+                m.setCsvId(match.id());
+                m.setConfidence(match.confidence());
+                counts.merge(match.method(), 1, Integer::sum);
+            }
+        }
+
+        if (pattern != null || mappingPatternField.getText() == null || mappingPatternField.getText().isBlank()) {
+            updateStatus("自動割り当て: 完全一致 " + counts.getOrDefault("exact", 0) + "件, 正規表現 " + counts.getOrDefault("regex", 0)
+                    + "件, あいまい一致 " + counts.getOrDefault("fuzzy", 0) + "件, 未割り当て " + unmatched + "件", false);
+        }
+    }
 
     /**
      * 音声フォルダの読み込み
@@ -834,7 +1047,9 @@ public class MainViewController implements Initializable {
             Path dir = Paths.get(folderPath);
             if (!Files.exists(dir))
                 return;
-            
+
+            FlightEvents.AudioScan event = new FlightEvents.AudioScan();
+            event.begin();
             List<String> audioFiles = Files.list(dir)
                     .filter(path -> {
                         String n = path.getFileName().toString().toLowerCase(Locale.ROOT);
@@ -843,12 +1058,17 @@ public class MainViewController implements Initializable {
                     .map(path -> path.getFileName().toString())
                     .sorted()
                     .collect(Collectors.toList());
+            event.finish(dir, audioFiles.size());
             
+            List<AudioMapping> mappings = new ArrayList<>(audioFiles.size());
             for (String fn : audioFiles) 
-                audioMappings.add(new AudioMapping(fn, "未選択"));
+                mappings.add(new AudioMapping(fn, "未選択"));
+            audioMappings.setAll(mappings);
             
             showCardWithAnimation(audioMappingCard);
             updateStatus("音声フォルダを読み込みました (" + audioFiles.size() + "件)", false);
+            if (!scriptIndex.ids().isEmpty())
+                autoMapAudio();
         } catch (Exception ex) {
             updateStatus("音声フォルダの読み込みに失敗: " + ex.getMessage(), true);
         }
@@ -862,6 +1082,10 @@ public class MainViewController implements Initializable {
             currentTask.cancel(); 
             return; 
         }
+        if (validationThread != null && validationThread.isAlive()) {
+            updateStatus("停止しています。処理中のタスクが終わるまでお待ちください", false);
+            return;
+        }
         
         if (isEmpty(scriptPathField.getText()) || isEmpty(audioFolderPathField.getText())) {
             showAlert("エラー", "CSVファイルと音声フォルダを選択してください。");
@@ -878,9 +1102,52 @@ public class MainViewController implements Initializable {
             return;
         }
         
-        currentTask = createValidationTask(tasks);
+        Boolean resume = askResume(obtainWorkerPool().config(), tasks);
+        if (resume == null)
+            return;
+
+        currentTask = createValidationTask(tasks, resume);
         showCardWithAnimation(resultsCard);
-        Thread th = new Thread(currentTask); th.setDaemon(true); th.start();
+        validationThread = new Thread(currentTask);
+        validationThread.setDaemon(true);
+        validationThread.start();
+    }
+
+    /**
+     * 画面の無音カットの設定
+     * @return 設定
+     */
+    private AudioPreprocessor.Settings silenceSettings() {
+        return new AudioPreprocessor.Settings(
+                trimSilenceCheckBox.isSelected(), silenceThresholdSpinner.getValue(), silencePaddingSpinner.getValue());
+    }
+
+    /**
+     * 同じ入力の中断された実行があれば、再開するかどうかを確認する
+     * @param config ワーカーの起動設定
+     * @param tasks 処理タスクのリスト
+     * @return 再開する場合にtrue、最初からならfalse、取り消した場合はnull
+     */
+    private Boolean askResume(PythonWorkerPool.Config config, List<ProcessingTask> tasks) {
+        int done = RunJournal.countResumable(journalDirectory(), config, silenceSettings(), tasks);
+        if (done == 0)
+            return false;
+
+        ButtonType resume = new ButtonType("再開");
+        ButtonType restart = new ButtonType("最初から");
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+        alert.setTitle("前回の実行");
+        alert.setHeaderText(null);
+        alert.setContentText("同じ入力で中断された実行の記録があります（" + done + "/" + tasks.size() + "件完了）。\n"
+                + "完了済みの結果を読み込み、残りだけを検証しますか？");
+        alert.getButtonTypes().setAll(resume, restart, ButtonType.CANCEL);
+        if (statusLabel != null && statusLabel.getScene() != null)
+            alert.initOwner(statusLabel.getScene().getWindow());
+
+        Optional<ButtonType> answer = alert.showAndWait();
+        if (answer.isEmpty() || answer.get() == ButtonType.CANCEL)
+            return null;
+        return answer.get() == resume;
     }
 
     /**
@@ -889,17 +1156,16 @@ public class MainViewController implements Initializable {
      * @return チェックを通過した場合にtrue
      */
     private boolean preflightCheck(String engine) {
+        // WAV/AIFFはJava側でPCMに変換して渡すため、どのエンジンでもFFmpegを使わない
         boolean ffmpegNeeded = false;
-        if ("whisper".equals(engine)) {
-            ffmpegNeeded = true;
-        } else if ("google".equals(engine) || "sphinx".equals(engine)) {
-            for (AudioMapping m : audioMappings) {
-                if (!"未選択".equals(m.getCsvId())) {
-                    String name = m.getFileName().toLowerCase(Locale.ROOT);
-                    
-                    if (!(name.endsWith(".wav") || name.endsWith(".aiff") || name.endsWith(".aif") || name.endsWith(".flac"))) {
-                        ffmpegNeeded = true; break;
-                    }
+        for (AudioMapping m : audioMappings) {
+            if (!"未選択".equals(m.getCsvId())) {
+                String name = m.getFileName().toLowerCase(Locale.ROOT);
+                if (AudioDecoder.supports(name))
+                    continue;
+                // FLACはGoogle/SphinxならSpeechRecognitionが直接読める
+                if ("whisper".equals(engine) || !name.endsWith(".flac")) {
+                    ffmpegNeeded = true; break;
                 }
             }
         }
@@ -913,14 +1179,17 @@ public class MainViewController implements Initializable {
     }
 
     /**
-     * FFmpegが利用可能かどうかをチェック
+     * FFmpegが利用可能かどうかをチェック（見つかった場合は結果を覚え、以降の実行では起動しない）
      * @return 利用可能な場合にtrue
      */
     private boolean isFfmpegAvailable() {
+        if (ffmpegFound)
+            return true;
         try {
             Process p = new ProcessBuilder("ffmpeg", "-version").redirectErrorStream(true).start();
             int exit = p.waitFor();
-            return exit == 0;
+            ffmpegFound = exit == 0;
+            return ffmpegFound;
         } catch (Exception e) {
             return false;
         }
@@ -931,59 +1200,59 @@ public class MainViewController implements Initializable {
      * @return 準備された処理タスクのリスト
      */
     private List<ProcessingTask> prepareTasks() {
-        List<ProcessingTask> list = new ArrayList<>();
-        int scriptCol = -1;
-        if (!csvData.isEmpty()) {
-            String[] headers = csvData.get(0);
-            for (int i = 0; i < headers.length; i++) {
-                if (headers[i].trim().equals(columnNameField.getText().trim())) { 
-                    scriptCol = i; 
-                    break;
-                }
-            }
-        }
-        
+        List<ProcessingTask> list = new ArrayList<>(audioMappings.size());
+        int scriptCol = scriptIndex.columnOf(columnNameField.getText());
         if (scriptCol == -1) 
             return list;
         
+        String audioFolder = audioFolderPathField.getText();
         for (AudioMapping m : audioMappings) {
             if (!"未選択".equals(m.getCsvId())) {
-                String script = findScriptTextById(m.getCsvId(), scriptCol);
-                if (script != null) {
-                    String audioPath = Paths.get(audioFolderPathField.getText(), m.getFileName()).toString();
-                    list.add(new ProcessingTask(m.getCsvId(), audioPath, script));
-                }
+                ProcessingTask task = scriptIndex.task(m.getCsvId(), scriptCol, Paths.get(audioFolder, m.getFileName()).toString());
+                if (task != null)
+                    list.add(task);
             }
         }
         
         return list;
     }
 
-    /**
-     * 台本のセリフをIDから検索
-     * @param id 検索するID
-     * @param col セリフがある列番号
-     * @return 見つかった場合にテキスト、見つからなければnull
-     */
-    private String findScriptTextById(String id, int col) {
-        for (int i = 1; i < csvData.size(); i++) {
-            String[] row = csvData.get(i);
-            if (row.length > 0 && row[0].trim().equals(id) && row.length > col) 
-                return row[col].trim();
-        }
-        
-        return null;
-    }
-
     /**
      * 検証タスクの作成
      * @param tasks 処理タスクのリスト
+     * @param resume 中断された実行の記録から再開する場合はtrue
      * @return 作成されたTaskオブジェクト
      */
-    private Task<Void> createValidationTask(List<ProcessingTask> tasks) {
+    private Task<Void> createValidationTask(List<ProcessingTask> tasks, boolean resume) {
+        // UIの値はFXスレッドで確定させておく
+        PythonWorkerPool pool = obtainWorkerPool();
+        RecognitionCache cache = useCacheCheckBox.isSelected() ? obtainRecognitionCache() : null;
+        ScoringProfile profile = scoringProfile;
+        RetryPolicy retry = new RetryPolicy(timeoutSpinner.getValue() * 1000L, RetryPolicy.DEFAULT.maxAttempts(), RetryPolicy.DEFAULT.backoffMillis());
+        AudioPreprocessor audio = new AudioPreprocessor(silenceSettings());
+
+        // 結果は届いた順にチェックポイントへ記録し、中断やクラッシュの後に再開できるようにする
+        RunJournal journal;
+        try {
+            journal = RunJournal.open(journalDirectory(), pool.config(), audio.settings(), tasks, resume);
+        } catch (IOException ex) {
+            journal = null;
+            updateStatus("チェックポイントを作成できません（再開はできません）: " + ex.getMessage(), true);
+        }
+        RunJournal checkpoint = journal;
+        // 前回の実行との差分（差分検証がオフでも、次回のために記録は更新する）
+        RunManifest manifest = RunManifest.open(manifestDirectory(), pool.config(), audio.settings(),
+                Paths.get(scriptPathField.getText()), incrementalCheckBox.isSelected());
+        ValidationEngine engine = new ValidationEngine(pool, cache, similarityEngine, profile, retry, quarantine, audio, checkpoint, manifest);
+        boolean record = recordRunCheckBox.isSelected();
+
         return new Task<>() {
+            // 保存した実行の記録（完了時の表示用）
+            private volatile Path recorded;
+
             // 実際の処理は別スレッドで行う
             @Override protected Void call() {
+                Recording recording = record ? startRecording() : null;
                 Platform.runLater(() -> {
                     results.clear();
                     progressContainer.setVisible(true);
@@ -991,166 +1260,290 @@ public class MainViewController implements Initializable {
                     progressBar.setProgress(0);
                     progressLabel.setText("処理を開始しています...");
                 });
-                
-                // Pythonスクリプトの呼び出し
-                try {
-                    TaskListWrapper wrapper = new TaskListWrapper(tasks);
-                    Gson gson = new Gson();
-                    String json = gson.toJson(wrapper);
-                    File tmp = File.createTempFile("voice_validation_", ".json");
-                    Files.writeString(tmp.toPath(), json, StandardCharsets.UTF_8);
-
-                    String pythonPath = pythonPathField.getText();
-                    String scriptPath = findScriptPath();
-                    String engine = engineComboBox.getValue();
-                    String language = languageCodeField.getText();
-                    String model = "whisper".equals(engine) ? whisperModelComboBox.getValue() : "none";
-
-                    ProcessBuilder pb = new ProcessBuilder(pythonPath, scriptPath, engine, language, model, tmp.getAbsolutePath());
-                    Map<String, String> env = pb.environment();
-                    env.put("PYTHONIOENCODING", "utf-8");
-                    env.put("PYTHONUTF8", "1");
-                    pb.redirectErrorStream(false);
-                    Process pr = pb.start();
 
-                    StringBuilder out = new StringBuilder();
-                    StringBuilder err = new StringBuilder();
-
-                    // 標準出力と標準エラーを別スレッドで読み取る
-                    Thread outReader = new Thread(() -> {
-                        try (BufferedReader r = new BufferedReader(new InputStreamReader(pr.getInputStream(), StandardCharsets.UTF_8))) {
-                            String line; while ((line = r.readLine()) != null && !isCancelled()) {
-                                out.append(line).append('\n');
-                            }
-                        } catch (IOException ignored) {}
-                    }, "stdout-reader");
-                    
-                    Thread errReader = new Thread(() -> {
-                        try (BufferedReader r = new BufferedReader(new InputStreamReader(pr.getErrorStream(), StandardCharsets.UTF_8))) {
-                            String line; while ((line = r.readLine()) != null && !isCancelled()) {
-                                err.append(line).append('\n');
-                                // 進捗のパーセントを抽出
-                                if (line.matches(".*(\\d+)%.*")) {
-                                    try {
-                                        String pct = line.replaceAll(".*?(\\d+)%.*", "$1");
-                                        double progress = Double.parseDouble(pct) / 100.0;
-                                        Platform.runLater(() -> {
-                                            progressBar.setProgress(progress);
-                                            progressLabel.setText("処理中... " + pct + "%");
-                                        });
-                                    } catch (NumberFormatException ignore) {}
-                                }
-                            }
-                        } catch (IOException ignored) {}
-                    }, "stderr-reader");
-
-                    outReader.setDaemon(true); 
-                    errReader.setDaemon(true);
-                    outReader.start(); 
-                    errReader.start();
-
-                    int exit = pr.waitFor();
-                    outReader.join(2000); errReader.join(2000);
-                    tmp.delete();
-                    if (isCancelled()) 
-                        return null;
-
-                    String outStr = out.toString().trim();
-                    String errStr = err.toString().trim();
-
-                    if (!errStr.isEmpty()) {
-                        java.nio.file.Path logPath = null;
-                        try {
-                            logPath = java.nio.file.Files.createTempFile("vvt_python_", ".log");
-                            java.nio.file.Files.writeString(logPath, errStr, StandardCharsets.UTF_8);
-                        } catch (Exception ignore) {
-                            
-                        }
-                        
-                        final java.nio.file.Path finalLogPath = logPath;
-                        Platform.runLater(() -> updateStatus(
-                                "Python出力: " + shorten(errStr, 200) + (finalLogPath != null ? " (詳細: " + finalLogPath.toString() + ")" : ""),
-                                false));
-                    }
-
-                    boolean parsedAny = false;
-
-                    // まずは標準出力にJSONがあるか試す
-                    if (!outStr.isEmpty()) {
-                        try {
-                            BatchResult batch = gson.fromJson(outStr, BatchResult.class);
-                            Platform.runLater(() -> {
-                                if (batch != null && batch.results != null) {
-                                    for (PythonResult res : batch.results) {
-                                        String status = res.error != null ? "error" : (res.similarity >= 0.9 ? "success" : "warning");
-                                        results.add(new ValidationResult(res.id, res.similarity, res.script_text, res.recognized_text, status));
-                                    }
-                                }
-                            });
-                            parsedAny = true;
-                        } catch (Exception parseEx) {
-                            Platform.runLater(() -> updateStatus("結果JSONの解析に失敗: " + parseEx.getMessage(), true));
-                        }
-                    }
+                // 届いた結果はためておき、一定間隔ごとにまとめてテーブルと進捗へ反映する
+                ProgressTracker tracker = new ProgressTracker(tasks.size());
+                CoalescingSink<ValidationResult> sink = new CoalescingSink<>(Platform::runLater, UI_FLUSH_INTERVAL_MS, batch -> {
+                    // 実行中に採点の設定が変わった場合は追加前に合わせる
+                    if (!profile.equals(scoringProfile))
+                        rescore(batch);
+                    results.addAll(batch);
+                    showProgress(tracker.snapshot());
+                });
+                // 結果が届かない間も、処理段階の通知で処理中のファイルと経過時間を更新する
+                CoalescingSink<StageEvent> stages = new CoalescingSink<>(Platform::runLater, UI_FLUSH_INTERVAL_MS,
+                        batch -> showProgress(tracker.snapshot()));
+                engine.onStage(e -> {
+                    tracker.stage(e);
+                    stages.offer(e);
+                });
 
-                    // outにJSONが無くてもerrにJSONが含まれる場合があるので試す
-                    if (!parsedAny && !errStr.isEmpty()) {
-                        String jsonCandidate = extractJson(errStr);
-                        if (jsonCandidate != null) {
-                            try {
-                                BatchResult batch = gson.fromJson(jsonCandidate, BatchResult.class);
-                                Platform.runLater(() -> {
-                                    if (batch != null && batch.results != null) {
-                                        for (PythonResult res : batch.results) {
-                                            String status = res.error != null ? "error" : (res.similarity >= 0.9 ? "success" : "warning");
-                                            results.add(new ValidationResult(res.id, res.similarity, res.script_text, res.recognized_text, status));
-                                        }
-                                        if (!batch.results.isEmpty()) {
-                                            String reason = batch.results.get(0).error;
-                                            if (reason != null) 
-                                                showDependencyHint(reason);
-                                        }
-                                    }
-                                });
-                                
-                                parsedAny = true;
-                            } catch (Exception ignore) {
-                                // JSONではない
-                            }
-                        }
-                    }
+                // 検証サービスの結果を購読し、届いた順にテーブルへ追加
+                Map<PythonResult, ValidationResult> rows = new IdentityHashMap<>();
+                AtomicBoolean hintShown = new AtomicBoolean();
+                ValidationEngine.ResultSubscriber subscriber = ValidationEngine.each(res -> {
+                    ValidationResult row = ValidationResult.of(res, profile);
+                    rows.put(res, row);
+                    tracker.completed(res.id, !res.replayed);
+                    sink.offer(row);
+                    if (res.error != null && hintShown.compareAndSet(false, true))
+                        Platform.runLater(() -> showDependencyHint(res.error));
+                });
 
-                    if (!parsedAny && exit != 0) {
-                        Platform.runLater(() -> updateStatus("Pythonが異常終了しました (exit=" + exit + ")", true));
+                ValidationEngine.Run run = engine.submit(tasks, subscriber);
+                boolean allSucceeded = false;
+                try {
+                    List<PythonResult> ordered = ValidationEngine.await(run);
+                    subscriber.done().join();
+                    sink.flushNow();
+                    allSucceeded = ordered.size() == tasks.size() && ordered.stream().allMatch(r -> r.error == null);
+
+                    // 完了後は元のタスク順に並べ直す
+                    List<ValidationResult> sorted = new ArrayList<>(ordered.size());
+                    for (PythonResult res : ordered) {
+                        ValidationResult row = rows.get(res);
+                        if (row != null)
+                            sorted.add(row);
                     }
+                    Platform.runLater(() -> results.setAll(sorted));
+                } catch (InterruptedException ex) {
+                    // 停止ボタン（Taskの中止）で割り込まれた場合は残りのタスクを止める
+                    // 処理中のタスクは止められないので、終わった結果を表と記録に入れてからチェックポイントを閉じる（待つ間の割り込みは無視する）
+                    run.cancel();
+                    run.completion().handle((r, e) -> null).join();
+                    subscriber.done().handle((r, e) -> null).join();
+                    sink.flushNow();
                 } catch (Exception ex) {
                     Platform.runLater(() -> updateStatus("処理中にエラー: " + ex.getMessage(), true));
+                } finally {
+                    engine.onStage(null);
+                    closeJournal(checkpoint, allSucceeded);
+                    saveManifest(manifest, tasks);
+                    saveMetrics(engine.metrics());
+                    if (recording != null)
+                        recorded = saveRecording(recording);
+                    // 中止の表示は、処理中だったタスクの結果を反映した後に出す
+                    if (isCancelled())
+                        finishProgress("処理が中止されました", false);
                 }
-                
+
                 return null;
             }
             
-            @Override protected void succeeded() { finishProgress("検証が完了しました (" + results.size() + "件)", false); }
-            @Override protected void cancelled() { finishProgress("処理が中止されました", false); }
+            @Override protected void succeeded() {
+                String cacheInfo = cache != null ? ", キャッシュヒット " + engine.cacheHits() + "件" : "";
+                String quarantineInfo = engine.quarantined() > 0 ? ", 隔離 " + engine.quarantined() + "件" : "";
+                String resumeInfo = checkpoint != null && checkpoint.replayed() > 0 ? ", 再開 " + checkpoint.replayed() + "件" : "";
+                String carryInfo = manifest.carried() > 0 ? ", 前回から引き継ぎ " + manifest.carried() + "件" : "";
+                String trimInfo = audio.trimmedSeconds() > 0
+                        ? String.format(Locale.US, ", 無音カット %.1f秒", audio.trimmedSeconds()) : "";
+                String silentInfo = audio.silentTakes() > 0 ? ", 無音のテイク " + audio.silentTakes() + "件" : "";
+                String recordInfo = recorded != null ? ", 記録 " + recorded.getFileName() : "";
+                finishProgress("検証が完了しました (" + results.size() + "件" + carryInfo + resumeInfo + cacheInfo
+                        + trimInfo + silentInfo + quarantineInfo + recordInfo + ")", false);
+            }
+            @Override protected void cancelled() { progressLabel.setText("停止しています（処理中のタスクの完了を待っています）..."); }
             @Override protected void failed() { finishProgress("処理が失敗しました", true); }
         };
     }
-    
+
+
     /**
-     * 標準エラー出力からJSON部分を抽出するユーティリティ
-     * @param s 標準エラー出力の文字列
-     * @return 抽出されたJSON文字列、見つからなければnull
-     */
-    private String extractJson(String s) {
-        int start = s.lastIndexOf('{');
-        int end = s.lastIndexOf('}');
-        if (start >= 0 && end > start) {
-            String candidate = s.substring(start, end + 1).trim();
-            if (candidate.contains("\"results\"")) 
-                return candidate;
+     * チェックポイントを閉じる（全件が成功した場合は不要なので削除し、それ以外は再開用に残す）
+     * @param journal チェックポイント（nullなら何もしない）
+     * @param allSucceeded 全件が成功した場合にtrue
+     */
+    private void closeJournal(RunJournal journal, boolean allSucceeded) {
+        if (journal == null)
+            return;
+        try {
+            if (allSucceeded)
+                journal.finish();
+            else
+                journal.close();
+        } catch (IOException ex) {
+            Platform.runLater(() -> updateStatus("チェックポイントの保存に失敗: " + ex.getMessage(), true));
         }
-        
-        return null;
+    }
+
+    /**
+     * 前回の実行のマニフェストを保存する（中止した場合も、そこまでの結果を次回の差分検証に使う）
+     * @param manifest マニフェスト
+     * @param tasks 今回の実行の全タスク（これ以外の記録は捨てる）
+     */
+    private void saveManifest(RunManifest manifest, List<ProcessingTask> tasks) {
+        try {
+            manifest.save(tasks);
+        } catch (IOException ex) {
+            Platform.runLater(() -> updateStatus("マニフェストの保存に失敗（次回の差分検証は全件になります）: " + ex.getMessage(), true));
+        }
+    }
+
+    /**
+     * 実行の記録を開始する（開始できなければ記録せずに検証を続ける）
+     * @return 開始した記録、失敗した場合はnull
+     */
+    private Recording startRecording() {
+        try {
+            return FlightEvents.startRecording("voiceover-validation");
+        } catch (IOException | RuntimeException ex) {
+            Platform.runLater(() -> updateStatus("実行の記録を開始できません: " + ex.getMessage(), true));
+            return null;
+        }
+    }
+
+    /**
+     * 実行の記録を止めて、ドキュメント/VoiceValidator/recordings に run_日時.jfr として保存する
+     * @param recording 記録
+     * @return 保存したファイル、失敗した場合はnull
+     */
+    private Path saveRecording(Recording recording) {
+        String ts = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
+        Path file = new File(AppDirectories.documentsDirectory(), "VoiceValidator/recordings/run_" + ts + ".jfr").toPath();
+        try {
+            FlightEvents.stopRecording(recording, file);
+            return file;
+        } catch (IOException ex) {
+            Platform.runLater(() -> showAlert("エラー", "実行の記録を保存できません: " + ex.getMessage()));
+            return null;
+        }
+    }
+
+    /**
+     * 処理の内訳を表示し、ドキュメント/VoiceValidator/metrics に last_run.json と last_run.prom として書き出す
+     * .prom は node_exporter の textfile collector で読み込めば、マシンごとの処理時間を並べて比べられる
+     * @param metrics 実行の集計
+     */
+    private void saveMetrics(RunMetrics metrics) {
+        lastMetrics = metrics;
+        String summary = metrics.summary();
+        Platform.runLater(() -> metricsArea.setText(summary));
+        Path dir = new File(AppDirectories.documentsDirectory(), "VoiceValidator/metrics").toPath();
+        try {
+            metrics.write(dir.resolve("last_run.json"));
+            metrics.write(dir.resolve("last_run.prom"));
+        } catch (IOException ex) {
+            Platform.runLater(() -> updateStatus("処理の内訳を書き出せません: " + ex.getMessage(), true));
+        }
+    }
+
+    /**
+     * マニフェストの保存先（ドキュメント/VoiceValidator/manifest）
+     * @return 保存先のフォルダ
+     */
+    private Path manifestDirectory() {
+        return new File(AppDirectories.documentsDirectory(), "VoiceValidator/manifest").toPath();
+    }
+
+    /**
+     * チェックポイントの保存先（ドキュメント/VoiceValidator/journal）
+     * @return 保存先のフォルダ
+     */
+    private Path journalDirectory() {
+        return new File(AppDirectories.documentsDirectory(), "VoiceValidator/journal").toPath();
+    }
+
+    /**
+     * 進捗バーとラベルを更新（FXスレッドで呼ぶ）
+     * @param p 現在の進捗
+     */
+    private void showProgress(ProgressTracker.Snapshot p) {
+        progressBar.setProgress(p.fraction());
+        progressLabel.setText(p.format());
+    }
+
+    /**
+     * UIから採点の設定を読み取り、保存して既存の結果を再採点する
+     */
+    private void updateScoringProfile() {
+        Double threshold = thresholdSpinner.getValue();
+        ScoringProfile next = new ScoringProfile(
+                threshold != null ? threshold : ScoringProfile.DEFAULT.threshold(),
+                foldWidthCheckBox.isSelected(),
+                ignorePunctuationCheckBox.isSelected(),
+                foldKanaCheckBox.isSelected());
+        if (next.equals(scoringProfile))
+            return;
+
+        scoringProfile = next;
+        next.save(prefs);
+
+        if (results.isEmpty())
+            return;
+        long start = System.nanoTime();
+        rescore(results);
+        // 色分けは合格ラインにも依存するので表示を更新
+        resultTable.refresh();
+        long ms = (System.nanoTime() - start) / 1_000_000;
+        updateStatus("再採点しました (" + results.size() + "件, " + ms + "ms)", false);
+    }
+
+    /**
+     * 認識結果はそのままに、現在の採点設定で類似度とステータスを計算し直す（FXスレッドで呼ぶ）
+     * 類似度の計算は並列に行い、反映だけをまとめてFXスレッドで行う
+     * @param rows 対象の検証結果
+     */
+    private void rescore(List<ValidationResult> rows) {
+        ScoringProfile profile = scoringProfile;
+        ValidationResult[] targets = rows.toArray(new ValidationResult[0]);
+        double[] sims = new double[targets.length];
+        IntStream.range(0, targets.length).parallel().forEach(i -> {
+            ValidationResult r = targets[i];
+            if (!"error".equals(r.getStatus()))
+                sims[i] = similarityEngine.ratio(profile.normalize(r.getScriptText()), profile.normalize(r.getRecognizedText()));
+        });
+
+        for (int i = 0; i < targets.length; i++) {
+            ValidationResult r = targets[i];
+            if ("error".equals(r.getStatus()))
+                continue;
+            r.setSimilarity(sims[i]);
+            r.setStatus(profile.status(sims[i]));
+        }
+    }
+
+    /**
+     * 現在の設定に合うワーカープールを取得（設定が変わっていれば作り直す）
+     * @return ワーカープール
+     */
+    private PythonWorkerPool obtainWorkerPool() {
+        String engine = engineComboBox.getValue();
+        PythonWorkerPool.Config config = new PythonWorkerPool.Config(
+                pythonPathField.getText(),
+                PythonWorkerPool.findScript(),
+                engine,
+                languageCodeField.getText(),
+                "whisper".equals(engine) ? whisperModelComboBox.getValue() : "none",
+                threadsPerWorkerSpinner.getValue());
+        int size = workerCountSpinner.getValue();
+
+        if (workerPool == null || !workerPool.matches(config, size)) {
+            if (workerPool != null)
+                workerPool.close();
+            workerPool = new PythonWorkerPool(config, size);
+        }
+
+        return workerPool;
+    }
+
+    /**
+     * 認識結果キャッシュを取得（初回のみ作成）
+     * @return 認識結果キャッシュ
+     */
+    private RecognitionCache obtainRecognitionCache() {
+        if (recognitionCache == null)
+            recognitionCache = new RecognitionCache(new File(AppDirectories.documentsDirectory(), "VoiceValidator/cache"));
+        return recognitionCache;
+    }
+
+    /**
+     * アプリケーション終了時の後始末
+     */
+    public void shutdown() {
+        if (currentTask != null)
+            currentTask.cancel();
+        if (workerPool != null)
+            workerPool.close();
     }
     
     /**
@@ -1227,46 +1620,9 @@ public class MainViewController implements Initializable {
     private void setupTableHeights() {
         csvPreviewTable.setPrefHeight(Region.USE_COMPUTED_SIZE);
         csvPreviewTable.setMaxHeight(Double.MAX_VALUE);
-        csvPreviewTable.setFixedCellSize(Region.USE_COMPUTED_SIZE);
+        csvPreviewTable.setFixedCellSize(28);
     }
 
-    /**
-     * Pythonスクリプトのパスを探索
-     * @return 見つかった場合に絶対パス、見つからなければ"RecognizeAndCompare.py"
-     */
-    private String findScriptPath() {
-        // カレントディレクトリ直下
-        File f1 = new File("RecognizeAndCompare.py");
-        if (f1.exists()) 
-            return f1.getAbsolutePath();
-        
-        // 実行Jar/クラスの親ディレクトリ
-        try {
-            String base = new File(VoiceoverValidationApp.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getParent();
-            File f2 = new File(base, "RecognizeAndCompare.py");
-            if (f2.exists()) 
-                return f2.getAbsolutePath();
-        } catch (Exception ignored) {
-            
-        }
-        
-        // プロジェクトルート推定（resources->../../..）
-        try {
-            Path p = Paths.get(".").toAbsolutePath().normalize();
-            while (p != null) {
-                File f3 = p.resolve("RecognizeAndCompare.py").toFile();
-                if (f3.exists()) 
-                    return f3.getAbsolutePath();
-                
-                p = p.getParent();
-            }
-        } catch (Exception ignored) {
-            
-        }
-        
-        // 見つからなければ名前のみ返す
-        return "RecognizeAndCompare.py";
-    }
 
     /**
      * 進捗を終了し、UIを更新
@@ -1381,7 +1737,7 @@ public class MainViewController implements Initializable {
         }
         
         // 既定の保存先: ドキュメント/VoiceValidator/results
-        File initialDir = new File(getDocumentsDirectory(), "VoiceValidator/results");
+        File initialDir = new File(AppDirectories.documentsDirectory(), "VoiceValidator/results");
         if (!initialDir.exists()) initialDir.mkdirs();
         String ts = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
         File defaultFile = new File(initialDir, "results_" + ts + ".csv");
@@ -1395,49 +1751,47 @@ public class MainViewController implements Initializable {
         if (f == null) 
             return;
         
-        try (BufferedWriter w = Files.newBufferedWriter(f.toPath(), StandardCharsets.UTF_8)) {
-            w.write("id,similarity,script,recognized,status\n");
-            for (ValidationResult r : results) {
-                String line = String.join(",",
-                        escapeCsv(r.getId()),
-                        String.format(Locale.US, "%.4f", r.getSimilarity()),
-                        escapeCsv(r.getScriptText()),
-                        escapeCsv(r.getRecognizedText()),
-                        escapeCsv(r.getStatus()));
-                w.write(line); w.write("\n");
-            }
+        try {
+            ResultExporter.writeCsv(f.toPath(), results);
             updateStatus("結果を保存しました: " + f.getName(), false);
         } catch (IOException ex) {
             updateStatus("保存に失敗: " + ex.getMessage(), true);
         }
     }
 
-    // ユーザーのドキュメントフォルダを取得（フォールバック込）
-    private File getDocumentsDirectory() {
-        try {
-            File def = FileSystemView.getFileSystemView().getDefaultDirectory();
-            if (def != null && def.exists()) return def;
-        } catch (Throwable ignored) { }
-        File fb = new File(System.getProperty("user.home"), "Documents");
-        if (!fb.exists()) fb.mkdirs();
-        return fb;
-    }
-
     /**
-     * CSV用に文字列をエスケープ
-     * @param s エスケープする文字列
-     * @return エスケープされた文字列
+     * 処理の内訳の書き出し（.prom なら Prometheus のテキスト形式、それ以外はJSON）
      */
-    private String escapeCsv(String s) {
-        if (s == null) 
-            return "";
-        
-        if (s.contains("\"") || s.contains(",") || s.contains("\n") || s.contains("\r")) {
-            return '"' + s.replace("\"", "\"\"") + '"';
+    @FXML private void exportMetrics() {
+        RunMetrics metrics = lastMetrics;
+        if (metrics == null) {
+            showAlert("情報", "書き出す処理の内訳がありません。検証を実行してください。");
+            return;
+        }
+
+        File initialDir = new File(AppDirectories.documentsDirectory(), "VoiceValidator/metrics");
+        if (!initialDir.exists()) initialDir.mkdirs();
+        String ts = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
+
+        FileChooser ch = new FileChooser();
+        ch.setTitle("処理の内訳を保存");
+        ch.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("JSON", "*.json"),
+                new FileChooser.ExtensionFilter("Prometheus", "*.prom"));
+        try { ch.setInitialDirectory(initialDir); } catch (Exception ignored) {}
+        ch.setInitialFileName("metrics_" + ts + ".json");
+        File f = ch.showSaveDialog(statusLabel != null ? statusLabel.getScene().getWindow() : null);
+        if (f == null)
+            return;
+
+        try {
+            metrics.write(f.toPath());
+            updateStatus("処理の内訳を保存しました: " + f.getName(), false);
+        } catch (IOException ex) {
+            updateStatus("保存に失敗: " + ex.getMessage(), true);
         }
-        
-        return s;
     }
+
     
     /**
      * 環境チェックの実行
@@ -0,0 +1,130 @@
+package koto_thing.voiceover_validator;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.function.Consumer;
+
+/**
+ * 1行1JSONで流れてくる結果をストリームのまま逐次パースするリーダー
+ * 出力全体を文字列に溜めずに、届いたオブジェクトから順に取り出す
+ * "event" キーを持つ行は結果ではなく処理段階の通知として扱う
+ */
+class NdjsonResultReader implements Closeable {
+    private final Gson gson;
+    private final JsonReader reader;
+    // 直前に読み取った結果のパースにかかった時間（届くのを待つ時間は含めない）
+    private long lastParseNanos;
+
+    /**
+     * コンストラクタ
+     * @param in 入力ストリーム（呼び出し側でバッファリングしておくこと）
+     * @param gson 使用するGsonインスタンス
+     */
+    NdjsonResultReader(Reader in, Gson gson) {
+        this.gson = gson;
+        this.reader = new JsonReader(in);
+        // 複数のトップレベル値を連続して読むために寛容モードにする
+        this.reader.setLenient(true);
+    }
+
+    /**
+     * 次のオブジェクトを指定の型として読み取る
+     * @param type 読み取る型
+     * @return 読み取ったオブジェクト、ストリームの終端ならnull
+     * @throws IOException 読み取りまたはパースに失敗した場合
+     */
+    <T> T next(Class<T> type) throws IOException {
+        if (reader.peek() == JsonToken.END_DOCUMENT)
+            return null;
+
+        try {
+            return gson.fromJson(reader, type);
+        } catch (JsonParseException ex) {
+            throw new IOException("結果JSONの解析に失敗: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * 次の結果を読み取る
+     * @return 読み取った結果、ストリームの終端ならnull
+     * @throws IOException 読み取りまたはパースに失敗した場合
+     */
+    PythonResult next() throws IOException {
+        return next(PythonResult.class);
+    }
+
+    /**
+     * 次の結果を読み取る（それまでに届いた処理段階の通知はリスナーに渡す）
+     * @param onEvent 通知を受け取るリスナー
+     * @return 読み取った結果、ストリームの終端ならnull
+     * @throws IOException 読み取りまたはパースに失敗した場合
+     */
+    PythonResult next(Consumer<StageEvent> onEvent) throws IOException {
+        while (reader.peek() != JsonToken.END_DOCUMENT) {
+            long begin = System.nanoTime();
+            FlightEvents.ResultParse event = new FlightEvents.ResultParse();
+            event.begin();
+            JsonObject obj;
+            try {
+                JsonElement el = JsonParser.parseReader(reader);
+                if (!el.isJsonObject())
+                    throw new JsonParseException("オブジェクトではありません: " + el);
+                obj = el.getAsJsonObject();
+                if (!obj.has("event")) {
+                    PythonResult res = gson.fromJson(obj, PythonResult.class);
+                    lastParseNanos = System.nanoTime() - begin;
+                    event.taskId = res.id;
+                    event.error = res.error != null;
+                    event.commit();
+                    return res;
+                }
+            } catch (JsonParseException | IllegalStateException ex) {
+                throw new IOException("結果JSONの解析に失敗: " + ex.getMessage(), ex);
+            }
+
+            if ("stage".equals(string(obj, "event")))
+                onEvent.accept(new StageEvent(string(obj, "id"), string(obj, "stage"), obj.has("elapsedMs") ? obj.get("elapsedMs").getAsLong() : 0));
+        }
+        return null;
+    }
+
+    /**
+     * 直前に {@link #next(Consumer)} で読み取った結果のパースにかかった時間
+     * @return ナノ秒
+     */
+    long lastParseNanos() {
+        return lastParseNanos;
+    }
+
+    private static String string(JsonObject obj, String key) {
+        JsonElement el = obj.get(key);
+        return el != null && !el.isJsonNull() ? el.getAsString() : null;
+    }
+
+    /**
+     * 次の値を読み飛ばす（ハンドシェイク行など）
+     * @return 読み飛ばした場合にtrue、終端ならfalse
+     * @throws IOException 読み取りに失敗した場合
+     */
+    boolean skip() throws IOException {
+        if (reader.peek() == JsonToken.END_DOCUMENT)
+            return false;
+
+        reader.skipValue();
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,131 @@
+package koto_thing.voiceover_validator;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 実行中の進捗（完了件数・処理中のタスクの段階・スループット・残り時間）を集計する
+ * ワーカーからの処理段階の通知と完了した結果を受け取り、表示用の {@link Snapshot} を作る
+ * スループットは直近の完了時刻から求め、モデルの読み込みなど最初の待ち時間に引きずられないようにする
+ */
+final class ProgressTracker {
+
+    // スループットの計算に使う直近の完了件数
+    private static final int WINDOW = 50;
+
+    /**
+     * ある時点の進捗
+     * @param done 完了件数
+     * @param total 全件数
+     * @param perSecond 1秒あたりの完了件数（計算できなければ0）
+     * @param etaSeconds 残り時間の見込み（秒、計算できなければ-1）
+     * @param current 直近に段階が進んだ処理中のタスク（なければnull）
+     */
+    record Snapshot(int done, int total, double perSecond, long etaSeconds, StageEvent current) {
+
+        double fraction() {
+            return total == 0 ? 1.0 : (double) done / total;
+        }
+
+        /**
+         * 表示用の文字列（例: "処理中... 120/1000 (3.2件/秒, 残り約4分35秒) 001: 認識中 1.2秒"）
+         * @return 表示用の文字列
+         */
+        String format() {
+            StringBuilder sb = new StringBuilder("処理中... ").append(done).append('/').append(total);
+            if (perSecond > 0) {
+                sb.append(String.format(Locale.US, " (%.1f件/秒", perSecond));
+                if (etaSeconds >= 0)
+                    sb.append(", 残り約").append(duration(etaSeconds));
+                sb.append(')');
+            }
+            if (current != null)
+                sb.append(String.format(Locale.US, " %s: %s %.1f秒", current.id(), stageLabel(current.stage()), current.elapsedMs() / 1000.0));
+            return sb.toString();
+        }
+    }
+
+    private final int total;
+    private final long start = System.nanoTime();
+    private final ArrayDeque<Long> completions = new ArrayDeque<>();
+    // 処理中のタスクID -> 最後に届いた段階の通知（通知順）
+    private final Map<String, StageEvent> inFlight = new LinkedHashMap<>();
+    private int done;
+
+    /**
+     * コンストラクタ
+     * @param total 全件数
+     */
+    ProgressTracker(int total) {
+        this.total = total;
+    }
+
+    /**
+     * 処理段階の通知を記録（どのスレッドから呼んでもよい）
+     * @param e 処理段階の通知
+     */
+    synchronized void stage(StageEvent e) {
+        if (e.id() == null)
+            return;
+        inFlight.remove(e.id());
+        inFlight.put(e.id(), e);
+    }
+
+    /**
+     * タスクの完了を記録（どのスレッドから呼んでもよい）
+     * @param id 完了したタスクのID
+     * @param measured スループットの計算に含める場合はtrue（チェックポイントから再生した結果はfalse）
+     */
+    synchronized void completed(String id, boolean measured) {
+        done++;
+        if (id != null)
+            inFlight.remove(id);
+        if (!measured)
+            return;
+        completions.addLast(System.nanoTime());
+        if (completions.size() > WINDOW)
+            completions.removeFirst();
+    }
+
+    /**
+     * 現在の進捗
+     * @return 進捗
+     */
+    synchronized Snapshot snapshot() {
+        double perSecond = 0;
+        if (completions.size() >= 2) {
+            double sec = (completions.getLast() - completions.getFirst()) / 1e9;
+            if (sec > 0)
+                perSecond = (completions.size() - 1) / sec;
+        } else if (completions.size() == 1) {
+            perSecond = 1 / ((completions.getFirst() - start) / 1e9);
+        }
+
+        long eta = perSecond > 0 ? Math.round((total - done) / perSecond) : -1;
+        StageEvent current = null;
+        for (StageEvent e : inFlight.values())
+            current = e;
+        return new Snapshot(done, total, perSecond, eta, current);
+    }
+
+    private static String stageLabel(String stage) {
+        if (stage == null)
+            return "";
+        return switch (stage) {
+            case "decode" -> "変換中";
+            case "recognize" -> "認識中";
+            case "score" -> "採点中";
+            default -> stage;
+        };
+    }
+
+    private static String duration(long seconds) {
+        if (seconds < 60)
+            return seconds + "秒";
+        if (seconds < 3600)
+            return (seconds / 60) + "分" + (seconds % 60) + "秒";
+        return (seconds / 3600) + "時間" + (seconds % 3600 / 60) + "分";
+    }
+}
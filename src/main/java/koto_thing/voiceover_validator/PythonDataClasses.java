@@ -9,6 +9,8 @@ class ProcessingTask {
     public String id;
     public String audioPath;
     public String scriptText;
+    // Java側で変換済みの16kHz・モノラルのPCM（ワーカーへの受け渡し用、JSONには含めない）
+    transient byte[] pcm;
     
     public ProcessingTask() {}
     
@@ -24,6 +26,17 @@ class ProcessingTask {
     public void setAudioPath(String audioPath) { this.audioPath = audioPath; }
     public String getScriptText() { return scriptText; }
     public void setScriptText(String scriptText) { this.scriptText = scriptText; }
+
+    /**
+     * PCMを付けた複製（元のタスクにはPCMを持たせず、処理が終われば解放されるようにする）
+     * @param pcm 16kHz・モノラル・16bitのPCM
+     * @return 複製したタスク
+     */
+    ProcessingTask withPcm(byte[] pcm) {
+        ProcessingTask t = new ProcessingTask(id, audioPath, scriptText);
+        t.pcm = pcm;
+        return t;
+    }
 }
 
 /**
@@ -49,10 +62,63 @@ class PythonResult {
     public String recognized_text;
     public String[] diff;
     public String error;
-    
+    // 再試行で回復しうる失敗（通信エラー、ワーカーの異常終了・タイムアウト）
+    public boolean retryable;
+    // ワーカー自体の異常（異常終了・タイムアウト）による失敗。同じファイルで続く場合は隔離する（Java側のみ）
+    transient boolean workerFailure;
+    // チェックポイントから再生した結果（Java側のみ）
+    transient boolean replayed;
+    // 処理段階ごとの所要時間（ナノ秒、RunMetrics.Stage の順。Java側のみ）
+    transient long[] times;
+
     public PythonResult() {}
+
+    /**
+     * 処理段階の所要時間を足す
+     * @param stage 処理段階
+     * @param nanos 所要時間（ナノ秒）
+     */
+    void addTime(RunMetrics.Stage stage, long nanos) {
+        if (times == null)
+            times = new long[RunMetrics.Stage.values().length];
+        times[stage.ordinal()] += nanos;
+    }
+
+    /**
+     * 処理段階の所要時間
+     * @param stage 処理段階
+     * @return 所要時間（ナノ秒、記録がなければ0）
+     */
+    long time(RunMetrics.Stage stage) {
+        return times != null ? times[stage.ordinal()] : 0;
+    }
+
+    /**
+     * Java側で発生したエラーを結果として表す
+     * @param task 対象のタスク
+     * @param reason エラー理由
+     * @return エラー結果
+     */
+    static PythonResult error(ProcessingTask task, String reason) {
+        PythonResult r = new PythonResult();
+        r.id = task.id;
+        r.similarity = 0.0;
+        r.script_text = task.scriptText;
+        r.recognized_text = "";
+        r.diff = new String[0];
+        r.error = reason;
+        return r;
+    }
 }
 
+/**
+ * ワーカーから届く処理段階の通知（結果の行とは "event" キーの有無で区別する）
+ * @param id タスクのID
+ * @param stage 開始した段階（"decode" / "recognize" / "score"）
+ * @param elapsedMs タスクの受け取りからの経過時間（ミリ秒）
+ */
+record StageEvent(String id, String stage, long elapsedMs) {}
+
 /**
  * Pythonからのバッチ結果を受け取るクラス
  */
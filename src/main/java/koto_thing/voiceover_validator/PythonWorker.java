@@ -0,0 +1,258 @@
+package koto_thing.voiceover_validator;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * 常駐するPythonワーカープロセス1つを表すクラス
+ * 標準入出力で1行1JSONのやり取りを行う
+ */
+class PythonWorker implements Closeable {
+
+    /**
+     * タスクが制限時間内に終わらず、ワーカーを強制終了した
+     */
+    static final class TaskTimeoutException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        TaskTimeoutException(long timeoutMillis) {
+            super("タイムアウトしました (" + timeoutMillis / 1000 + "秒)");
+        }
+    }
+
+    // 制限時間を過ぎたワーカーを止めるタイマー（全ワーカーで共有）
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "worker-watchdog");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final PythonWorkerPool.Config config;
+    private final int index;
+    private final Gson gson = new Gson();
+
+    private Process process;
+    private BufferedWriter stdin;
+    private NdjsonResultReader stdout;
+    private File logFile;
+    private long startedNanos;
+
+    /**
+     * コンストラクタ
+     * @param config ワーカーの起動設定
+     * @param index プール内での番号（ログファイル名に使用）
+     */
+    PythonWorker(PythonWorkerPool.Config config, int index) {
+        this.config = config;
+        this.index = index;
+    }
+
+    /**
+     * ワーカープロセスを起動し、準備完了の通知を待つ
+     * @throws IOException 起動に失敗した場合
+     */
+    void start() throws IOException {
+        FlightEvents.WorkerStart event = new FlightEvents.WorkerStart();
+        event.begin();
+        // 採点はJava側（SimilarityEngine）で行うため、ワーカーには認識だけをさせる
+        // 進捗は標準出力に "event" つきの行として結果と同じ順序で届く
+        List<String> cmd = new ArrayList<>(List.of(config.pythonPath(), config.scriptPath(), "--worker",
+                config.engine(), config.language(), config.model(), "--no-score", "--events"));
+        ProcessBuilder pb = new ProcessBuilder(cmd);
+        Map<String, String> env = pb.environment();
+        env.put("PYTHONIOENCODING", "utf-8");
+        env.put("PYTHONUTF8", "1");
+
+        // 並列ワーカー同士でコアを奪い合わないよう、演算ライブラリのスレッド数を制限
+        String threads = String.valueOf(Math.max(1, config.threadsPerWorker()));
+        env.put("OMP_NUM_THREADS", threads);
+        env.put("MKL_NUM_THREADS", threads);
+
+        // 標準エラーはログファイルへ（読み取りスレッド不要）
+        // GUIとCLIを同時に動かしても混ざらないよう、このJVMのPIDを名前に入れる
+        logFile = new File(System.getProperty("java.io.tmpdir"),
+                "vvt_worker_" + ProcessHandle.current().pid() + "_" + index + ".log");
+        pb.redirectError(ProcessBuilder.Redirect.appendTo(logFile));
+
+        startedNanos = System.nanoTime();
+        process = pb.start();
+        stdin = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+        stdout = new NdjsonResultReader(
+                new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8)), gson);
+
+        // 準備完了の通知 ({"ready": true}) を読み捨てる
+        boolean ready;
+        try {
+            ready = stdout.skip();
+        } catch (IOException ex) {
+            ready = false;
+        }
+        event.worker = index;
+        event.pid = process.pid();
+        event.engine = config.engine();
+        event.model = config.model();
+        event.ready = ready;
+        event.commit();
+        if (!ready) {
+            int exit = waitForExit();
+            throw new IOException("Pythonワーカーの起動に失敗しました (exit=" + exit + ", ログ: " + logFile + ")");
+        }
+    }
+
+    /**
+     * タスクを1件処理する
+     * @param task 処理タスク
+     * @param onStage 処理段階の通知を受け取るリスナー（このスレッドから呼ばれる）
+     * @param timeoutMillis 制限時間（ミリ秒、0以下なら無制限）。過ぎた場合はプロセスを子プロセスごと強制終了する
+     * @return Pythonからの結果
+     * @throws TaskTimeoutException 制限時間を過ぎた場合
+     * @throws IOException ワーカーが応答せずに終了した場合
+     */
+    PythonResult process(ProcessingTask task, Consumer<StageEvent> onStage, long timeoutMillis) throws IOException {
+        AtomicBoolean expired = new AtomicBoolean();
+        ScheduledFuture<?> deadline = timeoutMillis > 0 ? WATCHDOG.schedule(() -> {
+            expired.set(true);
+            kill();
+        }, timeoutMillis, TimeUnit.MILLISECONDS) : null;
+
+        // Python側の変換（ffmpegなど）の時間は、認識の開始の通知が届くまでの経過時間から求める
+        long sent = System.nanoTime();
+        long[] recognizeAtMs = { 0 };
+        Consumer<StageEvent> tap = e -> {
+            if ("recognize".equals(e.stage()))
+                recognizeAtMs[0] = e.elapsedMs();
+            onStage.accept(e);
+        };
+
+        PythonResult result;
+        try {
+            stdin.write(taskLine(task));
+            stdin.write('\n');
+            stdin.flush();
+            result = stdout.next(tap);
+        } catch (IOException ex) {
+            if (expired.get())
+                throw new TaskTimeoutException(timeoutMillis);
+            throw ex;
+        } finally {
+            if (deadline != null)
+                deadline.cancel(false);
+        }
+
+        if (result == null) {
+            if (expired.get())
+                throw new TaskTimeoutException(timeoutMillis);
+            throw new IOException("Pythonワーカーが終了しました (exit=" + waitForExit() + ")");
+        }
+
+        long ingest = stdout.lastParseNanos();
+        long decode = recognizeAtMs[0] * 1_000_000;
+        result.addTime(RunMetrics.Stage.DECODE, decode);
+        result.addTime(RunMetrics.Stage.INGEST, ingest);
+        result.addTime(RunMetrics.Stage.RECOGNIZE, Math.max(0, System.nanoTime() - sent - ingest - decode));
+        return result;
+    }
+
+    /**
+     * タスクの行を作成する
+     * Java側で変換済みのPCMがあれば行に載せ、Python側でのファイルの読み直しやffmpegの起動を省く
+     */
+    private String taskLine(ProcessingTask task) {
+        if (task.pcm == null)
+            return gson.toJson(task);
+
+        JsonObject line = gson.toJsonTree(task).getAsJsonObject();
+        line.addProperty("pcm", Base64.getEncoder().encodeToString(task.pcm));
+        line.addProperty("sampleRate", AudioDecoder.SAMPLE_RATE);
+        return gson.toJson(line);
+    }
+
+    /**
+     * プロセスを子プロセス（ffmpeg など）ごと強制終了する
+     */
+    private void kill() {
+        FlightEvents.WorkerExit event = new FlightEvents.WorkerExit();
+        event.begin();
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+        commitExit(event, "timeout");
+    }
+
+    private void commitExit(FlightEvents.WorkerExit event, String reason) {
+        event.end();
+        if (!event.shouldCommit())
+            return;
+        event.worker = index;
+        event.pid = process.pid();
+        event.reason = reason;
+        event.exitCode = process.isAlive() ? -1 : process.exitValue();
+        event.uptime = System.nanoTime() - startedNanos;
+        event.commit();
+    }
+
+    /**
+     * プロセスが生存しているかどうか
+     * @return 生存している場合にtrue
+     */
+    boolean isAlive() {
+        return process != null && process.isAlive();
+    }
+
+    /**
+     * 標準エラーの出力先ログファイル
+     * @return ログファイル、未起動ならnull
+     */
+    File getLogFile() {
+        return logFile;
+    }
+
+    private int waitForExit() {
+        try {
+            return process.waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    /**
+     * ワーカーを終了する（空行を送って正常終了させ、応答がなければ強制終了）
+     */
+    @Override
+    public void close() {
+        if (process == null)
+            return;
+
+        FlightEvents.WorkerExit event = new FlightEvents.WorkerExit();
+        event.begin();
+        try {
+            stdin.write('\n');
+            stdin.flush();
+            stdin.close();
+        } catch (IOException ignored) {
+
+        }
+
+        try {
+            if (!process.waitFor(2, TimeUnit.SECONDS))
+                process.destroyForcibly();
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+        commitExit(event, "close");
+    }
+}
@@ -0,0 +1,189 @@
+package koto_thing.voiceover_validator;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * 常駐Pythonワーカーのプール
+ * 実行をまたいでプロセスを使い回し、Whisperモデルのロードやインタプリタ起動のコストを1回に抑える
+ */
+class PythonWorkerPool implements TaskProcessor, Closeable {
+
+    /**
+     * ワーカーの起動設定（これが変わった場合はプールを作り直す）
+     */
+    record Config(String pythonPath, String scriptPath, String engine, String language, String model, int threadsPerWorker) {}
+
+    private final Config config;
+    private final List<PythonWorker> workers = new ArrayList<>();
+    private final BlockingQueue<PythonWorker> idle = new LinkedBlockingQueue<>();
+    private volatile boolean closed = false;
+    private volatile Consumer<StageEvent> stageListener = e -> {};
+    private volatile long taskTimeoutMillis = 0;
+
+    /**
+     * コンストラクタ（プロセスは最初に使われた時点で起動する）
+     * @param config ワーカーの起動設定
+     * @param size ワーカー数
+     */
+    PythonWorkerPool(Config config, int size) {
+        this.config = config;
+        for (int i = 0; i < Math.max(1, size); i++) {
+            PythonWorker w = new PythonWorker(config, i);
+            workers.add(w);
+            idle.add(w);
+        }
+    }
+
+    /**
+     * Pythonスクリプトのパスを探索
+     * @return 見つかった場合に絶対パス、見つからなければ"RecognizeAndCompare.py"
+     */
+    static String findScript() {
+        // カレントディレクトリ直下
+        File f1 = new File("RecognizeAndCompare.py");
+        if (f1.exists()) 
+            return f1.getAbsolutePath();
+        
+        // 実行Jar/クラスの親ディレクトリ
+        try {
+            String base = new File(PythonWorkerPool.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getParent();
+            File f2 = new File(base, "RecognizeAndCompare.py");
+            if (f2.exists()) 
+                return f2.getAbsolutePath();
+        } catch (Exception ignored) {
+            
+        }
+        
+        // プロジェクトルート推定（resources->../../..）
+        try {
+            Path p = Paths.get(".").toAbsolutePath().normalize();
+            while (p != null) {
+                File f3 = p.resolve("RecognizeAndCompare.py").toFile();
+                if (f3.exists()) 
+                    return f3.getAbsolutePath();
+                
+                p = p.getParent();
+            }
+        } catch (Exception ignored) {
+            
+        }
+        
+        // 見つからなければ名前のみ返す
+        return "RecognizeAndCompare.py";
+    }
+
+    /**
+     * 同じ設定・同じサイズのプールかどうか
+     * @param other 比較する設定
+     * @param size 比較するワーカー数
+     * @return 再利用できる場合にtrue
+     */
+    boolean matches(Config other, int size) {
+        return !closed && config.equals(other) && workers.size() == Math.max(1, size);
+    }
+
+    /**
+     * ワーカーの起動設定
+     * @return 起動設定
+     */
+    Config config() {
+        return config;
+    }
+
+    /**
+     * ワーカー数
+     * @return プール内のワーカー数
+     */
+    int size() {
+        return workers.size();
+    }
+
+    /**
+     * 処理段階の通知を受け取るリスナーを設定（どのワーカーのスレッドからも呼ばれる）
+     * @param listener リスナー（nullなら通知を捨てる）
+     */
+    void setStageListener(Consumer<StageEvent> listener) {
+        stageListener = listener != null ? listener : e -> {};
+    }
+
+    /**
+     * 処理段階の通知をリスナーに渡す（ワーカーより手前の処理段から使う）
+     * @param e 処理段階の通知
+     */
+    void stage(StageEvent e) {
+        stageListener.accept(e);
+    }
+
+    /**
+     * タスク1件あたりの制限時間を設定（過ぎた場合はワーカーを強制終了し、次回の利用時に再起動する）
+     * @param millis 制限時間（ミリ秒、0以下なら無制限）
+     */
+    void setTaskTimeout(long millis) {
+        taskTimeoutMillis = millis;
+    }
+
+    /**
+     * 空いているワーカーでタスクを1件処理する（空きがなければ待機）
+     * ワーカーがクラッシュ・タイムアウトした場合はそのタスクを再試行可能なエラー結果として返し、次回の利用時に再起動する
+     * @param task 処理タスク
+     * @return 処理結果
+     * @throws IOException ワーカーを起動できなかった場合
+     * @throws InterruptedException 空きワーカーの待機中に割り込まれた場合
+     */
+    @Override
+    public PythonResult process(ProcessingTask task) throws IOException, InterruptedException {
+        if (closed)
+            throw new IOException("ワーカープールは終了しています");
+
+        PythonWorker w = idle.take();
+        try {
+            long startup = 0;
+            if (!w.isAlive()) {
+                long begin = System.nanoTime();
+                w.close();
+                w.start();
+                startup = System.nanoTime() - begin;
+            }
+
+            try {
+                PythonResult res = w.process(task, stageListener, taskTimeoutMillis);
+                res.addTime(RunMetrics.Stage.STARTUP, startup);
+                return res;
+            } catch (IOException crashed) {
+                w.close();
+                String reason = crashed instanceof PythonWorker.TaskTimeoutException
+                        ? crashed.getMessage()
+                        : crashed.getMessage() + " (ログ: " + w.getLogFile() + ")";
+                PythonResult res = PythonResult.error(task, reason);
+                res.retryable = true;
+                res.workerFailure = true;
+                return res;
+            }
+        } finally {
+            if (closed)
+                w.close();
+            else
+                idle.add(w);
+        }
+    }
+
+    /**
+     * 全ワーカーを終了する（処理中のワーカーは返却時に終了する）
+     */
+    @Override
+    public void close() {
+        closed = true;
+        PythonWorker w;
+        while ((w = idle.poll()) != null)
+            w.close();
+    }
+}
@@ -0,0 +1,81 @@
+package koto_thing.voiceover_validator;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ワーカーを異常終了・タイムアウトさせ続ける音声ファイルの隔離リスト
+ * 隔離したファイルは以降の実行でもワーカーに渡さず、すぐにエラー結果にする
+ * ファイルはパス・サイズ・更新日時で識別するため、書き出し直したファイルは再び処理される
+ * 異常の回数は連続した分だけ数え、一度でも処理に成功したファイルは数え直す
+ */
+final class Quarantine {
+
+    private final int strikes;
+    // ファイルの識別子 -> ワーカーの異常の回数
+    private final Map<String, Integer> counts = new ConcurrentHashMap<>();
+    // 隔離したファイルの識別子 -> 理由
+    private final Map<String, String> reasons = new ConcurrentHashMap<>();
+
+    /**
+     * コンストラクタ
+     * @param strikes 隔離するまでに許す異常の回数
+     */
+    Quarantine(int strikes) {
+        this.strikes = Math.max(1, strikes);
+    }
+
+    /**
+     * 隔離されている場合はその理由
+     * @param audioPath 音声ファイルのパス
+     * @return 隔離の理由、隔離されていなければnull
+     */
+    String reason(String audioPath) {
+        return reasons.get(key(audioPath));
+    }
+
+    /**
+     * ワーカーの異常を記録し、回数が上限に達したら隔離する
+     * @param audioPath 音声ファイルのパス
+     * @param reason 異常の内容
+     * @return 隔離した場合にtrue
+     */
+    boolean strike(String audioPath, String reason) {
+        String key = key(audioPath);
+        if (counts.merge(key, 1, Integer::sum) < strikes)
+            return false;
+        reasons.putIfAbsent(key, reason);
+        return true;
+    }
+
+    /**
+     * 処理に成功したファイルの異常の回数を消す
+     * @param audioPath 音声ファイルのパス
+     */
+    void succeeded(String audioPath) {
+        if (!counts.isEmpty())
+            counts.remove(key(audioPath));
+    }
+
+    /**
+     * 隔離しているファイル数
+     * @return ファイル数
+     */
+    int size() {
+        return reasons.size();
+    }
+
+    /**
+     * 隔離を解除する
+     */
+    void clear() {
+        counts.clear();
+        reasons.clear();
+    }
+
+    private static String key(String audioPath) {
+        File f = new File(audioPath).getAbsoluteFile();
+        return f.getPath() + "|" + f.length() + "|" + f.lastModified();
+    }
+}
@@ -0,0 +1,225 @@
+package koto_thing.voiceover_validator;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 音声の内容ハッシュ + エンジン + モデル + 言語（+ 無音カットの設定）をキーに認識結果を保存する永続キャッシュ
+ * 台本だけを直した再検証では、音声の再認識を省略してJava側の比較だけをやり直せる
+ */
+class RecognitionCache {
+
+    /**
+     * キャッシュファイルの1行（追記専用のJSON Lines）
+     */
+    private static class Entry {
+        String key;
+        String text;
+
+        Entry() {}
+
+        Entry(String key, String text) {
+            this.key = key;
+            this.text = text;
+        }
+    }
+
+    private static final String FILE_NAME = "recognition_cache.jsonl";
+
+    private final Path file;
+    private final Gson gson = new Gson();
+    private final Map<String, String> entries = new ConcurrentHashMap<>();
+    // 同一実行内での再ハッシュを避けるためのメモ（パス + サイズ + 更新日時 -> ハッシュ）
+    private final Map<String, String> hashMemo = new ConcurrentHashMap<>();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private volatile boolean loaded = false;
+    private BufferedWriter writer;
+
+    /**
+     * コンストラクタ（ファイルは最初に参照された時点で読み込む）
+     * @param dir キャッシュを保存するディレクトリ
+     */
+    RecognitionCache(File dir) {
+        this.file = new File(dir, FILE_NAME).toPath();
+    }
+
+    /**
+     * 音声ファイルの内容からSHA-256を計算
+     * @param audio 音声ファイルのパス
+     * @return 16進数のハッシュ文字列
+     * @throws IOException 読み込みに失敗した場合
+     */
+    String hashAudio(Path audio) throws IOException {
+        String memoKey = audio.toAbsolutePath() + "|" + Files.size(audio) + "|" + Files.getLastModifiedTime(audio).toMillis();
+        String memo = hashMemo.get(memoKey);
+        if (memo != null)
+            return memo;
+
+        MessageDigest md = sha256();
+        byte[] buf = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(audio)) {
+            int n;
+            while ((n = in.read(buf)) != -1)
+                md.update(buf, 0, n);
+        }
+
+        String hash = toHex(md.digest());
+        hashMemo.put(memoKey, hash);
+        return hash;
+    }
+
+    /**
+     * キャッシュのキーを作成
+     * @param audioHash 音声の内容ハッシュ
+     * @param config ワーカーの設定（エンジン・モデル・言語）
+     * @param audioKey 認識に渡した音声の加工の識別子（{@link AudioPreprocessor.Settings#key()}、加工しない場合は空）
+     * @return キャッシュのキー
+     */
+    static String key(String audioHash, PythonWorkerPool.Config config, String audioKey) {
+        String key = audioHash + "/" + config.engine() + "/" + config.model() + "/" + config.language();
+        return audioKey.isEmpty() ? key : key + "/" + audioKey;
+    }
+
+    /**
+     * キャッシュから認識結果を取得
+     * @param key キャッシュのキー
+     * @return 認識結果、なければnull
+     */
+    String get(String key) {
+        if (!loaded)
+            ensureLoaded();
+        return entries.get(key);
+    }
+
+    /**
+     * 認識結果をキャッシュに追加（ファイルにも追記）
+     * @param key キャッシュのキー
+     * @param text 認識結果
+     */
+    synchronized void put(String key, String text) {
+        ensureLoaded();
+        if (text == null || text.equals(entries.put(key, text)))
+            return;
+
+        try {
+            if (writer == null) {
+                Files.createDirectories(file.getParent());
+                writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            writer.write(gson.toJson(new Entry(key, text)));
+            writer.write('\n');
+            writer.flush();
+        } catch (IOException ignored) {
+            // 書き込めなくてもメモリ上のキャッシュは有効
+        }
+    }
+
+    /**
+     * キャッシュを参照してから次の処理段に渡す処理段を作成
+     * ヒットした場合は次の処理段を呼ばず、キャッシュの認識結果をそのまま返す（採点は外側の段で行う）
+     * 無音カットはJava側で変換できる形式にだけ行うため、その形式のときだけ無音カットの設定をキーに含める
+     * @param next 次の処理段（無音カット・ワーカープールなど）
+     * @param config ワーカーの設定（エンジン・モデル・言語）
+     * @param audio 無音カットの設定
+     * @return キャッシュ付きの処理段
+     */
+    TaskProcessor wrap(TaskProcessor next, PythonWorkerPool.Config config, AudioPreprocessor.Settings audio) {
+        return task -> {
+            String key;
+            try {
+                String audioKey = AudioDecoder.supports(task.audioPath) ? audio.key() : "";
+                key = key(hashAudio(Path.of(task.audioPath)), config, audioKey);
+            } catch (IOException | RuntimeException ex) {
+                // ハッシュできないファイルはそのまま渡してエラーを返させる
+                return next.process(task);
+            }
+
+            String cached = get(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                PythonResult res = new PythonResult();
+                res.id = task.id;
+                res.script_text = task.scriptText;
+                res.recognized_text = cached;
+                res.diff = new String[0];
+                return res;
+            }
+
+            misses.incrementAndGet();
+            PythonResult res = next.process(task);
+            if (res != null && res.error == null)
+                put(key, res.recognized_text);
+            return res;
+        };
+    }
+
+    /**
+     * ヒット数・ミス数のカウンタをリセット
+     */
+    void resetStats() {
+        hits.set(0);
+        misses.set(0);
+    }
+
+    int getHits() {
+        return hits.get();
+    }
+
+    int getMisses() {
+        return misses.get();
+    }
+
+    private synchronized void ensureLoaded() {
+        if (loaded)
+            return;
+        loaded = true;
+
+        if (!Files.exists(file))
+            return;
+
+        try (BufferedReader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                if (line.isBlank())
+                    continue;
+                try {
+                    Entry e = gson.fromJson(line, Entry.class);
+                    if (e != null && e.key != null && e.text != null)
+                        entries.put(e.key, e.text);
+                } catch (JsonParseException ignore) {
+                    // 途中で書き込みが途切れた行などは読み飛ばす
+                }
+            }
+        } catch (IOException ignored) {
+
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes)
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,64 @@
+package koto_thing.voiceover_validator;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 検証結果をCSVに書き出すクラス（GUIとコマンドラインで共通）
+ */
+final class ResultExporter {
+
+    private ResultExporter() {}
+
+    /**
+     * 検証結果をCSVファイルに書き出す
+     * @param file 出力先
+     * @param results 検証結果
+     * @throws IOException 書き込みに失敗した場合
+     */
+    static void writeCsv(Path file, List<ValidationResult> results) throws IOException {
+        FlightEvents.Export event = new FlightEvents.Export();
+        event.begin();
+        try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writeCsv(w, results);
+        }
+        event.finish(file, results.size());
+    }
+
+    /**
+     * 検証結果をCSV形式で書き出す
+     * @param w 出力先
+     * @param results 検証結果
+     * @throws IOException 書き込みに失敗した場合
+     */
+    static void writeCsv(Writer w, List<ValidationResult> results) throws IOException {
+        w.write("id,similarity,script,recognized,status\n");
+        for (ValidationResult r : results) {
+            String line = String.join(",",
+                    escapeCsv(r.getId()),
+                    String.format(Locale.US, "%.4f", r.getSimilarity()),
+                    escapeCsv(r.getScriptText()),
+                    escapeCsv(r.getRecognizedText()),
+                    escapeCsv(r.getStatus()));
+            w.write(line); w.write("\n");
+        }
+        w.flush();
+    }
+
+    static String escapeCsv(String s) {
+        if (s == null) 
+            return "";
+        
+        if (s.contains("\"") || s.contains(",") || s.contains("\n") || s.contains("\r")) {
+            return '"' + s.replace("\"", "\"\"") + '"';
+        }
+        
+        return s;
+    }
+}
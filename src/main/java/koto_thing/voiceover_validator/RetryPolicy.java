@@ -0,0 +1,64 @@
+package koto_thing.voiceover_validator;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * タスクごとの制限時間と再試行の設定
+ * 一時的な失敗（通信エラー、ワーカーの異常終了・タイムアウト）は間隔を倍にしながら再試行し、
+ * ワーカーの異常が同じファイルで続く場合はそのファイルを隔離して残りのタスクを先に進める
+ * 失敗したタスクは実行を止めず、理由つきのエラー結果として返す
+ * @param timeoutMillis タスク1件の制限時間（ミリ秒、0以下なら無制限）
+ * @param maxAttempts 最大の試行回数（1なら再試行しない）
+ * @param backoffMillis 最初の再試行までの待ち時間（ミリ秒、以降は倍にする）
+ */
+record RetryPolicy(long timeoutMillis, int maxAttempts, long backoffMillis) {
+
+    static final RetryPolicy DEFAULT = new RetryPolicy(120_000, 3, 500);
+
+    // ワーカーの異常がこの回数続いたファイルは隔離する
+    static final int QUARANTINE_STRIKES = 2;
+
+    /**
+     * 再試行と隔離を行う処理段で包む
+     * @param next 次の処理段（ワーカープール）
+     * @param quarantine 隔離リスト
+     * @return 包んだ処理段
+     */
+    TaskProcessor wrap(TaskProcessor next, Quarantine quarantine) {
+        return task -> {
+            String quarantined = quarantine.reason(task.audioPath);
+            if (quarantined != null)
+                return PythonResult.error(task, "隔離済みのためスキップ: " + quarantined);
+
+            long backoff = backoffMillis;
+            for (int attempt = 1; ; attempt++) {
+                PythonResult res = next.process(task);
+                if (res.error == null) {
+                    quarantine.succeeded(task.audioPath);
+                    return res;
+                }
+
+                if (res.workerFailure && quarantine.strike(task.audioPath, res.error))
+                    return withAttempts(res, attempt, "隔離しました");
+                if (!res.retryable || attempt >= maxAttempts)
+                    return withAttempts(res, attempt, null);
+
+                // 同時に失敗したタスクの再試行が重ならないよう少しずらす
+                Thread.sleep(backoff + ThreadLocalRandom.current().nextLong(backoff / 2 + 1));
+                backoff *= 2;
+            }
+        };
+    }
+
+    private static PythonResult withAttempts(PythonResult res, int attempts, String note) {
+        if (attempts > 1 || note != null) {
+            StringBuilder sb = new StringBuilder(res.error).append(" (");
+            if (attempts > 1)
+                sb.append(attempts).append("回試行");
+            if (note != null)
+                sb.append(attempts > 1 ? ", " : "").append(note);
+            res.error = sb.append(')').toString();
+        }
+        return res;
+    }
+}
@@ -0,0 +1,342 @@
+package koto_thing.voiceover_validator;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 実行を再開するためのチェックポイント（追記のみの1行1JSONのファイル）
+ * 認識が終わったタスクの結果を1件ずつ追記し、中断・クラッシュ後は記録済みのタスクをワーカーに渡さずに結果を再生する
+ * 書き込みはバッファリングし、ディスクへの同期（fsync）は一定件数・一定時間ごとにまとめて行う
+ * 同期前にクラッシュした場合に失われるのは直近の数件だけで、途中で切れた最終行は読み込み時に捨てる
+ * ファイルはエンジン設定とタスク一覧（音声ファイルのサイズ・更新日時を含む）から決まるため、
+ * 同じ入力で実行し直した場合にだけ再開される
+ */
+final class RunJournal implements Closeable {
+
+    // 同期までにためる件数と時間
+    private static final int SYNC_EVERY = 64;
+    private static final long SYNC_INTERVAL_NANOS = 1_000_000_000L;
+
+    // 結果が途絶えた場合に未同期の分を同期するタイマー（全インスタンスで共有）
+    private static final ScheduledExecutorService SYNCER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "journal-sync");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Path path;
+    private final FileChannel channel;
+    private final Writer writer;
+    private final Gson gson = new Gson();
+    // タスクのキー -> 記録済みの結果（JSON）
+    private final Map<String, String> recorded;
+    private final int resumable;
+    private final AtomicInteger replayed = new AtomicInteger();
+    private int unsynced;
+    private long lastSync = System.nanoTime();
+    private boolean closed;
+    private boolean syncScheduled;
+    private volatile IOException writeError;
+
+    private RunJournal(Path path, FileChannel channel, Map<String, String> recorded, int resumable) {
+        this.path = path;
+        this.channel = channel;
+        this.writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8), 64 * 1024);
+        this.recorded = recorded;
+        this.resumable = resumable;
+    }
+
+    /**
+     * 実行のチェックポイントのパス
+     * @param dir 保存先のフォルダ
+     * @param config ワーカーの起動設定
+     * @param audio 無音カットの設定（変えた場合は別の実行として扱う）
+     * @param tasks 処理タスクのリスト
+     * @return ファイルのパス
+     */
+    static Path pathFor(Path dir, PythonWorkerPool.Config config, AudioPreprocessor.Settings audio, List<ProcessingTask> tasks) {
+        MessageDigest md = sha256();
+        update(md, config.engine());
+        update(md, config.language());
+        update(md, config.model());
+        if (!audio.key().isEmpty())
+            update(md, audio.key());
+        for (ProcessingTask t : tasks)
+            update(md, key(t));
+        return dir.resolve(HexFormat.of().formatHex(md.digest(), 0, 16) + ".ndjson");
+    }
+
+    /**
+     * チェックポイントを開く
+     * @param dir 保存先のフォルダ
+     * @param config ワーカーの起動設定
+     * @param audio 無音カットの設定
+     * @param tasks 処理タスクのリスト
+     * @param resume 記録済みの結果を使う場合はtrue（falseなら記録を破棄して最初から）
+     * @return チェックポイント
+     * @throws IOException ファイルを開けなかった場合
+     */
+    static RunJournal open(Path dir, PythonWorkerPool.Config config, AudioPreprocessor.Settings audio,
+                           List<ProcessingTask> tasks, boolean resume) throws IOException {
+        Files.createDirectories(dir);
+        Path path = pathFor(dir, config, audio, tasks);
+
+        Map<String, String> recorded = resume ? read(path) : new HashMap<>();
+        FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            // 途中で切れた最終行を切り詰めてから追記する
+            ch.truncate(resume ? completeLength(ch) : 0);
+            ch.position(ch.size());
+        } catch (IOException ex) {
+            ch.close();
+            throw ex;
+        }
+
+        int resumable = 0;
+        for (ProcessingTask t : tasks) {
+            if (recorded.containsKey(key(t)))
+                resumable++;
+        }
+
+        RunJournal journal = new RunJournal(path, ch, recorded, resumable);
+        if (ch.size() == 0) {
+            JsonObject header = new JsonObject();
+            header.addProperty("journal", 1);
+            header.addProperty("engine", config.engine());
+            header.addProperty("total", tasks.size());
+            header.addProperty("created", System.currentTimeMillis());
+            journal.writeLine(header.toString());
+        }
+        return journal;
+    }
+
+    /**
+     * 記録済みのタスク数（開いた時点）を、ファイルを開かずに数える
+     * @param dir 保存先のフォルダ
+     * @param config ワーカーの起動設定
+     * @param audio 無音カットの設定
+     * @param tasks 処理タスクのリスト
+     * @return 再開できるタスク数（記録がなければ0）
+     */
+    static int countResumable(Path dir, PythonWorkerPool.Config config, AudioPreprocessor.Settings audio, List<ProcessingTask> tasks) {
+        Path path = pathFor(dir, config, audio, tasks);
+        if (!Files.isRegularFile(path))
+            return 0;
+        try {
+            Map<String, String> recorded = read(path);
+            int n = 0;
+            for (ProcessingTask t : tasks) {
+                if (recorded.containsKey(key(t)))
+                    n++;
+            }
+            return n;
+        } catch (IOException ex) {
+            return 0;
+        }
+    }
+
+    /**
+     * 記録済みの結果を再生し、それ以外のタスクの結果を記録する処理段で包む
+     * 採点より内側に置き、認識結果だけを記録する（再開時は現在の採点設定で採点し直される）
+     * @param next 次の処理段
+     * @return 包んだ処理段
+     */
+    TaskProcessor wrap(TaskProcessor next) {
+        return task -> {
+            String key = key(task);
+            String json = recorded.get(key);
+            if (json != null) {
+                PythonResult res = gson.fromJson(json, PythonResult.class);
+                res.id = task.id;
+                res.script_text = task.scriptText;
+                res.replayed = true;
+                replayed.incrementAndGet();
+                return res;
+            }
+
+            PythonResult res = next.process(task);
+            // エラーは記録せず、再開時にもう一度処理する
+            if (res != null && res.error == null && writeError == null) {
+                try {
+                    append(key, res);
+                } catch (IOException ex) {
+                    // 記録できなくなっても検証は続ける
+                    writeError = ex;
+                }
+            }
+            return res;
+        };
+    }
+
+    /**
+     * 開いた時点で再開できるタスク数
+     * @return タスク数
+     */
+    int resumable() {
+        return resumable;
+    }
+
+    /**
+     * 記録に失敗した場合はその原因（以降は記録しない）
+     * @return 失敗の原因、なければnull
+     */
+    IOException writeError() {
+        return writeError;
+    }
+
+    /**
+     * 記録から再生したタスク数
+     * @return タスク数
+     */
+    int replayed() {
+        return replayed.get();
+    }
+
+    private synchronized void append(String key, PythonResult res) throws IOException {
+        if (closed)
+            return;
+
+        JsonObject line = new JsonObject();
+        line.addProperty("key", key);
+        JsonObject r = new JsonObject();
+        r.addProperty("recognized_text", res.recognized_text);
+        line.add("result", r);
+        writeLine(line.toString());
+
+        long now = System.nanoTime();
+        if (++unsynced >= SYNC_EVERY || now - lastSync >= SYNC_INTERVAL_NANOS) {
+            sync();
+        } else if (!syncScheduled) {
+            syncScheduled = true;
+            SYNCER.schedule(this::deferredSync, SYNC_INTERVAL_NANOS, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private synchronized void deferredSync() {
+        syncScheduled = false;
+        if (closed || unsynced == 0)
+            return;
+        try {
+            sync();
+        } catch (IOException ex) {
+            writeError = ex;
+        }
+    }
+
+    private void writeLine(String line) throws IOException {
+        writer.write(line);
+        writer.write('\n');
+    }
+
+    private void sync() throws IOException {
+        writer.flush();
+        channel.force(false);
+        unsynced = 0;
+        lastSync = System.nanoTime();
+    }
+
+    /**
+     * 全件が完了した場合に呼ぶ（チェックポイントを削除する）
+     * @throws IOException 削除に失敗した場合
+     */
+    void finish() throws IOException {
+        close();
+        Files.deleteIfExists(path);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            sync();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * タスクのキー（ID・音声ファイル・セリフと、音声ファイルのサイズ・更新日時）
+     */
+    static String key(ProcessingTask task) {
+        File f = new File(task.audioPath);
+        MessageDigest md = sha256();
+        update(md, task.id);
+        update(md, f.getAbsolutePath());
+        update(md, task.scriptText);
+        update(md, f.length() + ":" + f.lastModified());
+        return HexFormat.of().formatHex(md.digest(), 0, 16);
+    }
+
+    private static Map<String, String> read(Path path) throws IOException {
+        Map<String, String> recorded = new HashMap<>();
+        if (!Files.isRegularFile(path))
+            return recorded;
+
+        try (BufferedReader r = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                if (line.isBlank())
+                    continue;
+                try {
+                    JsonObject obj = JsonParser.parseString(line).getAsJsonObject();
+                    if (obj.has("key") && obj.has("result"))
+                        recorded.put(obj.get("key").getAsString(), obj.get("result").toString());
+                } catch (JsonParseException | IllegalStateException | UnsupportedOperationException ignored) {
+                    // 書き込み途中で切れた行
+                }
+            }
+        }
+        return recorded;
+    }
+
+    /**
+     * 最後の改行までの長さ
+     */
+    private static long completeLength(FileChannel ch) throws IOException {
+        long size = ch.size();
+        ByteBuffer one = ByteBuffer.allocate(1);
+        for (long pos = size - 1; pos >= 0; pos--) {
+            one.clear();
+            ch.read(one, pos);
+            if (one.get(0) == '\n')
+                return pos + 1;
+        }
+        return 0;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static void update(MessageDigest md, String s) {
+        md.update((s != null ? s : "").getBytes(StandardCharsets.UTF_8));
+        md.update((byte) 0);
+    }
+}
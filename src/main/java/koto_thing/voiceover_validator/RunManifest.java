@@ -0,0 +1,308 @@
+package koto_thing.voiceover_validator;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 前回の実行の内容（IDごとの音声ファイルのサイズ・更新日時・ハッシュ、セリフ、認識結果）を記録したマニフェスト
+ * 差分検証では、音声もセリフも前回から変わっていないタスクをワーカーに渡さず、前回の認識結果を引き継ぐ
+ * 更新日時だけが変わった音声（コピーし直したファイルなど）は内容のハッシュで比較する
+ * ファイルは台本CSVとエンジン設定ごとに分かれ、差分検証を使わない実行でも次回のために毎回更新する
+ * 保存するのは今回のタスクの分だけで、台本から消えたIDや使わなくなった音声ファイルの記録は捨てる
+ */
+final class RunManifest {
+
+    /**
+     * マニフェストファイルの内容
+     */
+    private static class Content {
+        int version = 1;
+        String engine;
+        String language;
+        String model;
+        String script;
+        List<Entry> entries = new ArrayList<>();
+    }
+
+    /**
+     * 1つのタスク（ID + 音声ファイル）の記録
+     */
+    private static class Entry {
+        String id;
+        String audio;
+        long size;
+        long mtime;
+        String sha256;
+        String script;
+        String recognized;
+    }
+
+    private final Path path;
+    private final Content header = new Content();
+    private final boolean incremental;
+    private final Gson gson = new Gson();
+    // ID + 音声ファイル -> 今回の実行で記録し直した分（認識した結果と、更新日時を記録し直した引き継ぎ分）
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // 前回の記録（比較用、変更しない）
+    private final Map<String, Entry> previous;
+    private final AtomicInteger carried = new AtomicInteger();
+    private final AtomicInteger added = new AtomicInteger();
+    private final AtomicInteger audioChanged = new AtomicInteger();
+    private final AtomicInteger scriptChanged = new AtomicInteger();
+
+    private RunManifest(Path path, Map<String, Entry> previous, boolean incremental) {
+        this.path = path;
+        this.previous = previous;
+        this.incremental = incremental;
+    }
+
+    /**
+     * マニフェストのパス
+     * @param dir 保存先のフォルダ
+     * @param config ワーカーの起動設定
+     * @param audio 無音カットの設定（変えた場合は前回の認識結果を引き継がない）
+     * @param script 台本CSVのパス
+     * @return ファイルのパス
+     */
+    static Path pathFor(Path dir, PythonWorkerPool.Config config, AudioPreprocessor.Settings audio, Path script) {
+        MessageDigest md = sha256();
+        update(md, script.toAbsolutePath().normalize().toString());
+        update(md, config.engine());
+        update(md, config.language());
+        update(md, config.model());
+        if (!audio.key().isEmpty())
+            update(md, audio.key());
+        return dir.resolve(HexFormat.of().formatHex(md.digest(), 0, 16) + ".json");
+    }
+
+    /**
+     * 前回のマニフェストを読み込む（なければ空）
+     * @param dir 保存先のフォルダ
+     * @param config ワーカーの起動設定
+     * @param audio 無音カットの設定
+     * @param script 台本CSVのパス
+     * @param incremental 変わっていないタスクの結果を引き継ぐ場合はtrue（falseなら全件を検証し、記録だけ更新する）
+     * @return マニフェスト
+     */
+    static RunManifest open(Path dir, PythonWorkerPool.Config config, AudioPreprocessor.Settings audio, Path script, boolean incremental) {
+        Path path = pathFor(dir, config, audio, script);
+        Map<String, Entry> previous = new ConcurrentHashMap<>();
+        if (Files.isRegularFile(path)) {
+            try (Reader r = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                Content c = new Gson().fromJson(r, Content.class);
+                if (c != null && c.entries != null) {
+                    for (Entry e : c.entries) {
+                        if (e != null && e.id != null && e.audio != null && e.recognized != null)
+                            previous.put(key(e.id, e.audio), e);
+                    }
+                }
+            } catch (IOException | JsonParseException ignored) {
+                // 読めない記録は捨てて全件を検証する
+                previous.clear();
+            }
+        }
+
+        RunManifest manifest = new RunManifest(path, previous, incremental);
+        manifest.header.engine = config.engine();
+        manifest.header.language = config.language();
+        manifest.header.model = config.model();
+        manifest.header.script = script.toAbsolutePath().normalize().toString();
+        return manifest;
+    }
+
+    /**
+     * 変わっていないタスクは前回の認識結果を返し、それ以外は次の処理段に渡して結果を記録する処理段で包む
+     * 採点より内側に置き、引き継いだ結果も現在の採点設定で採点し直す
+     * @param next 次の処理段
+     * @return 包んだ処理段
+     */
+    TaskProcessor wrap(TaskProcessor next) {
+        return task -> {
+            File audio = audioFile(task);
+            String key = key(task.id, audio.getPath());
+            Entry prev = previous.get(key);
+
+            if (incremental) {
+                if (prev == null) {
+                    added.incrementAndGet();
+                } else if (!Objects.equals(prev.script, task.scriptText)) {
+                    scriptChanged.incrementAndGet();
+                } else if (!sameAudio(prev, audio)) {
+                    audioChanged.incrementAndGet();
+                } else {
+                    carried.incrementAndGet();
+                    PythonResult res = new PythonResult();
+                    res.id = task.id;
+                    res.script_text = task.scriptText;
+                    res.recognized_text = prev.recognized;
+                    res.diff = new String[0];
+                    res.replayed = true;
+                    return res;
+                }
+            }
+
+            PythonResult res = next.process(task);
+            // エラーは記録しない（前回の記録が残っていれば、それと比べて次回も変更として扱われる）
+            if (res != null && res.error == null)
+                record(task, audio, res.recognized_text);
+            return res;
+        };
+    }
+
+    /**
+     * 音声ファイルが前回と同じかどうか（サイズ・更新日時が同じなら同じとみなし、更新日時だけ違う場合は内容を比べる）
+     */
+    private boolean sameAudio(Entry prev, File audio) {
+        long size = audio.length();
+        if (size != prev.size || !audio.isFile())
+            return false;
+        long mtime = audio.lastModified();
+        if (mtime == prev.mtime)
+            return true;
+        if (prev.sha256 == null)
+            return false;
+        try {
+            if (!prev.sha256.equals(hash(audio.toPath())))
+                return false;
+        } catch (IOException ex) {
+            return false;
+        }
+        // 次回はハッシュを計算しなくて済むよう更新日時を記録し直す
+        Entry e = copy(prev);
+        e.mtime = mtime;
+        entries.put(key(prev.id, prev.audio), e);
+        return true;
+    }
+
+    private void record(ProcessingTask task, File audio, String recognized) {
+        Entry e = new Entry();
+        e.id = task.id;
+        e.audio = audio.getPath();
+        e.size = audio.length();
+        e.mtime = audio.lastModified();
+        e.script = task.scriptText;
+        e.recognized = recognized != null ? recognized : "";
+        try {
+            // 認識の直後なのでファイルはOSのキャッシュに載っている
+            e.sha256 = hash(audio.toPath());
+        } catch (IOException ex) {
+            e.sha256 = null;
+        }
+        entries.put(key(e.id, e.audio), e);
+    }
+
+    /**
+     * 今回のタスクの分の記録をファイルに保存する（一時ファイルに書いてから置き換える）
+     * 処理しなかった（中止した）タスクやエラーになったタスクは前回の記録を残し、次回も前回と比べる
+     * @param tasks 今回の実行の全タスク
+     * @throws IOException 書き込みに失敗した場合
+     */
+    void save(List<ProcessingTask> tasks) throws IOException {
+        Map<String, Entry> kept = new HashMap<>();
+        for (ProcessingTask t : tasks) {
+            String key = key(t.id, audioFile(t).getPath());
+            Entry e = entries.get(key);
+            if (e == null)
+                e = previous.get(key);
+            if (e != null)
+                kept.put(key, e);
+        }
+
+        Files.createDirectories(path.getParent());
+        Content c = new Content();
+        c.engine = header.engine;
+        c.language = header.language;
+        c.model = header.model;
+        c.script = header.script;
+        c.entries = new ArrayList<>(kept.values());
+        c.entries.sort((a, b) -> a.id.equals(b.id) ? a.audio.compareTo(b.audio) : a.id.compareTo(b.id));
+
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            gson.toJson(c, w);
+        }
+        try {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 前回から引き継いだタスク数
+     * @return タスク数
+     */
+    int carried() {
+        return carried.get();
+    }
+
+    /**
+     * 差分の内訳（例: "新規 2件, 音声変更 3件, 台本変更 1件, 引き継ぎ 994件"）
+     * @return 表示用の文字列
+     */
+    String summary() {
+        return "新規 " + added.get() + "件, 音声変更 " + audioChanged.get() + "件, 台本変更 " + scriptChanged.get()
+                + "件, 引き継ぎ " + carried.get() + "件";
+    }
+
+    private static File audioFile(ProcessingTask task) {
+        return Path.of(task.audioPath).toAbsolutePath().normalize().toFile();
+    }
+
+    private static String key(String id, String audio) {
+        return id + "\n" + audio;
+    }
+
+    private static Entry copy(Entry src) {
+        Entry e = new Entry();
+        e.id = src.id;
+        e.audio = src.audio;
+        e.size = src.size;
+        e.mtime = src.mtime;
+        e.sha256 = src.sha256;
+        e.script = src.script;
+        e.recognized = src.recognized;
+        return e;
+    }
+
+    private static String hash(Path audio) throws IOException {
+        MessageDigest md = sha256();
+        byte[] buf = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(audio)) {
+            int n;
+            while ((n = in.read(buf)) != -1)
+                md.update(buf, 0, n);
+        }
+        return HexFormat.of().formatHex(md.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static void update(MessageDigest md, String s) {
+        md.update((s != null ? s : "").getBytes(StandardCharsets.UTF_8));
+        md.update((byte) 0);
+    }
+}
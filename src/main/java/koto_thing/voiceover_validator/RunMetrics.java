@@ -0,0 +1,416 @@
+package koto_thing.voiceover_validator;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 実行の処理段階ごとの所要時間と件数を集計する
+ * 各処理段は自分の所要時間を結果（{@link PythonResult#addTime}）に足し、最も外側の段でタスクごとに段階別のヒストグラムへ記録する
+ * 実行後の内訳の表示と、JSON・Prometheusのテキスト形式での書き出しに使う
+ */
+final class RunMetrics {
+
+    /**
+     * 処理段階
+     */
+    enum Stage {
+        // 実行の開始からシャードがタスクを取り出すまで
+        QUEUE("queue", "待ち"),
+        // ワーカーの起動（Whisperはモデルの読み込みを含む）
+        STARTUP("startup", "ワーカー起動"),
+        // 音声の変換と無音カット（Java側とPython側の合計）
+        DECODE("decode", "変換"),
+        // ワーカーへの送信から結果の受信まで（Python側の変換を除く）
+        RECOGNIZE("recognize", "認識"),
+        // 結果の行のパース
+        INGEST("ingest", "結果の取り込み"),
+        SCORE("score", "採点"),
+        // 1件の処理全体（待ちを除く）
+        TOTAL("total", "1件の合計");
+
+        final String key;
+        final String label;
+
+        Stage(String key, String label) {
+            this.key = key;
+            this.label = label;
+        }
+    }
+
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99 };
+
+    private final Map<String, String> labels;
+    private final Histogram[] histograms = new Histogram[Stage.values().length];
+    private final AtomicLong tasks = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private volatile long startNanos;
+    private volatile long endNanos;
+    private volatile long startedAt;
+
+    /**
+     * コンストラクタ
+     * @param labels 書き出す値に付けるラベル（マシン名・エンジンなど）
+     */
+    RunMetrics(Map<String, String> labels) {
+        this.labels = labels;
+        for (int i = 0; i < histograms.length; i++)
+            histograms[i] = new Histogram();
+    }
+
+    /**
+     * ワーカーの設定から、マシンごと・エンジンごとに比べるためのラベルを作る
+     * @param config ワーカーの起動設定
+     * @param workers ワーカー数
+     * @return ラベル
+     */
+    static Map<String, String> labels(PythonWorkerPool.Config config, int workers) {
+        Map<String, String> labels = new LinkedHashMap<>();
+        labels.put("host", hostName());
+        labels.put("engine", config.engine());
+        labels.put("model", config.model());
+        labels.put("workers", String.valueOf(workers));
+        return labels;
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (IOException ex) {
+            String name = System.getenv("COMPUTERNAME");
+            return name != null ? name : "unknown";
+        }
+    }
+
+    /**
+     * 実行の開始を記録（以降に取り出されたタスクの待ち時間はここから数える）
+     */
+    void start() {
+        startedAt = System.currentTimeMillis();
+        endNanos = 0;
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * 実行の終了を記録
+     */
+    void finish() {
+        endNanos = System.nanoTime();
+    }
+
+    /**
+     * タスクごとの所要時間を集計する処理段で包む（最も外側に置く）
+     * @param next 次の処理段
+     * @return 包んだ処理段
+     */
+    TaskProcessor wrap(TaskProcessor next) {
+        return task -> {
+            long begin = System.nanoTime();
+            long runStart = startNanos;
+            PythonResult res = next.process(task);
+            long elapsed = System.nanoTime() - begin;
+
+            tasks.incrementAndGet();
+            if (res.error != null)
+                errors.incrementAndGet();
+            // 前回の記録から再生した結果は処理していないので、所要時間には含めない
+            if (res.replayed) {
+                replayed.incrementAndGet();
+                return res;
+            }
+            if (runStart != 0)
+                histograms[Stage.QUEUE.ordinal()].record(begin - runStart);
+            for (Stage s : Stage.values()) {
+                long t = res.time(s);
+                if (t > 0)
+                    histograms[s.ordinal()].record(t);
+            }
+            histograms[Stage.TOTAL.ordinal()].record(elapsed);
+            return res;
+        };
+    }
+
+    /**
+     * 処理段階の所要時間の分布
+     * @param stage 処理段階
+     * @return 分布
+     */
+    Histogram histogram(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    long tasks() {
+        return tasks.get();
+    }
+
+    long errors() {
+        return errors.get();
+    }
+
+    long replayed() {
+        return replayed.get();
+    }
+
+    /**
+     * 実行時間（秒、実行中なら現在まで、開始していなければ0）
+     * @return 秒数
+     */
+    double durationSeconds() {
+        long start = startNanos;
+        if (start == 0)
+            return 0;
+        long end = endNanos != 0 ? endNanos : System.nanoTime();
+        return (end - start) / 1e9;
+    }
+
+    /**
+     * 画面・コンソール向けの内訳の表（ミリ秒）
+     * @return 複数行の文字列
+     */
+    String summary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.US, "%8s %9s %9s %9s %9s %7s  %s%n", "件数", "平均", "p50", "p90", "p99", "最大", "段階(ms)"));
+        for (Stage s : Stage.values()) {
+            Histogram h = histogram(s);
+            if (h.count() == 0)
+                continue;
+            sb.append(String.format(Locale.US, "%10d %11.1f %9.1f %9.1f %9.1f %9.1f  %s%n",
+                    h.count(), h.mean() / 1e6, h.percentile(0.5) / 1e6, h.percentile(0.9) / 1e6,
+                    h.percentile(0.99) / 1e6, h.max() / 1e6, s.label));
+        }
+        double sec = durationSeconds();
+        long measured = tasks() - replayed();
+        sb.append(String.format(Locale.US, "%d件（エラー %d件, 再生・引き継ぎ %d件）, 実行時間 %.1f秒", tasks(), errors(), replayed(), sec));
+        if (sec > 0 && measured > 0)
+            sb.append(String.format(Locale.US, ", %.2f件/秒", measured / sec));
+        return sb.toString();
+    }
+
+    /**
+     * JSON形式の内訳
+     * @return 内訳
+     */
+    JsonObject toJson() {
+        JsonObject o = new JsonObject();
+        JsonObject l = new JsonObject();
+        labels.forEach(l::addProperty);
+        o.add("labels", l);
+        if (startedAt != 0)
+            o.addProperty("startedAt", Instant.ofEpochMilli(startedAt).toString());
+        o.addProperty("durationSeconds", durationSeconds());
+        o.addProperty("tasks", tasks());
+        o.addProperty("errors", errors());
+        o.addProperty("replayed", replayed());
+
+        JsonObject stages = new JsonObject();
+        for (Stage s : Stage.values()) {
+            Histogram h = histogram(s);
+            if (h.count() == 0)
+                continue;
+            JsonObject st = new JsonObject();
+            st.addProperty("count", h.count());
+            st.addProperty("sumSeconds", h.sum() / 1e9);
+            st.addProperty("meanMs", h.mean() / 1e6);
+            for (double q : QUANTILES)
+                st.addProperty("p" + Math.round(q * 100) + "Ms", h.percentile(q) / 1e6);
+            st.addProperty("maxMs", h.max() / 1e6);
+            stages.add(s.key, st);
+        }
+        o.add("stages", stages);
+        return o;
+    }
+
+    /**
+     * Prometheusのテキスト形式（node_exporter の textfile collector でそのまま読める）
+     * @return テキスト
+     */
+    String toPrometheus() {
+        StringBuilder sb = new StringBuilder();
+        String base = labelText(labels, null, null);
+
+        sb.append("# HELP vvt_stage_duration_seconds Per-task time spent in each validation stage\n");
+        sb.append("# TYPE vvt_stage_duration_seconds summary\n");
+        for (Stage s : Stage.values()) {
+            Histogram h = histogram(s);
+            if (h.count() == 0)
+                continue;
+            for (double q : QUANTILES) {
+                sb.append("vvt_stage_duration_seconds").append(labelText(labels, "stage", s.key, "quantile", String.valueOf(q)))
+                        .append(' ').append(number(h.percentile(q) / 1e9)).append('\n');
+            }
+            String stage = labelText(labels, "stage", s.key);
+            sb.append("vvt_stage_duration_seconds_sum").append(stage).append(' ').append(number(h.sum() / 1e9)).append('\n');
+            sb.append("vvt_stage_duration_seconds_count").append(stage).append(' ').append(h.count()).append('\n');
+        }
+
+        counter(sb, "vvt_tasks_total", "Tasks completed in the run", base, tasks());
+        counter(sb, "vvt_task_errors_total", "Tasks that ended with an error", base, errors());
+        counter(sb, "vvt_tasks_replayed_total", "Tasks replayed from the checkpoint or carried over from the previous run", base, replayed());
+        sb.append("# HELP vvt_run_duration_seconds Wall-clock duration of the run\n");
+        sb.append("# TYPE vvt_run_duration_seconds gauge\n");
+        sb.append("vvt_run_duration_seconds").append(base).append(' ').append(number(durationSeconds())).append('\n');
+        if (startedAt != 0) {
+            sb.append("# HELP vvt_run_start_time_seconds Unix time the run started\n");
+            sb.append("# TYPE vvt_run_start_time_seconds gauge\n");
+            sb.append("vvt_run_start_time_seconds").append(base).append(' ').append(startedAt / 1000).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void counter(StringBuilder sb, String name, String help, String labels, long value) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" counter\n");
+        sb.append(name).append(labels).append(' ').append(value).append('\n');
+    }
+
+    private static String labelText(Map<String, String> labels, String... extra) {
+        StringBuilder sb = new StringBuilder("{");
+        labels.forEach((k, v) -> sb.append(sb.length() > 1 ? "," : "").append(k).append("=\"").append(escape(v)).append('"'));
+        for (int i = 0; i + 1 < extra.length; i += 2) {
+            if (extra[i] != null)
+                sb.append(sb.length() > 1 ? "," : "").append(extra[i]).append("=\"").append(escape(extra[i + 1])).append('"');
+        }
+        return sb.append('}').toString();
+    }
+
+    private static String escape(String v) {
+        return v == null ? "" : v.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String number(double v) {
+        return String.format(Locale.US, "%.6f", v);
+    }
+
+    /**
+     * 内訳をファイルに書き出す（拡張子が .prom ならPrometheusのテキスト形式、それ以外はJSON）
+     * 読み取り側が書きかけのファイルを読まないよう、一時ファイルに書いてから置き換える
+     * @param file 出力先
+     * @throws IOException 書き込みに失敗した場合
+     */
+    void write(Path file) throws IOException {
+        String text = file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".prom")
+                ? toPrometheus()
+                : new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create().toJson(toJson());
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null)
+            Files.createDirectories(dir);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(tmp, text, StandardCharsets.UTF_8);
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 所要時間の分布（HdrHistogramと同じく、2の累乗ごとの区間を32に等分したバケットに数える）
+     * マイクロ秒単位で記録し、分位点の相対誤差は約3%に収まる。記録は複数のスレッドから同時に行ってよい
+     */
+    static final class Histogram {
+        // 2の累乗の区間ごとのバケット数（2^SUB_BITS）
+        private static final int SUB_BITS = 5;
+        private static final int SUB = 1 << SUB_BITS;
+        // 2^40マイクロ秒（約12日）まで
+        private static final int MAX_EXPONENT = 40;
+        private static final int SIZE = 2 * SUB + (MAX_EXPONENT - SUB_BITS - 1) * SUB;
+
+        private final AtomicLongArray counts = new AtomicLongArray(SIZE);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        /**
+         * 所要時間を記録
+         * @param nanos ナノ秒
+         */
+        void record(long nanos) {
+            long v = Math.max(0, nanos);
+            counts.incrementAndGet(index(v / 1000));
+            count.incrementAndGet();
+            sum.addAndGet(v);
+            max.accumulateAndGet(v, Math::max);
+        }
+
+        static int index(long micros) {
+            if (micros < 2 * SUB)
+                return (int) micros;
+            int exponent = 63 - Long.numberOfLeadingZeros(micros);
+            if (exponent >= MAX_EXPONENT)
+                return SIZE - 1;
+            int shift = exponent - SUB_BITS;
+            return 2 * SUB + (exponent - SUB_BITS - 1) * SUB + (int) (micros >> shift) - SUB;
+        }
+
+        /**
+         * バケットに入る値の上限（マイクロ秒）
+         */
+        static long upperBound(int index) {
+            if (index < 2 * SUB)
+                return index;
+            int group = (index - 2 * SUB) / SUB;
+            int shift = group + 1;
+            long mantissa = (index - 2 * SUB) % SUB + SUB;
+            return ((mantissa + 1) << shift) - 1;
+        }
+
+        long count() {
+            return count.get();
+        }
+
+        /**
+         * 合計（ナノ秒）
+         */
+        long sum() {
+            return sum.get();
+        }
+
+        /**
+         * 最大値（ナノ秒）
+         */
+        long max() {
+            return max.get();
+        }
+
+        /**
+         * 平均（ナノ秒）
+         */
+        double mean() {
+            long n = count();
+            return n > 0 ? (double) sum() / n : 0;
+        }
+
+        /**
+         * 分位点（ナノ秒、バケットの上限を返すため最大値を超えない範囲でやや大きめになる）
+         * @param q 0〜1
+         * @return 分位点、記録がなければ0
+         */
+        long percentile(double q) {
+            long n = count();
+            if (n == 0)
+                return 0;
+            long rank = Math.max(1, (long) Math.ceil(q * n));
+            long seen = 0;
+            for (int i = 0; i < SIZE; i++) {
+                seen += counts.get(i);
+                if (seen >= rank)
+                    return Math.min(max(), upperBound(i) * 1000 + 999);
+            }
+            return max();
+        }
+    }
+}
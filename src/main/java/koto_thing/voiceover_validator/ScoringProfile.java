@@ -0,0 +1,113 @@
+package koto_thing.voiceover_validator;
+
+import java.text.Normalizer;
+import java.util.prefs.Preferences;
+
+/**
+ * 採点の設定（合格ラインと比較前のテキスト正規化）
+ * 認識結果は変えずに採点だけをやり直すため、設定を変えてもPythonは呼ばない
+ * @param threshold この類似度以上を成功とする
+ * @param foldWidth 全角/半角を同一視する（NFKC正規化）
+ * @param ignorePunctuation 句読点・記号・空白を無視する
+ * @param foldKana ひらがな/カタカナを同一視する
+ */
+record ScoringProfile(double threshold, boolean foldWidth, boolean ignorePunctuation, boolean foldKana) {
+
+    /**
+     * 既定の設定（従来どおり、合格ライン0.9・正規化なし）
+     */
+    static final ScoringProfile DEFAULT = new ScoringProfile(0.9, false, false, false);
+
+    /**
+     * 設定から読み込む
+     * @param prefs 読み込み元
+     * @return 採点の設定
+     */
+    static ScoringProfile load(Preferences prefs) {
+        return new ScoringProfile(
+                prefs.getDouble("similarityThreshold", DEFAULT.threshold),
+                prefs.getBoolean("foldWidth", DEFAULT.foldWidth),
+                prefs.getBoolean("ignorePunctuation", DEFAULT.ignorePunctuation),
+                prefs.getBoolean("foldKana", DEFAULT.foldKana));
+    }
+
+    /**
+     * 設定に保存する
+     * @param prefs 保存先
+     */
+    void save(Preferences prefs) {
+        prefs.putDouble("similarityThreshold", threshold);
+        prefs.putBoolean("foldWidth", foldWidth);
+        prefs.putBoolean("ignorePunctuation", ignorePunctuation);
+        prefs.putBoolean("foldKana", foldKana);
+    }
+
+    /**
+     * 類似度からステータスを判定
+     * @param similarity 類似度
+     * @return "success" または "warning"
+     */
+    String status(double similarity) {
+        return similarity >= threshold ? "success" : "warning";
+    }
+
+    /**
+     * 比較用にテキストを正規化
+     * @param s 対象のテキスト
+     * @return 正規化したテキスト
+     */
+    String normalize(String s) {
+        if (s == null)
+            return "";
+        if (!foldWidth && !ignorePunctuation && !foldKana)
+            return s;
+
+        String t = foldWidth ? Normalizer.normalize(s, Normalizer.Form.NFKC) : s;
+        StringBuilder sb = new StringBuilder(t.length());
+        for (int i = 0; i < t.length(); ) {
+            int cp = t.codePointAt(i);
+            i += Character.charCount(cp);
+
+            if (ignorePunctuation && isPunctuation(cp))
+                continue;
+            if (foldKana) {
+                // 半角カナは濁点・半濁点と合わせて全角にしてから変換する
+                if (isHalfwidthKana(cp)) {
+                    int end = i;
+                    while (end < t.length() && isHalfwidthKana(t.charAt(end)))
+                        end++;
+                    String run = Normalizer.normalize(t.substring(i - 1, end), Normalizer.Form.NFKC);
+                    run.codePoints().map(ScoringProfile::toHiragana).forEach(sb::appendCodePoint);
+                    i = end;
+                    continue;
+                }
+                cp = toHiragana(cp);
+            }
+            sb.appendCodePoint(cp);
+        }
+        return sb.toString();
+    }
+
+    private static boolean isPunctuation(int cp) {
+        if (Character.isWhitespace(cp) || Character.isSpaceChar(cp))
+            return true;
+        return switch (Character.getType(cp)) {
+            case Character.CONNECTOR_PUNCTUATION, Character.DASH_PUNCTUATION,
+                 Character.START_PUNCTUATION, Character.END_PUNCTUATION,
+                 Character.INITIAL_QUOTE_PUNCTUATION, Character.FINAL_QUOTE_PUNCTUATION,
+                 Character.OTHER_PUNCTUATION, Character.OTHER_SYMBOL -> true;
+            default -> false;
+        };
+    }
+
+    private static boolean isHalfwidthKana(int cp) {
+        return cp >= 0xFF66 && cp <= 0xFF9F;
+    }
+
+    private static int toHiragana(int cp) {
+        // ァ〜ヶ と ヽヾ をひらがなに（ヷ〜ヺ などひらがなにない文字はそのまま）
+        if ((cp >= 0x30A1 && cp <= 0x30F6) || cp == 0x30FD || cp == 0x30FE)
+            return cp - 0x60;
+        return cp;
+    }
+}
@@ -0,0 +1,127 @@
+package koto_thing.voiceover_validator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 台本CSVの ID → 行 の索引
+ * 読み込み時に1回だけ作成し、タスク作成時のセリフ検索を O(1) にする
+ * 1行目はヘッダ、各行の先頭列をIDとして扱う（同じIDが複数ある場合は最初の行を使う）
+ */
+final class ScriptIndex {
+
+    private final List<String[]> rows;
+    private final Map<String, Integer> byId;
+    private final List<String> ids;
+    // 重複したID -> その行番号（ヘッダを1行目とした1始まり）
+    private final Map<String, List<Integer>> duplicates;
+
+    private ScriptIndex(List<String[]> rows, Map<String, Integer> byId, List<String> ids,
+                        Map<String, List<Integer>> duplicates) {
+        this.rows = rows;
+        this.byId = byId;
+        this.ids = ids;
+        this.duplicates = duplicates;
+    }
+
+    /**
+     * 索引を作成
+     * @param rows ヘッダを含むCSVの全行
+     * @return 作成した索引
+     */
+    static ScriptIndex build(List<String[]> rows) {
+        Map<String, Integer> byId = new HashMap<>(Math.max(16, rows.size() * 4 / 3 + 1));
+        List<String> ids = new ArrayList<>(rows.size());
+        Map<String, List<Integer>> duplicates = new LinkedHashMap<>();
+
+        for (int i = 1; i < rows.size(); i++) {
+            String[] row = rows.get(i);
+            if (row.length == 0)
+                continue;
+            String id = row[0].trim();
+            if (id.isEmpty())
+                continue;
+
+            Integer first = byId.putIfAbsent(id, i);
+            if (first == null) {
+                ids.add(id);
+            } else {
+                duplicates.computeIfAbsent(id, k -> new ArrayList<>(List.of(first + 1))).add(i + 1);
+            }
+        }
+
+        return new ScriptIndex(rows, byId, Collections.unmodifiableList(ids), Collections.unmodifiableMap(duplicates));
+    }
+
+    /**
+     * ヘッダ名から列番号を取得
+     * @param header 列名
+     * @return 列番号、見つからなければ-1
+     */
+    int columnOf(String header) {
+        if (rows.isEmpty() || header == null)
+            return -1;
+
+        String[] headers = rows.get(0);
+        for (int i = 0; i < headers.length; i++) {
+            if (headers[i].trim().equals(header.trim()))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * IDからセリフを取得
+     * @param id 検索するID
+     * @param col セリフがある列番号
+     * @return 見つかった場合にテキスト、見つからなければnull
+     */
+    String text(String id, int col) {
+        Integer i = byId.get(id);
+        if (i == null || col < 0)
+            return null;
+
+        String[] row = rows.get(i);
+        return row.length > col ? row[col].trim() : null;
+    }
+
+    /**
+     * IDと音声ファイルから処理タスクを作成
+     * @param id 台本のID
+     * @param col セリフがある列番号
+     * @param audioPath 音声ファイルのパス
+     * @return 処理タスク、IDまたはセリフが見つからなければnull
+     */
+    ProcessingTask task(String id, int col, String audioPath) {
+        String script = text(id, col);
+        return script != null ? new ProcessingTask(id, audioPath, script) : null;
+    }
+
+    /**
+     * ヘッダを含むCSVの全行
+     * @return 全行
+     */
+    List<String[]> rows() {
+        return rows;
+    }
+
+    /**
+     * 重複のないIDの一覧（CSVの出現順）
+     * @return IDの一覧
+     */
+    List<String> ids() {
+        return ids;
+    }
+
+    /**
+     * 重複しているIDとその行番号
+     * @return 重複したID -> 行番号のリスト（重複がなければ空）
+     */
+    Map<String, List<Integer>> duplicates() {
+        return duplicates;
+    }
+}
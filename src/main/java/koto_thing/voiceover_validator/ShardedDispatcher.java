@@ -0,0 +1,178 @@
+package koto_thing.voiceover_validator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * タスクをK個のシャード（ワーカーごとの両端キュー）に振り分けて並列に処理するクラス
+ * 音声の長さをヘッダから見積もり、長いものから順に合計が最も少ないシャードへ割り当てる（LPT）
+ * 自分のキューが空になったシャードは、他のシャードのキューの末尾（短いタスク）を奪って処理する
+ * 結果は元のタスク順に並べ直して返す
+ */
+class ShardedDispatcher {
+
+    /**
+     * 結果が届くたびに呼ばれるリスナー（シャードのスレッドから呼ばれる）
+     */
+    interface ResultListener {
+        void onResult(int index, PythonResult result);
+    }
+
+    private final TaskProcessor processor;
+    private final int shardCount;
+    private final ToDoubleFunction<ProcessingTask> cost;
+
+    /**
+     * コンストラクタ（音声の長さをタスクの重さとして使う）
+     * @param processor 処理に使う処理段（ワーカープールなど）
+     * @param shardCount シャード数（同時に処理するタスク数の上限）
+     */
+    ShardedDispatcher(TaskProcessor processor, int shardCount) {
+        this(processor, shardCount, task -> AudioDecoder.estimateSeconds(task.audioPath));
+    }
+
+    /**
+     * コンストラクタ
+     * @param processor 処理に使う処理段（ワーカープールなど）
+     * @param shardCount シャード数（同時に処理するタスク数の上限）
+     * @param cost タスクの重さの見積もり（大きいものから先に処理する）
+     */
+    ShardedDispatcher(TaskProcessor processor, int shardCount, ToDoubleFunction<ProcessingTask> cost) {
+        this.processor = processor;
+        this.shardCount = Math.max(1, shardCount);
+        this.cost = cost;
+    }
+
+    /**
+     * 既定のシャード数（利用可能なコア数 / ワーカー1つあたりのスレッド数）
+     * @param threadsPerWorker ワーカー1つあたりのスレッド数
+     * @return 既定のシャード数（最低1）
+     */
+    static int defaultShardCount(int threadsPerWorker) {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() / Math.max(1, threadsPerWorker));
+    }
+
+    /**
+     * タスクを重い順に、重さの合計が最も少ないシャードへ割り当てる
+     * @param costs タスクごとの重さ
+     * @param shards シャード数
+     * @return 各シャードのキュー（タスクの番号を重い順に並べたもの）
+     */
+    static List<ConcurrentLinkedDeque<Integer>> plan(double[] costs, int shards) {
+        int k = Math.max(1, Math.min(shards, costs.length));
+        Integer[] order = new Integer[costs.length];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        // 同じ重さなら元の順（安定ソート）
+        Arrays.sort(order, (x, y) -> Double.compare(costs[y], costs[x]));
+
+        List<ConcurrentLinkedDeque<Integer>> queues = new ArrayList<>(k);
+        double[] loads = new double[k];
+        for (int s = 0; s < k; s++)
+            queues.add(new ConcurrentLinkedDeque<>());
+        for (int i : order) {
+            int least = 0;
+            for (int s = 1; s < k; s++) {
+                if (loads[s] < loads[least])
+                    least = s;
+            }
+            queues.get(least).addLast(i);
+            loads[least] += costs[i];
+        }
+        return queues;
+    }
+
+    /**
+     * 次に処理するタスクの番号（自分のキューの先頭、空なら他のシャードのキューの末尾から奪う）
+     * @return タスクの番号、残りがなければnull
+     */
+    private static Integer next(List<ConcurrentLinkedDeque<Integer>> queues, int self) {
+        Integer i = queues.get(self).pollFirst();
+        for (int d = 1; i == null && d < queues.size(); d++)
+            i = queues.get((self + d) % queues.size()).pollLast();
+        return i;
+    }
+
+    /**
+     * 全タスクを並列に処理する
+     * @param tasks 処理タスクのリスト
+     * @param listener 結果が届くたびに呼ばれるリスナー
+     * @param cancelled 中止されたかどうかを返す関数
+     * @return 元のタスク順に並べた結果（中止された場合は処理済みの分のみ）
+     * @throws IOException ワーカーを起動できなかった場合
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    List<PythonResult> run(List<ProcessingTask> tasks, ResultListener listener, BooleanSupplier cancelled)
+            throws IOException, InterruptedException {
+        PythonResult[] merged = new PythonResult[tasks.size()];
+        double[] costs = new double[tasks.size()];
+        // 1シャードなら順序は関係ないので見積もらない
+        if (shardCount > 1) {
+            for (int i = 0; i < costs.length; i++)
+                costs[i] = cost.applyAsDouble(tasks.get(i));
+        }
+        List<ConcurrentLinkedDeque<Integer>> queues = plan(costs, shardCount);
+
+        AtomicInteger threadNo = new AtomicInteger();
+        ExecutorService exec = Executors.newFixedThreadPool(queues.size(), r -> {
+            Thread t = new Thread(r, "shard-" + threadNo.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int s = 0; s < queues.size(); s++) {
+                int self = s;
+                futures.add(exec.submit(() -> {
+                    Integer i;
+                    while (!cancelled.getAsBoolean() && (i = next(queues, self)) != null) {
+                        ProcessingTask task = tasks.get(i);
+                        FlightEvents.TaskDispatch event = new FlightEvents.TaskDispatch();
+                        event.begin();
+                        PythonResult res = null;
+                        try {
+                            res = processor.process(task);
+                        } finally {
+                            event.finish(task, self, res);
+                        }
+                        merged[i] = res;
+                        listener.onResult(i, res);
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<Void> f : futures) {
+                try {
+                    f.get();
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    if (cause instanceof IOException io) throw io;
+                    if (cause instanceof InterruptedException ie) throw ie;
+                    if (cause instanceof RuntimeException re) throw re;
+                    throw new IOException(cause);
+                }
+            }
+        } finally {
+            exec.shutdownNow();
+        }
+
+        List<PythonResult> ordered = new ArrayList<>(merged.length);
+        for (PythonResult r : merged) {
+            if (r != null)
+                ordered.add(r);
+        }
+        return ordered;
+    }
+}
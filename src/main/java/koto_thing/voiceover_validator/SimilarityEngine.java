@@ -0,0 +1,398 @@
+package koto_thing.voiceover_validator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 台本と認識結果の類似度・差分を計算するクラス
+ * Pythonの difflib.SequenceMatcher と同じアルゴリズムをコードポイント単位で実装しており、
+ * DIFFLIB_COMPAT モードでは SequenceMatcher(None, a, b).ratio() と同じ値を返す
+ * 内部の作業領域はすべてプリミティブ配列で、呼び出しごとに確保するためスレッドセーフ
+ */
+final class SimilarityEngine {
+
+    /**
+     * 一致判定のモード
+     */
+    enum Mode {
+        // difflibの既定動作（長さ200以上の文字列で頻出文字を照合から除外する autojunk あり）
+        DIFFLIB_COMPAT,
+        // autojunk なし（長文でも頻出文字を除外しない）
+        NO_AUTOJUNK
+    }
+
+    /**
+     * 差分の1区間（difflibの get_opcodes と同じ意味、インデックスはコードポイント単位）
+     */
+    record Opcode(Tag tag, int i1, int i2, int j1, int j2) {}
+
+    enum Tag { EQUAL, REPLACE, DELETE, INSERT }
+
+    private final Mode mode;
+
+    /**
+     * コンストラクタ
+     * @param mode 一致判定のモード
+     */
+    SimilarityEngine(Mode mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * difflib互換モードのエンジンを作成
+     * @return difflib互換のエンジン
+     */
+    static SimilarityEngine difflibCompatible() {
+        return new SimilarityEngine(Mode.DIFFLIB_COMPAT);
+    }
+
+    /**
+     * 類似度を計算（2 * 一致文字数 / 総文字数）
+     * @param a 台本テキスト
+     * @param b 認識テキスト
+     * @return 0.0〜1.0の類似度
+     */
+    double ratio(String a, String b) {
+        int[] ca = codePoints(a), cb = codePoints(b);
+        if (ca.length + cb.length == 0)
+            return 1.0;
+
+        int[] blocks = matchingBlocks(ca, cb);
+        int matches = 0;
+        for (int p = 2; p < blocks.length; p += 3)
+            matches += blocks[p];
+
+        return 2.0 * matches / (ca.length + cb.length);
+    }
+
+    /**
+     * 文字単位の差分区間を計算
+     * @param a 台本テキスト
+     * @param b 認識テキスト
+     * @return 差分区間のリスト
+     */
+    List<Opcode> opcodes(String a, String b) {
+        return opcodes(matchingBlocks(codePoints(a), codePoints(b)));
+    }
+
+    /**
+     * 文字単位の差分を表示用の行に変換（"  "=一致, "- "=台本のみ, "+ "=認識のみ）
+     * @param a 台本テキスト
+     * @param b 認識テキスト
+     * @return 差分の行
+     */
+    String[] diff(String a, String b) {
+        int[] ca = codePoints(a), cb = codePoints(b);
+        List<String> lines = new ArrayList<>();
+        for (Opcode op : opcodes(matchingBlocks(ca, cb))) {
+            switch (op.tag()) {
+                case EQUAL -> lines.add("  " + new String(ca, op.i1(), op.i2() - op.i1()));
+                case DELETE -> lines.add("- " + new String(ca, op.i1(), op.i2() - op.i1()));
+                case INSERT -> lines.add("+ " + new String(cb, op.j1(), op.j2() - op.j1()));
+                case REPLACE -> {
+                    lines.add("- " + new String(ca, op.i1(), op.i2() - op.i1()));
+                    lines.add("+ " + new String(cb, op.j1(), op.j2() - op.j1()));
+                }
+            }
+        }
+        return lines.toArray(new String[0]);
+    }
+
+    /**
+     * 結果に類似度と差分を設定する（エラー結果はそのまま）
+     * @param res 対象の結果
+     * @return 引数の結果
+     */
+    PythonResult score(PythonResult res) {
+        return score(res, ScoringProfile.DEFAULT);
+    }
+
+    /**
+     * 正規化したテキストで結果に類似度と差分を設定する（エラー結果はそのまま）
+     * @param res 対象の結果
+     * @param profile 採点の設定
+     * @return 引数の結果
+     */
+    PythonResult score(PythonResult res, ScoringProfile profile) {
+        if (res == null || res.error != null)
+            return res;
+
+        String script = profile.normalize(res.script_text);
+        String recognized = profile.normalize(res.recognized_text);
+        res.similarity = ratio(script, recognized);
+        res.diff = diff(script, recognized);
+        return res;
+    }
+
+    /**
+     * 次の処理段の結果をJava側で採点する処理段を作成
+     * @param next 次の処理段
+     * @param profile 採点の設定
+     * @return 採点付きの処理段
+     */
+    TaskProcessor wrap(TaskProcessor next, ScoringProfile profile) {
+        return task -> score(next.process(task), profile);
+    }
+
+    // ---- 以下、difflib.SequenceMatcher の移植 ----
+
+    private static int[] codePoints(String s) {
+        return s == null ? new int[0] : s.codePoints().toArray();
+    }
+
+    /**
+     * 一致ブロックを計算（difflibの get_matching_blocks と同じ結果）
+     * @return [i, j, size] を並べた配列（末尾に番兵 [la, lb, 0] を含む）
+     */
+    private int[] matchingBlocks(int[] a, int[] b) {
+        int la = a.length, lb = b.length;
+        Index b2j = new Index(b, mode == Mode.DIFFLIB_COMPAT && lb >= 200);
+        int[] aGroup = new int[la];
+        for (int i = 0; i < la; i++)
+            aGroup[i] = b2j.group(a[i]);
+
+        // j2len を配列で表現（世代番号が一致するものだけ有効）
+        Scratch sc = new Scratch(lb);
+
+        IntList found = new IntList();
+        IntList queue = new IntList();
+        queue.add(0, la, 0, lb);
+        int[] m = new int[3];
+        while (queue.size() > 0) {
+            int bhi = queue.pop(), blo = queue.pop(), ahi = queue.pop(), alo = queue.pop();
+            longestMatch(a, b, aGroup, b2j, sc, alo, ahi, blo, bhi, m);
+            int i = m[0], j = m[1], k = m[2];
+            if (k > 0) {
+                found.add(i, j, k);
+                if (alo < i && blo < j)
+                    queue.add(alo, i, blo, j);
+                if (i + k < ahi && j + k < bhi)
+                    queue.add(i + k, ahi, j + k, bhi);
+            }
+        }
+
+        // (i, j) の昇順に並べ替え、隣接するブロックを結合
+        int n = found.size() / 3;
+        long[] order = new long[n];
+        for (int p = 0; p < n; p++)
+            order[p] = ((long) found.get(p * 3) << 32) | p;
+        Arrays.sort(order);
+
+        IntList blocks = new IntList();
+        int i1 = 0, j1 = 0, k1 = 0;
+        for (long o : order) {
+            int p = (int) o * 3;
+            int i2 = found.get(p), j2 = found.get(p + 1), k2 = found.get(p + 2);
+            if (i1 + k1 == i2 && j1 + k1 == j2) {
+                k1 += k2;
+            } else {
+                if (k1 > 0)
+                    blocks.add(i1, j1, k1);
+                i1 = i2; j1 = j2; k1 = k2;
+            }
+        }
+        if (k1 > 0)
+            blocks.add(i1, j1, k1);
+        blocks.add(la, lb, 0);
+        return blocks.toArray();
+    }
+
+    /**
+     * a[alo:ahi] と b[blo:bhi] の最長一致を探す（difflibの find_longest_match と同じ結果）
+     */
+    private static void longestMatch(int[] a, int[] b, int[] aGroup, Index b2j, Scratch sc,
+                                     int alo, int ahi, int blo, int bhi, int[] out) {
+        int besti = alo, bestj = blo, bestsize = 0;
+
+        // 前回の呼び出しで書いた長さを無効にする
+        sc.nextStamp();
+        for (int i = alo; i < ahi; i++) {
+            int stamp = sc.nextStamp();
+            int g = aGroup[i];
+            if (g >= 0) {
+                for (int p = b2j.start[g], end = b2j.start[g + 1]; p < end; p++) {
+                    int j = b2j.positions[p];
+                    if (j < blo)
+                        continue;
+                    if (j >= bhi)
+                        break;
+                    int k = sc.prevLen(j - 1, stamp) + 1;
+                    sc.setLen(j, k, stamp);
+                    if (k > bestsize) {
+                        besti = i - k + 1;
+                        bestj = j - k + 1;
+                        bestsize = k;
+                    }
+                }
+            }
+            sc.swap();
+        }
+
+        // isjunk=None なので junk は存在しない。頻出文字は両端への延長でのみ一致として扱われる
+        while (besti > alo && bestj > blo && a[besti - 1] == b[bestj - 1]) {
+            besti--;
+            bestj--;
+            bestsize++;
+        }
+        while (besti + bestsize < ahi && bestj + bestsize < bhi && a[besti + bestsize] == b[bestj + bestsize])
+            bestsize++;
+
+        out[0] = besti;
+        out[1] = bestj;
+        out[2] = bestsize;
+    }
+
+    private static List<Opcode> opcodes(int[] blocks) {
+        List<Opcode> answer = new ArrayList<>();
+        int i = 0, j = 0;
+        for (int p = 0; p < blocks.length; p += 3) {
+            int ai = blocks[p], bj = blocks[p + 1], size = blocks[p + 2];
+            Tag tag = null;
+            if (i < ai && j < bj) tag = Tag.REPLACE;
+            else if (i < ai) tag = Tag.DELETE;
+            else if (j < bj) tag = Tag.INSERT;
+            if (tag != null)
+                answer.add(new Opcode(tag, i, ai, j, bj));
+            i = ai + size;
+            j = bj + size;
+            if (size > 0)
+                answer.add(new Opcode(Tag.EQUAL, ai, i, bj, j));
+        }
+        return answer;
+    }
+
+    /**
+     * b2j（文字 -> bでの出現位置の昇順リスト）をプリミティブ配列で表したもの
+     * 文字ごとのグループ番号をオープンアドレス法のハッシュ表で引く
+     */
+    private static final class Index {
+        final int[] positions;   // グループごとに連続して並んだ出現位置
+        final int[] start;       // グループgの位置は positions[start[g] .. start[g+1])
+        private final int[] keys;
+        private final int[] groups;      // -1 は autojunk で除外された文字
+        private final boolean[] used;
+        private final int mask;
+
+        Index(int[] b, boolean autojunk) {
+            int cap = Integer.highestOneBit(Math.max(4, b.length * 2 - 1)) << 1;
+            keys = new int[cap];
+            groups = new int[cap];
+            used = new boolean[cap];
+            mask = cap - 1;
+
+            // 文字ごとにグループ番号を振り、出現数を数える
+            int[] counts = new int[b.length];
+            int[] groupOf = new int[b.length];
+            int ng = 0;
+            for (int j = 0; j < b.length; j++) {
+                int slot = slot(b[j]);
+                if (!used[slot]) {
+                    used[slot] = true;
+                    keys[slot] = b[j];
+                    groups[slot] = ng++;
+                }
+                groupOf[j] = groups[slot];
+                counts[groupOf[j]]++;
+            }
+
+            start = new int[ng + 1];
+            for (int g = 0; g < ng; g++)
+                start[g + 1] = start[g] + counts[g];
+            positions = new int[b.length];
+            int[] fill = Arrays.copyOf(start, ng);
+            for (int j = 0; j < b.length; j++)
+                positions[fill[groupOf[j]]++] = j;
+
+            // autojunk: 出現数が 1% + 1 を超える文字を照合対象から外す
+            if (autojunk) {
+                int ntest = b.length / 100 + 1;
+                for (int h = 0; h < cap; h++) {
+                    if (used[h] && counts[groups[h]] > ntest)
+                        groups[h] = -1;
+                }
+            }
+        }
+
+        /**
+         * 文字のグループ番号
+         * @return グループ番号、bに現れない（または除外された）文字なら-1
+         */
+        int group(int c) {
+            int slot = slot(c);
+            return used[slot] ? groups[slot] : -1;
+        }
+
+        private int slot(int c) {
+            int h = c * 0x9E3779B1;
+            h = (h ^ (h >>> 16)) & mask;
+            while (used[h] && keys[h] != c)
+                h = (h + 1) & mask;
+            return h;
+        }
+    }
+
+    /**
+     * find_longest_match の j2len / newj2len を2本の配列で表したもの
+     */
+    private static final class Scratch {
+        private int[] curLen, curStamp, prevLen, prevStamp;
+        private int stamp = 0;
+
+        Scratch(int lb) {
+            curLen = new int[lb];
+            curStamp = new int[lb];
+            prevLen = new int[lb];
+            prevStamp = new int[lb];
+        }
+
+        int nextStamp() {
+            return ++stamp;
+        }
+
+        int prevLen(int j, int stamp) {
+            return j >= 0 && prevStamp[j] == stamp - 1 ? prevLen[j] : 0;
+        }
+
+        void setLen(int j, int k, int stamp) {
+            curLen[j] = k;
+            curStamp[j] = stamp;
+        }
+
+        void swap() {
+            int[] t = prevLen; prevLen = curLen; curLen = t;
+            t = prevStamp; prevStamp = curStamp; curStamp = t;
+        }
+    }
+
+    /**
+     * 伸長可能なintのリスト
+     */
+    private static final class IntList {
+        private int[] data = new int[16];
+        private int size = 0;
+
+        void add(int... vs) {
+            if (size + vs.length > data.length)
+                data = Arrays.copyOf(data, Math.max(data.length * 2, size + vs.length));
+            for (int v : vs)
+                data[size++] = v;
+        }
+
+        int pop() {
+            return data[--size];
+        }
+
+        int get(int i) {
+            return data[i];
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+}
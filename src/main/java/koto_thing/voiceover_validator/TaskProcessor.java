@@ -0,0 +1,20 @@
+package koto_thing.voiceover_validator;
+
+import java.io.IOException;
+
+/**
+ * 処理タスク1件を結果に変換する処理段
+ * ワーカープールを末端に、キャッシュなどの段を重ねて使う
+ */
+@FunctionalInterface
+interface TaskProcessor {
+
+    /**
+     * タスクを1件処理する
+     * @param task 処理タスク
+     * @return 処理結果
+     * @throws IOException 処理を継続できない障害が起きた場合
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    PythonResult process(ProcessingTask task) throws IOException, InterruptedException;
+}
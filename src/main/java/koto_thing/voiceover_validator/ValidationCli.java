@@ -0,0 +1,486 @@
+package koto_thing.voiceover_validator;
+
+import jdk.jfr.Recording;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Stream;
+
+/**
+ * GUIを起動せずに検証を実行するコマンドライン版
+ * JavaFXのツールキットは起動せず、GUIと同じ処理（タスク作成・並列実行・採点・CSV出力）を使う
+ * 終了コード: 0 = 全件成功, 1 = 警告またはエラーあり, 2 = 引数・入力の誤りや実行時エラー
+ */
+public final class ValidationCli {
+
+    static final String USAGE = """
+            使用方法: VoiceValidator --headless --csv <台本CSV> --audio <音声フォルダ> [オプション]
+                      VoiceValidator --headless --serve [--port <n>] [--queue <n>] [オプション]
+              --csv <path>             台本CSV（1列目がID）
+              --audio <dir>            音声ファイルのフォルダ
+              --mapping <path>         ファイル名,ID のCSV（省略時はファイル名から自動で割り当て）
+              --pattern <regex>        自動割り当てでファイル名からIDを取り出す正規表現
+              --min-confidence <0-1>   自動割り当てで採用する最低の一致度（既定: 0.9）
+              --column <name>          比較する列名（既定: context）
+              --engine <name>          google / whisper / sphinx（既定: google）
+              --language <code>        言語コード（既定: ja-JP）
+              --model <name>           Whisperのモデル（既定: base）
+              --python <path>          Pythonの実行ファイル（既定: python）
+              --script <path>          RecognizeAndCompare.py のパス（既定: 自動で探索）
+              --workers <n>            ワーカー数（既定: コア数 / スレッド数）
+              --threads <n>            ワーカー1つあたりのスレッド数（既定: min(4, コア数)）
+              --threshold <0-1>        合格ライン（既定: 0.9）
+              --fold-width             全角/半角を同一視
+              --ignore-punctuation     句読点・記号・空白を無視
+              --fold-kana              ひらがな/カタカナを同一視
+              --no-cache               認識結果キャッシュを使わない
+              --resume                 同じ入力で中断された実行の記録があれば、完了済みの結果を使って残りだけを検証する
+              --incremental            前回の実行から音声・台本が変わったタスクだけを検証し、残りは前回の結果を引き継ぐ
+              --silence-threshold <dB> 音声とみなす音量（既定: -45 dBFS、これ以下の前後の区間を除く）
+              --silence-padding <ms>   無音カットで前後に残す余白（既定: 200）
+              --no-trim                前後の無音を除かない
+              --timeout <sec>          1件あたりの制限時間（既定: 120、0 = 無制限）
+              --retries <n>            一時的な失敗を再試行する回数（既定: 2）
+              --output <path>          結果CSVの出力先（既定: - = 標準出力）
+              --metrics <path>         処理段階ごとの所要時間を書き出す（.prom ならPrometheusのテキスト形式、それ以外はJSON）
+              --jfr <path>             この実行をJava Flight Recorderで記録し、.jfr ファイルに書き出す
+              --quiet                  1件ごとの進捗を表示しない
+              --serve                  HTTPサーバーとして常駐し、タスクを1件ずつ受け付ける
+              --port <n>               サーバーのポート（既定: 8765、127.0.0.1のみで待ち受け）
+              --queue <n>              サーバーのキューの上限（既定: 1000、超えると429を返す）
+            """;
+
+    /**
+     * コマンドライン引数
+     */
+    static final class Options {
+        Path csv;
+        Path audio;
+        Path mapping;
+        String pattern;
+        double minConfidence = 0.9;
+        String column = "context";
+        String engine = "google";
+        String language = "ja-JP";
+        String model = "base";
+        String python = "python";
+        String script;
+        int threads = Math.min(4, Runtime.getRuntime().availableProcessors());
+        int workers = -1;
+        double threshold = ScoringProfile.DEFAULT.threshold();
+        boolean foldWidth, ignorePunctuation, foldKana;
+        boolean useCache = true;
+        boolean resume;
+        boolean incremental;
+        boolean trim = AudioPreprocessor.Settings.DEFAULT.trim();
+        double silenceThreshold = AudioPreprocessor.Settings.DEFAULT.thresholdDb();
+        int silencePadding = AudioPreprocessor.Settings.DEFAULT.paddingMillis();
+        double timeout = RetryPolicy.DEFAULT.timeoutMillis() / 1000.0;
+        int retries = RetryPolicy.DEFAULT.maxAttempts() - 1;
+        String output = "-";
+        Path metrics;
+        Path jfr;
+        boolean quiet;
+        boolean serve;
+        int port = 8765;
+        int queue = 1000;
+
+        /**
+         * 引数を解析
+         * @param args コマンドライン引数
+         * @return 解析結果
+         * @throws IllegalArgumentException 引数が不正な場合
+         */
+        static Options parse(String[] args) {
+            Options o = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String a = args[i];
+                switch (a) {
+                    case "--csv" -> o.csv = Paths.get(value(args, ++i, a));
+                    case "--audio" -> o.audio = Paths.get(value(args, ++i, a));
+                    case "--mapping" -> o.mapping = Paths.get(value(args, ++i, a));
+                    case "--pattern" -> o.pattern = value(args, ++i, a);
+                    case "--min-confidence" -> o.minConfidence = number(args, ++i, a);
+                    case "--column" -> o.column = value(args, ++i, a);
+                    case "--engine" -> o.engine = value(args, ++i, a);
+                    case "--language" -> o.language = value(args, ++i, a);
+                    case "--model" -> o.model = value(args, ++i, a);
+                    case "--python" -> o.python = value(args, ++i, a);
+                    case "--script" -> o.script = value(args, ++i, a);
+                    case "--workers" -> o.workers = (int) number(args, ++i, a);
+                    case "--threads" -> o.threads = (int) number(args, ++i, a);
+                    case "--threshold" -> o.threshold = number(args, ++i, a);
+                    case "--fold-width" -> o.foldWidth = true;
+                    case "--ignore-punctuation" -> o.ignorePunctuation = true;
+                    case "--fold-kana" -> o.foldKana = true;
+                    case "--no-cache" -> o.useCache = false;
+                    case "--resume" -> o.resume = true;
+                    case "--incremental" -> o.incremental = true;
+                    case "--silence-threshold" -> o.silenceThreshold = number(args, ++i, a);
+                    case "--silence-padding" -> o.silencePadding = (int) number(args, ++i, a);
+                    case "--no-trim" -> o.trim = false;
+                    case "--timeout" -> o.timeout = number(args, ++i, a);
+                    case "--retries" -> o.retries = (int) number(args, ++i, a);
+                    case "--output" -> o.output = value(args, ++i, a);
+                    case "--metrics" -> o.metrics = Paths.get(value(args, ++i, a));
+                    case "--jfr" -> o.jfr = Paths.get(value(args, ++i, a));
+                    case "--quiet" -> o.quiet = true;
+                    case "--serve" -> o.serve = true;
+                    case "--port" -> o.port = (int) number(args, ++i, a);
+                    case "--queue" -> o.queue = (int) number(args, ++i, a);
+                    default -> throw new IllegalArgumentException("不明なオプション: " + a);
+                }
+            }
+
+            if (!o.serve && (o.csv == null || o.audio == null))
+                throw new IllegalArgumentException("--csv と --audio は必須です");
+            if (o.port < 0 || o.port > 65535)
+                throw new IllegalArgumentException("--port が不正です");
+            if (o.timeout < 0 || o.retries < 0)
+                throw new IllegalArgumentException("--timeout と --retries には0以上を指定してください");
+            if (o.silenceThreshold >= 0 || o.silencePadding < 0)
+                throw new IllegalArgumentException("--silence-threshold には負のdBFSを、--silence-padding には0以上を指定してください");
+            if (o.queue < 1)
+                throw new IllegalArgumentException("--queue は1以上を指定してください");
+            if (!List.of("google", "whisper", "sphinx").contains(o.engine))
+                throw new IllegalArgumentException("不明なエンジン: " + o.engine);
+            if (o.threads < 1)
+                throw new IllegalArgumentException("--threads は1以上を指定してください");
+            if (o.workers < 1)
+                o.workers = ShardedDispatcher.defaultShardCount(o.threads);
+            return o;
+        }
+
+        private static String value(String[] args, int i, String name) {
+            if (i >= args.length)
+                throw new IllegalArgumentException(name + " に値がありません");
+            return args[i];
+        }
+
+        private static double number(String[] args, int i, String name) {
+            try {
+                return Double.parseDouble(value(args, i, name));
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException(name + " には数値を指定してください");
+            }
+        }
+    }
+
+    private ValidationCli() {}
+
+    /**
+     * コマンドライン版のエントリーポイント
+     * @param args コマンドライン引数
+     */
+    public static void main(String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     * 検証を実行
+     * @param args コマンドライン引数
+     * @param out 結果CSVの出力先（--output - の場合）
+     * @param err 進捗とメッセージの出力先
+     * @return 終了コード
+     */
+    static int run(String[] args, PrintStream out, PrintStream err) {
+        Options o;
+        try {
+            o = Options.parse(args);
+        } catch (IllegalArgumentException ex) {
+            err.println(ex.getMessage());
+            err.print(USAGE);
+            return 2;
+        }
+        if (o.serve)
+            return serve(o, err);
+
+        PythonWorkerPool pool = null;
+        RunJournal journal = null;
+        Recording recording = null;
+        try {
+            // 台本の読み込みからワーカーの終了までを記録する
+            if (o.jfr != null)
+                recording = FlightEvents.startRecording("voiceover-validation");
+            ScriptIndex index = readScript(o.csv);
+            int col = index.columnOf(o.column);
+            if (col == -1) {
+                err.println("列が見つかりません: " + o.column);
+                return 2;
+            }
+            if (!index.duplicates().isEmpty())
+                err.println("IDの重複 " + index.duplicates().size() + "件（最初の行を使用）: " + index.duplicates().keySet());
+
+            List<ProcessingTask> tasks = o.mapping != null ? tasksFromMapping(o, index, col, err) : tasksFromFolder(o, index, col, err);
+            if (tasks.isEmpty()) {
+                err.println("処理するファイルが見つかりません。マッピングを確認してください。");
+                return 2;
+            }
+
+            pool = createPool(o);
+            AudioPreprocessor audio = createPreprocessor(o);
+            // 結果は届いた順に記録し、中断された場合は --resume で再開できるようにする
+            journal = RunJournal.open(new File(AppDirectories.documentsDirectory(), "VoiceValidator/journal").toPath(), pool.config(), audio.settings(), tasks, o.resume);
+            // Ctrl+C などで終了した場合もワーカーを止め、記録を書き出す
+            PythonWorkerPool workers = pool;
+            RunJournal checkpoint = journal;
+            Thread hook = new Thread(() -> {
+                workers.close();
+                closeQuietly(checkpoint);
+            });
+            Runtime.getRuntime().addShutdownHook(hook);
+
+            // 前回の実行との差分（--incremental のときだけ使い、記録は毎回更新する）
+            RunManifest manifest = RunManifest.open(new File(AppDirectories.documentsDirectory(), "VoiceValidator/manifest").toPath(),
+                    pool.config(), audio.settings(), o.csv, o.incremental);
+            ValidationEngine engine = createEngine(o, pool, audio, journal, manifest);
+            ScoringProfile profile = engine.profile();
+
+            if (journal.resumable() > 0)
+                err.println("前回の記録から " + journal.resumable() + "件を再開します");
+            err.println(tasks.size() + "件を " + pool.size() + " ワーカーで検証します (" + o.engine + ")");
+            long start = System.nanoTime();
+            ProgressTracker tracker = new ProgressTracker(tasks.size());
+            engine.onStage(tracker::stage);
+            ValidationEngine.ResultSubscriber progress = ValidationEngine.each(res -> {
+                tracker.completed(res.id, !res.replayed);
+                if (!o.quiet) {
+                    ProgressTracker.Snapshot p = tracker.snapshot();
+                    String status = res.error != null ? "error" : profile.status(res.similarity);
+                    String eta = p.etaSeconds() >= 0 ? String.format(Locale.US, " (%.1f件/秒, 残り約%d秒)", p.perSecond(), p.etaSeconds()) : "";
+                    err.printf(Locale.US, "[%d/%d] %s %s %.1f%%%s%n", p.done(), tasks.size(), res.id, status, res.similarity * 100, eta);
+                }
+            });
+            List<PythonResult> ordered = ValidationEngine.await(engine.submit(tasks, progress));
+            progress.done().join();
+
+            List<ValidationResult> rows = new ArrayList<>(ordered.size());
+            int success = 0, warning = 0, error = 0;
+            for (PythonResult res : ordered) {
+                ValidationResult row = ValidationResult.of(res, profile);
+                rows.add(row);
+                switch (row.getStatus()) {
+                    case "success" -> success++;
+                    case "warning" -> warning++;
+                    default -> error++;
+                }
+            }
+
+            if ("-".equals(o.output)) {
+                Writer w = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+                ResultExporter.writeCsv(w, rows);
+            } else {
+                ResultExporter.writeCsv(Paths.get(o.output), rows);
+            }
+
+            double sec = (System.nanoTime() - start) / 1e9;
+            err.printf(Locale.US, "完了: 成功 %d件, 警告 %d件, エラー %d件, キャッシュヒット %d件 (%.1f秒)%n",
+                    success, warning, error, engine.cacheHits(), sec);
+            if (engine.quarantined() > 0)
+                err.println("ワーカーの異常が続いた " + engine.quarantined() + "件のファイルを隔離しました");
+            if (o.incremental)
+                err.println("差分検証: " + manifest.summary());
+            if (audio.silentTakes() > 0 || audio.trimmedSeconds() > 0)
+                err.printf(Locale.US, "無音カット: %.1f秒 / %.1f秒, 無音のテイク %d件%n",
+                        audio.trimmedSeconds(), audio.decodedSeconds(), audio.silentTakes());
+            if (!o.quiet)
+                err.println(engine.metrics().summary());
+            if (o.metrics != null) {
+                try {
+                    engine.metrics().write(o.metrics);
+                } catch (IOException ex) {
+                    err.println("処理の内訳を書き出せません: " + ex.getMessage());
+                }
+            }
+            try {
+                manifest.save(tasks);
+            } catch (IOException ex) {
+                err.println("マニフェストを保存できません（次回の差分検証は全件になります）: " + ex.getMessage());
+            }
+
+            // 全件が成功した場合は記録が不要になるので削除する（失敗があれば --resume で失敗分だけやり直せる）
+            if (ordered.size() == tasks.size() && error == 0)
+                journal.finish();
+            Runtime.getRuntime().removeShutdownHook(hook);
+            return warning + error == 0 ? 0 : 1;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            err.println("中断されました");
+            return 2;
+        } catch (IOException | RuntimeException ex) {
+            err.println("処理中にエラー: " + ex.getMessage());
+            return 2;
+        } finally {
+            if (pool != null)
+                pool.close();
+            closeQuietly(journal);
+            if (recording != null) {
+                try {
+                    FlightEvents.stopRecording(recording, o.jfr);
+                    err.println("JFRの記録を保存しました: " + o.jfr);
+                } catch (IOException ex) {
+                    err.println("JFRの記録を保存できません: " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable c) {
+        try {
+            if (c != null)
+                c.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * HTTPサーバーとして常駐する（Ctrl+C で終了）
+     * @param o コマンドライン引数
+     * @param err メッセージの出力先
+     * @return 終了コード
+     */
+    private static int serve(Options o, PrintStream err) {
+        PythonWorkerPool pool = createPool(o);
+        try (ValidationServer server = new ValidationServer(createEngine(o, pool, createPreprocessor(o), null, null), pool.size(), o.port, o.queue)) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.stop();
+                pool.close();
+            }));
+            server.start();
+            err.println("http://127.0.0.1:" + server.port() + "/ で待機中 (" + o.engine + ", " + pool.size() + " ワーカー, キュー上限 " + o.queue + "件)");
+            server.awaitStop();
+            return 0;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return 0;
+        } catch (IOException ex) {
+            err.println("サーバーを起動できません: " + ex.getMessage());
+            return 2;
+        } finally {
+            pool.close();
+        }
+    }
+
+    private static PythonWorkerPool createPool(Options o) {
+        PythonWorkerPool.Config config = new PythonWorkerPool.Config(
+                o.python,
+                o.script != null ? o.script : PythonWorkerPool.findScript(),
+                o.engine,
+                o.language,
+                "whisper".equals(o.engine) ? o.model : "none",
+                o.threads);
+        return new PythonWorkerPool(config, o.workers);
+    }
+
+    private static AudioPreprocessor createPreprocessor(Options o) {
+        return new AudioPreprocessor(new AudioPreprocessor.Settings(o.trim, o.silenceThreshold, o.silencePadding));
+    }
+
+    private static ValidationEngine createEngine(Options o, PythonWorkerPool pool, AudioPreprocessor audio,
+                                                 RunJournal journal, RunManifest manifest) {
+        RecognitionCache cache = o.useCache ? new RecognitionCache(new File(AppDirectories.documentsDirectory(), "VoiceValidator/cache")) : null;
+        ScoringProfile profile = new ScoringProfile(o.threshold, o.foldWidth, o.ignorePunctuation, o.foldKana);
+        RetryPolicy retry = new RetryPolicy(Math.round(o.timeout * 1000), o.retries + 1, RetryPolicy.DEFAULT.backoffMillis());
+        return new ValidationEngine(pool, cache, SimilarityEngine.difflibCompatible(), profile,
+                retry, new Quarantine(RetryPolicy.QUARANTINE_STRIKES), audio, journal, manifest);
+    }
+
+    /**
+     * 台本CSVを読み込んで索引を作成
+     * @param csv 台本CSV
+     * @return 台本の索引
+     * @throws IOException 読み込みに失敗した場合
+     */
+    static ScriptIndex readScript(Path csv) throws IOException {
+        FlightEvents.CsvLoad event = new FlightEvents.CsvLoad();
+        event.begin();
+        List<String[]> rows = new ArrayList<>();
+        try (CsvReader reader = CsvReader.open(csv)) {
+            String[] row;
+            while ((row = reader.next()) != null)
+                rows.add(row);
+            event.finish(csv, reader.charset().name(), rows.size());
+        }
+        return ScriptIndex.build(rows);
+    }
+
+    /**
+     * ファイル名,ID のCSVからタスクを作成（1行目がヘッダなら読み飛ばす）
+     */
+    private static List<ProcessingTask> tasksFromMapping(Options o, ScriptIndex index, int col, PrintStream err) throws IOException {
+        List<ProcessingTask> tasks = new ArrayList<>();
+        int missing = 0;
+        boolean first = true;
+        try (CsvReader reader = CsvReader.open(o.mapping)) {
+            String[] row;
+            while ((row = reader.next()) != null) {
+                boolean header = first && row.length > 0 && isHeader(row[0]);
+                first = false;
+                if (header || row.length < 2 || row[0].isBlank())
+                    continue;
+
+                ProcessingTask task = index.task(row[1].trim(), col, o.audio.resolve(row[0].trim()).toString());
+                if (task != null)
+                    tasks.add(task);
+                else
+                    missing++;
+            }
+        }
+        if (missing > 0)
+            err.println("台本に見つからないID " + missing + "件をスキップしました");
+        return tasks;
+    }
+
+    private static boolean isHeader(String cell) {
+        String c = cell.trim().toLowerCase(Locale.ROOT);
+        return c.equals("file") || c.equals("filename") || c.equals("file_name") || c.equals("ファイル名");
+    }
+
+    /**
+     * 音声フォルダのファイル名からIDを自動で割り当ててタスクを作成
+     */
+    private static List<ProcessingTask> tasksFromFolder(Options o, ScriptIndex index, int col, PrintStream err) throws IOException {
+        AutoMapper mapper;
+        try {
+            mapper = new AutoMapper(index.ids(), AutoMapper.compile(o.pattern));
+        } catch (PatternSyntaxException ex) {
+            throw new IllegalArgumentException("--pattern が不正です: " + ex.getDescription());
+        }
+
+        FlightEvents.AudioScan scan = new FlightEvents.AudioScan();
+        scan.begin();
+        List<String> files;
+        try (Stream<Path> s = Files.list(o.audio)) {
+            files = s.map(p -> p.getFileName().toString())
+                    .filter(n -> {
+                        String l = n.toLowerCase(Locale.ROOT);
+                        return l.endsWith(".wav") || l.endsWith(".mp3") || l.endsWith(".flac");
+                    })
+                    .sorted()
+                    .toList();
+        }
+        scan.finish(o.audio, files.size());
+
+        List<ProcessingTask> tasks = new ArrayList<>(files.size());
+        int unmapped = 0;
+        for (String fn : files) {
+            AutoMapper.Match m = mapper.map(fn);
+            ProcessingTask task = m != null && m.confidence() >= o.minConfidence
+                    ? index.task(m.id(), col, o.audio.resolve(fn).toString()) : null;
+            if (task != null)
+                tasks.add(task);
+            else
+                unmapped++;
+        }
+        if (unmapped > 0)
+            err.println("IDを割り当てられなかったファイル " + unmapped + "件をスキップしました");
+        return tasks;
+    }
+}
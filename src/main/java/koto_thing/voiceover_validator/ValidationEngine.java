@@ -0,0 +1,260 @@
+package koto_thing.voiceover_validator;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * UIに依存しない検証サービス
+ * 処理段（差分検証 → チェックポイント → キャッシュ → 変換・無音カット → 再試行・隔離 → ワーカープール → 採点）を組み立て、タスクを並列に処理して結果を配信する
+ * GUI・コマンドライン・サーバーなどのフロントエンドは {@link #submit} の結果を購読して使う
+ */
+final class ValidationEngine {
+
+    /**
+     * 1回の検証の実行
+     * 結果は処理が終わった順に {@link #results()} へ配信され、全件の完了時に {@link #completion()} が元のタスク順の結果で完了する
+     */
+    static final class Run {
+        private final SubmissionPublisher<PythonResult> publisher = new SubmissionPublisher<>();
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private final CompletableFuture<List<PythonResult>> completion = new CompletableFuture<>();
+
+        /**
+         * 結果の配信元（購読した時点以降の結果が届く）
+         * @return 結果のPublisher
+         */
+        Flow.Publisher<PythonResult> results() {
+            return publisher;
+        }
+
+        /**
+         * 全件の完了（中止した場合は処理済みの分のみ）
+         * @return 元のタスク順に並べた結果
+         */
+        CompletableFuture<List<PythonResult>> completion() {
+            return completion;
+        }
+
+        /**
+         * 実行を中止する（処理中のタスクは完了を待つ）
+         */
+        void cancel() {
+            cancelled.set(true);
+        }
+
+        boolean isCancelled() {
+            return cancelled.get();
+        }
+    }
+
+    /**
+     * 結果を1件ずつ受け取る購読者
+     * 配信が終わると {@link #done()} が完了する（完了を待ってから集計すれば取りこぼしがない）
+     */
+    static final class ResultSubscriber implements Flow.Subscriber<PythonResult> {
+        private final Consumer<PythonResult> onResult;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private ResultSubscriber(Consumer<PythonResult> onResult) {
+            this.onResult = onResult;
+        }
+
+        @Override public void onSubscribe(Flow.Subscription s) { s.request(Long.MAX_VALUE); }
+        @Override public void onNext(PythonResult item) { onResult.accept(item); }
+        @Override public void onError(Throwable ex) { done.completeExceptionally(ex); }
+        @Override public void onComplete() { done.complete(null); }
+
+        CompletableFuture<Void> done() {
+            return done;
+        }
+    }
+
+    /**
+     * 結果ごとに処理を呼ぶ購読者を作成
+     * @param onResult 結果ごとの処理（配信スレッドから順に呼ばれる）
+     * @return 購読者
+     */
+    static ResultSubscriber each(Consumer<PythonResult> onResult) {
+        return new ResultSubscriber(onResult);
+    }
+
+    private final PythonWorkerPool pool;
+    private final RecognitionCache cache;
+    private final ScoringProfile profile;
+    private final Quarantine quarantine;
+    private final RunMetrics metrics;
+    private final TaskProcessor stages;
+
+    /**
+     * コンストラクタ（既定の制限時間・再試行の設定を使う）
+     * @param pool ワーカープール（所有権は呼び出し側）
+     * @param cache 認識結果キャッシュ（使わない場合はnull）
+     * @param engine 採点に使うエンジン
+     * @param profile 採点の設定
+     */
+    ValidationEngine(PythonWorkerPool pool, RecognitionCache cache, SimilarityEngine engine, ScoringProfile profile) {
+        this(pool, cache, engine, profile, RetryPolicy.DEFAULT, new Quarantine(RetryPolicy.QUARANTINE_STRIKES),
+                new AudioPreprocessor(AudioPreprocessor.Settings.DEFAULT), null, null);
+    }
+
+    /**
+     * コンストラクタ
+     * @param pool ワーカープール（所有権は呼び出し側）
+     * @param cache 認識結果キャッシュ（使わない場合はnull）
+     * @param engine 採点に使うエンジン
+     * @param profile 採点の設定
+     * @param retry 制限時間と再試行の設定
+     * @param quarantine 隔離リスト（実行をまたいで使い回してよい）
+     * @param audio 音声の変換と無音カット
+     * @param journal 再開用のチェックポイント（使わない場合はnull、所有権は呼び出し側）
+     * @param manifest 前回の実行のマニフェスト（使わない場合はnull、保存は呼び出し側）
+     */
+    ValidationEngine(PythonWorkerPool pool, RecognitionCache cache, SimilarityEngine engine, ScoringProfile profile,
+                     RetryPolicy retry, Quarantine quarantine, AudioPreprocessor audio, RunJournal journal, RunManifest manifest) {
+        this.pool = pool;
+        this.cache = cache;
+        this.profile = profile;
+        this.quarantine = quarantine;
+
+        pool.setTaskTimeout(retry.timeoutMillis());
+        TaskProcessor processor = audio.wrap(retry.wrap(pool, quarantine), pool::stage);
+        if (cache != null) {
+            cache.resetStats();
+            processor = cache.wrap(processor, pool.config(), audio.settings());
+        }
+        if (journal != null)
+            processor = journal.wrap(processor);
+        if (manifest != null)
+            processor = manifest.wrap(processor);
+        // 採点はJava側で行う（Pythonは認識のみ）
+        TaskProcessor recognized = processor;
+        TaskProcessor scored = task -> {
+            PythonResult res = recognized.process(task);
+            long begin = System.nanoTime();
+            engine.score(res, profile);
+            res.addTime(RunMetrics.Stage.SCORE, System.nanoTime() - begin);
+            return res;
+        };
+        this.metrics = new RunMetrics(RunMetrics.labels(pool.config(), pool.size()));
+        this.stages = metrics.wrap(scored);
+    }
+
+    /**
+     * タスクを非同期に処理する
+     * @param tasks 処理タスクのリスト
+     * @param subscriber 結果を受け取る購読者（最初の結果より前に登録される。不要ならnull）
+     * @return 実行のハンドル
+     */
+    Run submit(List<ProcessingTask> tasks, Flow.Subscriber<? super PythonResult> subscriber) {
+        Run run = new Run();
+        if (subscriber != null)
+            run.publisher.subscribe(subscriber);
+
+        Thread th = new Thread(() -> {
+            try {
+                List<PythonResult> ordered = run(tasks, (index, res) -> run.publisher.submit(res), run::isCancelled);
+                run.publisher.close();
+                run.completion.complete(ordered);
+            } catch (Throwable ex) {
+                run.publisher.closeExceptionally(ex);
+                run.completion.completeExceptionally(ex);
+            }
+        }, "validation-run");
+        th.setDaemon(true);
+        th.start();
+        return run;
+    }
+
+    /**
+     * 全タスクをワーカー数ぶんのシャードに分けて並列に処理する（呼び出し元のスレッドで完了を待つ）
+     * @param tasks 処理タスクのリスト
+     * @param listener 結果が届くたびに呼ばれるリスナー
+     * @param cancelled 中止されたかどうかを返す関数
+     * @return 元のタスク順に並べた結果
+     * @throws IOException ワーカーを起動できなかった場合
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    List<PythonResult> run(List<ProcessingTask> tasks, ShardedDispatcher.ResultListener listener, BooleanSupplier cancelled)
+            throws IOException, InterruptedException {
+        metrics.start();
+        try {
+            return new ShardedDispatcher(stages, pool.size()).run(tasks, listener, cancelled);
+        } finally {
+            metrics.finish();
+        }
+    }
+
+    /**
+     * タスクを1件だけ処理する（呼び出し元のスレッドで完了を待つ）
+     * 複数のスレッドから同時に呼んでよい（同時に処理されるのはワーカー数まで）
+     * @param task 処理タスク
+     * @return 採点済みの結果
+     * @throws IOException ワーカーを起動できなかった場合
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    PythonResult process(ProcessingTask task) throws IOException, InterruptedException {
+        return stages.process(task);
+    }
+
+    /**
+     * 非同期の実行の完了を待つ
+     * @param run 実行のハンドル
+     * @return 元のタスク順に並べた結果
+     * @throws IOException ワーカーを起動できなかった場合
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    static List<PythonResult> await(Run run) throws IOException, InterruptedException {
+        try {
+            return run.completion().get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException io) throw io;
+            if (cause instanceof InterruptedException ie) throw ie;
+            if (cause instanceof RuntimeException re) throw re;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * ワーカーからの処理段階の通知を受け取るリスナーを設定（ワーカープールを共有する他の実行にも届く）
+     * @param listener リスナー（nullなら通知を捨てる）
+     */
+    void onStage(Consumer<StageEvent> listener) {
+        pool.setStageListener(listener);
+    }
+
+    ScoringProfile profile() {
+        return profile;
+    }
+
+    /**
+     * 処理段階ごとの所要時間と件数（run() を呼ぶたびに待ち時間と実行時間の起点を更新し、分布は累積する）
+     * @return 集計
+     */
+    RunMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * 隔離しているファイル数
+     * @return ファイル数
+     */
+    int quarantined() {
+        return quarantine.size();
+    }
+
+    /**
+     * キャッシュのヒット数（キャッシュを使わない場合は0）
+     * @return ヒット数
+     */
+    int cacheHits() {
+        return cache != null ? cache.getHits() : 0;
+    }
+}
@@ -24,6 +24,17 @@ public class ValidationResult {
         this.status = new SimpleStringProperty(status);
     }
     
+    /**
+     * Pythonの結果を表示用の検証結果に変換
+     * @param res Pythonからの結果（採点済み）
+     * @param profile 採点に使った設定
+     * @return 検証結果
+     */
+    static ValidationResult of(PythonResult res, ScoringProfile profile) {
+        String status = res.error != null ? "error" : profile.status(res.similarity);
+        return new ValidationResult(res.id, res.similarity, res.script_text, res.recognized_text, status);
+    }
+    
     // IDのプロパティ
     public StringProperty idProperty() {
         return id;
@@ -0,0 +1,503 @@
+package koto_thing.voiceover_validator;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 検証をHTTPで受け付けるローカルサーバー
+ * 収録パイプラインから音声とセリフの組を1件ずつ投入し、状態と結果を問い合わせる
+ * 受け付けたタスクは上限つきのキューに積み、ワーカー数ぶんの配送スレッドが {@link ValidationEngine} で処理する
+ * キューが一杯のときは 429 を返して投入を断る（一部だけ受け付けることはしない）
+ * 1回に投入するタスクがキューの上限より多い場合は、待っても受け付けられないので 413 を返す
+ * 外部のサービスは使わず、ループバックアドレスでのみ待ち受ける
+ *
+ * <pre>
+ * POST /tasks                 {"id", "audioPath", "scriptText"} または {"tasks": [...]} → 202
+ * GET  /tasks/{jobId}         状態（queued / running / done）と所要時間
+ * GET  /tasks/{jobId}/result  結果（?wait=秒 で完了まで待つ。未完了なら 202）
+ * GET  /metrics               キューの状況と待ち時間・処理時間の分布、処理段階ごとの内訳
+ *                             （?format=prometheus でPrometheusのテキスト形式）
+ * GET  /health                死活確認
+ * </pre>
+ */
+final class ValidationServer implements Closeable {
+
+    // 完了したジョブを保持する件数（超えた分は古い順に破棄）
+    private static final int MAX_RETAINED = 10_000;
+    // /result の wait の上限（秒）
+    private static final int MAX_WAIT_SECONDS = 60;
+
+    /**
+     * 投入されたタスク1件
+     */
+    private static final class Job {
+        final String jobId;
+        final ProcessingTask task;
+        final long submitted = System.nanoTime();
+        final long submittedAt = System.currentTimeMillis();
+        final CompletableFuture<PythonResult> result = new CompletableFuture<>();
+        volatile long started;
+        volatile long finished;
+
+        Job(String jobId, ProcessingTask task) {
+            this.jobId = jobId;
+            this.task = task;
+        }
+
+        String state() {
+            return result.isDone() ? "done" : started != 0 ? "running" : "queued";
+        }
+    }
+
+    private final ValidationEngine engine;
+    private final int capacity;
+    private final int dispatcherCount;
+    private final HttpServer http;
+    private final ExecutorService handlers = Executors.newVirtualThreadPerTaskExecutor();
+    private final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+
+    // キューの空き枠（投入時にまとめて確保し、配送スレッドが取り出した時点で返す）
+    private final Semaphore slots;
+    private final BlockingQueue<Job> queue = new LinkedBlockingQueue<>();
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<String> retained = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger retainedCount = new AtomicInteger();
+    private final List<Thread> dispatchers = new ArrayList<>();
+    private final AtomicBoolean stopping = new AtomicBoolean();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicInteger running = new AtomicInteger();
+    private final LatencyWindow queueLatency = new LatencyWindow();
+    private final LatencyWindow processLatency = new LatencyWindow();
+    private final LatencyWindow totalLatency = new LatencyWindow();
+
+    /**
+     * コンストラクタ
+     * @param engine 検証サービス（ワーカープールの所有権は呼び出し側）
+     * @param workers 同時に処理するタスク数（通常はワーカープールのサイズ）
+     * @param port 待ち受けるポート（0なら空いているポート）
+     * @param capacity キューに積めるタスク数の上限
+     * @throws IOException ポートを開けなかった場合
+     */
+    ValidationServer(ValidationEngine engine, int workers, int port, int capacity) throws IOException {
+        this.engine = engine;
+        this.capacity = capacity;
+        this.dispatcherCount = Math.max(1, workers);
+        this.slots = new Semaphore(capacity);
+        this.http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        http.setExecutor(handlers);
+        http.createContext("/tasks", this::handleTasks);
+        http.createContext("/metrics", ex -> handle(ex, "GET", () -> {
+            if (prometheus(ex.getRequestURI().getQuery()))
+                replyText(ex, 200, engine.metrics().toPrometheus(), "text/plain; version=0.0.4; charset=utf-8");
+            else
+                reply(ex, 200, metrics());
+        }));
+        http.createContext("/health", ex -> handle(ex, "GET", () -> reply(ex, 200, message("status", "ok"))));
+    }
+
+    /**
+     * 待ち受けと配送を開始する
+     */
+    void start() {
+        for (int i = 0; i < dispatcherCount; i++)
+            dispatchers.add(Thread.ofVirtual().name("validation-dispatch-" + i).start(this::dispatch));
+        http.start();
+    }
+
+    /**
+     * 待ち受けているポート
+     * @return ポート番号
+     */
+    int port() {
+        return http.getAddress().getPort();
+    }
+
+    /**
+     * {@link #stop()} されるまで待つ
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    void awaitStop() throws InterruptedException {
+        stopped.await();
+    }
+
+    /**
+     * 待ち受けを終了し、未処理のタスクを破棄する（処理中のタスクは中断される）
+     * 複数のスレッドから呼ばれても終了処理は1回だけ行う（シャットダウンフックからも呼べる）
+     */
+    void stop() {
+        if (!stopping.compareAndSet(false, true))
+            return;
+        http.stop(0);
+        dispatchers.forEach(Thread::interrupt);
+        Job job;
+        while ((job = queue.poll()) != null)
+            job.result.complete(PythonResult.error(job.task, "サーバーが終了しました"));
+        handlers.shutdownNow();
+        stopped.countDown();
+    }
+
+    /**
+     * {@link #stop()} と同じ
+     */
+    @Override
+    public void close() {
+        stop();
+    }
+
+    /**
+     * キューからタスクを取り出して処理する（配送スレッドごとに1つ）
+     */
+    private void dispatch() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Job job;
+            try {
+                job = queue.take();
+            } catch (InterruptedException ex) {
+                return;
+            }
+            slots.release();
+            job.started = System.nanoTime();
+            running.incrementAndGet();
+
+            PythonResult res;
+            try {
+                res = engine.process(job.task);
+            } catch (IOException ex) {
+                res = PythonResult.error(job.task, ex.getMessage());
+            } catch (InterruptedException ex) {
+                job.result.complete(PythonResult.error(job.task, "サーバーが終了しました"));
+                return;
+            } catch (RuntimeException ex) {
+                res = PythonResult.error(job.task, ex.toString());
+            } finally {
+                running.decrementAndGet();
+            }
+            finish(job, res);
+        }
+    }
+
+    private void finish(Job job, PythonResult res) {
+        job.finished = System.nanoTime();
+        queueLatency.record(job.started - job.submitted);
+        processLatency.record(job.finished - job.started);
+        totalLatency.record(job.finished - job.submitted);
+        completed.incrementAndGet();
+        if (res.error != null)
+            errors.incrementAndGet();
+        job.result.complete(res);
+
+        retained.add(job.jobId);
+        if (retainedCount.incrementAndGet() > MAX_RETAINED) {
+            String old = retained.poll();
+            if (old != null) {
+                jobs.remove(old);
+                retainedCount.decrementAndGet();
+            }
+        }
+    }
+
+    // ==================== HTTP ====================
+
+    @FunctionalInterface
+    private interface Handler {
+        void run() throws IOException, InterruptedException;
+    }
+
+    private void handle(HttpExchange ex, String method, Handler handler) throws IOException {
+        try (ex) {
+            if (!method.equals(ex.getRequestMethod())) {
+                ex.getResponseHeaders().set("Allow", method);
+                reply(ex, 405, message("error", "許可されていないメソッドです"));
+                return;
+            }
+            handler.run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handleTasks(HttpExchange ex) throws IOException {
+        // /tasks, /tasks/{jobId}, /tasks/{jobId}/result
+        String[] parts = Arrays.stream(ex.getRequestURI().getPath().split("/"))
+                .filter(s -> !s.isEmpty()).toArray(String[]::new);
+
+        if (parts.length == 1) {
+            handle(ex, "POST", () -> submit(ex));
+        } else if (parts.length == 2) {
+            handle(ex, "GET", () -> {
+                Job job = jobs.get(parts[1]);
+                if (job == null)
+                    reply(ex, 404, message("error", "ジョブが見つかりません: " + parts[1]));
+                else
+                    reply(ex, 200, status(job, false));
+            });
+        } else if (parts.length == 3 && parts[2].equals("result")) {
+            handle(ex, "GET", () -> result(ex, parts[1]));
+        } else {
+            try (ex) {
+                reply(ex, 404, message("error", "見つかりません"));
+            }
+        }
+    }
+
+    private void submit(HttpExchange ex) throws IOException {
+        List<ProcessingTask> tasks;
+        try {
+            tasks = parseTasks(new String(ex.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException | JsonParseException e) {
+            reply(ex, 400, message("error", e.getMessage()));
+            return;
+        }
+
+        if (tasks.size() > capacity) {
+            rejected.addAndGet(tasks.size());
+            reply(ex, 413, message("error", "1回に投入できるのは " + capacity + "件までです（" + tasks.size() + "件）"));
+            return;
+        }
+        if (!slots.tryAcquire(tasks.size())) {
+            rejected.addAndGet(tasks.size());
+            ex.getResponseHeaders().set("Retry-After", "1");
+            reply(ex, 429, message("error", "キューが一杯です（上限 " + capacity + "件）"));
+            return;
+        }
+
+        JsonArray accepted = new JsonArray();
+        for (ProcessingTask task : tasks) {
+            String jobId = Long.toString(sequence.incrementAndGet());
+            if (task.id == null || task.id.isBlank())
+                task.id = jobId;
+            Job job = new Job(jobId, task);
+            jobs.put(jobId, job);
+            queue.add(job);
+
+            JsonObject o = new JsonObject();
+            o.addProperty("jobId", jobId);
+            o.addProperty("id", task.id);
+            accepted.add(o);
+        }
+        submitted.addAndGet(tasks.size());
+
+        if (tasks.size() == 1)
+            ex.getResponseHeaders().set("Location", "/tasks/" + accepted.get(0).getAsJsonObject().get("jobId").getAsString());
+        JsonObject body = new JsonObject();
+        body.add("jobs", accepted);
+        body.addProperty("queued", capacity - slots.availablePermits());
+        reply(ex, 202, body);
+    }
+
+    /**
+     * 1件のオブジェクト、またはそれを "tasks" に並べたオブジェクトを読み込む
+     */
+    private List<ProcessingTask> parseTasks(String body) {
+        JsonElement root = JsonParser.parseString(body);
+        if (!root.isJsonObject())
+            throw new IllegalArgumentException("JSONオブジェクトを送信してください");
+
+        List<ProcessingTask> tasks = new ArrayList<>();
+        JsonObject obj = root.getAsJsonObject();
+        if (obj.has("tasks")) {
+            if (!obj.get("tasks").isJsonArray())
+                throw new IllegalArgumentException("tasks は配列で指定してください");
+            for (JsonElement e : obj.getAsJsonArray("tasks"))
+                tasks.add(gson.fromJson(e, ProcessingTask.class));
+        } else {
+            tasks.add(gson.fromJson(obj, ProcessingTask.class));
+        }
+
+        if (tasks.isEmpty())
+            throw new IllegalArgumentException("タスクがありません");
+        for (ProcessingTask t : tasks) {
+            if (t == null || t.audioPath == null || t.audioPath.isBlank())
+                throw new IllegalArgumentException("audioPath は必須です");
+            if (t.scriptText == null)
+                throw new IllegalArgumentException("scriptText は必須です");
+            if (!new File(t.audioPath).isFile())
+                throw new IllegalArgumentException("音声ファイルが見つかりません: " + t.audioPath);
+        }
+        return tasks;
+    }
+
+    private void result(HttpExchange ex, String jobId) throws IOException, InterruptedException {
+        Job job = jobs.get(jobId);
+        if (job == null) {
+            reply(ex, 404, message("error", "ジョブが見つかりません: " + jobId));
+            return;
+        }
+
+        int wait = Math.min(MAX_WAIT_SECONDS, waitSeconds(ex.getRequestURI().getQuery()));
+        if (wait > 0 && !job.result.isDone()) {
+            try {
+                job.result.get(wait, TimeUnit.SECONDS);
+            } catch (TimeoutException | ExecutionException ignored) {
+                // 未完了のまま状態を返す
+            }
+        }
+        reply(ex, job.result.isDone() ? 200 : 202, status(job, true));
+    }
+
+    private static int waitSeconds(String query) {
+        if (query == null)
+            return 0;
+        for (String kv : query.split("&")) {
+            if (kv.startsWith("wait=")) {
+                try {
+                    return Math.max(0, Integer.parseInt(kv.substring(5)));
+                } catch (NumberFormatException ignored) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private JsonObject status(Job job, boolean withResult) {
+        JsonObject o = new JsonObject();
+        o.addProperty("jobId", job.jobId);
+        o.addProperty("id", job.task.id);
+        o.addProperty("state", job.state());
+        o.addProperty("submittedAt", job.submittedAt);
+
+        long started = job.started, finished = job.result.isDone() ? job.finished : 0;
+        if (started != 0)
+            o.addProperty("queueMs", millis(started - job.submitted));
+        if (started != 0 && finished != 0) {
+            o.addProperty("processMs", millis(finished - started));
+            o.addProperty("totalMs", millis(finished - job.submitted));
+        }
+
+        PythonResult res = job.result.getNow(null);
+        if (res != null) {
+            o.addProperty("status", res.error != null ? "error" : engine.profile().status(res.similarity));
+            if (withResult) {
+                JsonObject r = new JsonObject();
+                r.addProperty("similarity", res.similarity);
+                r.addProperty("scriptText", res.script_text);
+                r.addProperty("recognizedText", res.recognized_text);
+                r.add("diff", gson.toJsonTree(res.diff != null ? res.diff : new String[0]));
+                if (res.error != null)
+                    r.addProperty("error", res.error);
+                o.add("result", r);
+            }
+        }
+        return o;
+    }
+
+    private JsonObject metrics() {
+        JsonObject q = new JsonObject();
+        q.addProperty("depth", queue.size());
+        q.addProperty("capacity", capacity);
+        q.addProperty("running", running.get());
+        q.addProperty("workers", dispatcherCount);
+
+        JsonObject j = new JsonObject();
+        j.addProperty("submitted", submitted.get());
+        j.addProperty("rejected", rejected.get());
+        j.addProperty("completed", completed.get());
+        j.addProperty("errors", errors.get());
+        j.addProperty("cacheHits", engine.cacheHits());
+
+        JsonObject l = new JsonObject();
+        l.add("queue", queueLatency.snapshot());
+        l.add("process", processLatency.snapshot());
+        l.add("total", totalLatency.snapshot());
+
+        JsonObject o = new JsonObject();
+        o.add("queue", q);
+        o.add("jobs", j);
+        o.add("latencyMs", l);
+        o.add("stages", engine.metrics().toJson().get("stages"));
+        return o;
+    }
+
+    private static boolean prometheus(String query) {
+        return query != null && Arrays.asList(query.split("&")).contains("format=prometheus");
+    }
+
+    private static JsonObject message(String key, String value) {
+        JsonObject o = new JsonObject();
+        o.addProperty(key, value);
+        return o;
+    }
+
+    private void reply(HttpExchange ex, int code, JsonElement body) throws IOException {
+        replyText(ex, code, gson.toJson(body), "application/json; charset=utf-8");
+    }
+
+    private static void replyText(HttpExchange ex, int code, String body, String contentType) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", contentType);
+        ex.sendResponseHeaders(code, bytes.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1e4) / 100.0;
+    }
+
+    /**
+     * 直近の所要時間を一定数だけ保持し、分位点を求める
+     */
+    private static final class LatencyWindow {
+        private static final int SIZE = 4096;
+        private final long[] samples = new long[SIZE];
+        private long count;
+
+        synchronized void record(long nanos) {
+            samples[(int) (count++ % SIZE)] = nanos;
+        }
+
+        JsonObject snapshot() {
+            long[] copy;
+            synchronized (this) {
+                copy = Arrays.copyOf(samples, (int) Math.min(count, SIZE));
+            }
+            Arrays.sort(copy);
+
+            JsonObject o = new JsonObject();
+            o.addProperty("samples", copy.length);
+            if (copy.length > 0) {
+                o.addProperty("p50", millis(percentile(copy, 0.50)));
+                o.addProperty("p95", millis(percentile(copy, 0.95)));
+                o.addProperty("p99", millis(percentile(copy, 0.99)));
+                o.addProperty("max", millis(copy[copy.length - 1]));
+            }
+            return o;
+        }
+
+        private static long percentile(long[] sorted, double q) {
+            int i = (int) Math.ceil(q * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, i))];
+        }
+    }
+}
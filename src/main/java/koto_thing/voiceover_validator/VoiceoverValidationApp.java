@@ -14,7 +14,7 @@ import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import javax.swing.filechooser.FileSystemView;
+import java.util.Arrays;
 
 /**
  * メインアプリケーションクラス
@@ -24,9 +24,12 @@ public class VoiceoverValidationApp extends Application {
     // 例外ログ
     private static PrintWriter LOG;
 
+    // メインビューのコントローラ（終了時の後始末用）
+    private MainViewController controller;
+
     static {
         try {
-            File docs = getDocumentsDirectory();
+            File docs = AppDirectories.documentsDirectory();
             File dir = new File(docs, "VoiceValidator/logs");
             if (!dir.exists()) dir.mkdirs();
             String ts = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
@@ -43,17 +46,6 @@ public class VoiceoverValidationApp extends Application {
         Thread.setDefaultUncaughtExceptionHandler((t, e) -> logError("Uncaught exception in " + t.getName(), e));
     }
 
-    private static File getDocumentsDirectory() {
-        try {
-            File def = FileSystemView.getFileSystemView().getDefaultDirectory();
-            if (def != null && def.exists()) return def;
-        } catch (Throwable ignored) { }
-        // フォールバック: ユーザーホーム配下の Documents
-        File fb = new File(System.getProperty("user.home"), "Documents");
-        if (!fb.exists()) fb.mkdirs();
-        return fb;
-    }
-
     private static void logError(String msg, Throwable e) {
         try {
             if (LOG != null) {
@@ -76,6 +68,7 @@ public class VoiceoverValidationApp extends Application {
             FXMLLoader fxmlLoader = new FXMLLoader(VoiceoverValidationApp.class.getResource("main-view.fxml"));
             // シーンの作成
             Scene scene = new Scene(fxmlLoader.load());
+            controller = fxmlLoader.getController();
             
             // CSSスタイルシートの適用
             scene.getStylesheets().add(
@@ -120,11 +113,25 @@ public class VoiceoverValidationApp extends Application {
         }
     }
     
+    /**
+     * アプリケーション終了時の処理（常駐ワーカーを停止）
+     */
+    @Override
+    public void stop() {
+        if (controller != null)
+            controller.shutdown();
+    }
+
     /**
     * メインメソッド - アプリケーションの起動
+    * 先頭の引数が --headless の場合はGUIを起動せずコマンドライン版で検証する
     * @param args コマンドライン引数
     */
     public static void main(String[] args) {
+        if (args.length > 0 && "--headless".equals(args[0])) {
+            ValidationCli.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         launch();
     }
 }
@@ -6,6 +6,8 @@ module kotothing.voicevalidator {
     requires org.kordamp.ikonli.fontawesome5;
     requires java.prefs;
     requires java.desktop;
+    requires jdk.httpserver;
+    requires jdk.jfr;
 
     opens koto_thing.voiceover_validator to javafx.fxml, com.google.gson;
     exports koto_thing.voiceover_validator;
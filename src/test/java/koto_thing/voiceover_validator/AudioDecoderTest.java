@@ -0,0 +1,118 @@
+package koto_thing.voiceover_validator;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * AudioDecoder が16kHz・モノラルのPCMに正しく変換することを確認するテスト
+ */
+public class AudioDecoderTest {
+
+    @Test
+    public void resamples48kStereoTo16kMono() throws IOException {
+        Path wav = writeWav(48_000, 2, 1.0, 440);
+        try {
+            short[] pcm = samples(AudioDecoder.decode(wav));
+            assertEquals(16_000, pcm.length);
+            // 振幅（0.5）と周波数はそのまま保たれる
+            assertEquals(0.5 * 32767 / Math.sqrt(2), rms(pcm, 1000, 15_000), 300);
+            assertEquals(440, zeroCrossings(pcm, 0, 16_000) / 2.0, 2);
+        } finally {
+            Files.deleteIfExists(wav);
+        }
+    }
+
+    @Test
+    public void removesToneAboveOutputNyquist() throws IOException {
+        // 12kHzは16kHzのナイキスト周波数（8kHz）を超えるため、折り返さずに消える
+        Path wav = writeWav(48_000, 1, 0.5, 12_000);
+        try {
+            short[] pcm = samples(AudioDecoder.decode(wav));
+            assertEquals(8_000, pcm.length);
+            assertTrue(rms(pcm, 500, 7_500) < 100, "rms=" + rms(pcm, 500, 7_500));
+        } finally {
+            Files.deleteIfExists(wav);
+        }
+    }
+
+    @Test
+    public void handlesCommonSampleRates() throws IOException {
+        // 44.1kHz（比が整数でない）・22.05kHz・8kHz（補間）・16kHz（そのまま）
+        for (int rate : new int[] { 44_100, 22_050, 8_000, 16_000 }) {
+            Path wav = writeWav(rate, 1, 0.5, 300);
+            try {
+                short[] pcm = samples(AudioDecoder.decode(wav));
+                assertEquals(8_000, pcm.length, "rate=" + rate);
+                assertEquals(0.5 * 32767 / Math.sqrt(2), rms(pcm, 500, 7_500), 300);
+            } finally {
+                Files.deleteIfExists(wav);
+            }
+        }
+    }
+
+    @Test
+    public void leavesUnsupportedFormatsToPython() throws IOException {
+        Path mp3 = Files.createTempFile("vvt_test_", ".mp3");
+        Path broken = Files.createTempFile("vvt_test_", ".wav");
+        try {
+            Files.write(broken, new byte[] { 1, 2, 3, 4 });
+            assertNull(AudioDecoder.decode(mp3));
+            assertNull(AudioDecoder.decode(broken));
+        } finally {
+            Files.deleteIfExists(mp3);
+            Files.deleteIfExists(broken);
+        }
+    }
+
+    private static Path writeWav(int rate, int channels, double seconds, double freq) throws IOException {
+        int frames = (int) (rate * seconds);
+        byte[] data = new byte[frames * channels * 2];
+        for (int i = 0, off = 0; i < frames; i++) {
+            short s = (short) Math.round(0.5 * 32767 * Math.sin(2 * Math.PI * freq * i / rate));
+            for (int c = 0; c < channels; c++) {
+                data[off++] = (byte) s;
+                data[off++] = (byte) (s >> 8);
+            }
+        }
+        AudioFormat format = new AudioFormat(rate, 16, channels, true, false);
+        Path file = Files.createTempFile("vvt_test_", ".wav");
+        try (AudioInputStream in = new AudioInputStream(new ByteArrayInputStream(data), format, frames)) {
+            AudioSystem.write(in, AudioFileFormat.Type.WAVE, file.toFile());
+        }
+        return file;
+    }
+
+    private static short[] samples(byte[] pcm) {
+        assertNotNull(pcm);
+        short[] s = new short[pcm.length / 2];
+        for (int i = 0; i < s.length; i++)
+            s[i] = (short) ((pcm[2 * i] & 0xFF) | (pcm[2 * i + 1] << 8));
+        return s;
+    }
+
+    private static double rms(short[] s, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++)
+            sum += (double) s[i] * s[i];
+        return Math.sqrt(sum / (to - from));
+    }
+
+    private static int zeroCrossings(short[] s, int from, int to) {
+        int n = 0;
+        for (int i = from + 1; i < to; i++) {
+            if ((s[i - 1] < 0) != (s[i] < 0))
+                n++;
+        }
+        return n;
+    }
+}
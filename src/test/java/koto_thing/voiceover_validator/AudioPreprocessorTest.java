@@ -0,0 +1,49 @@
+package koto_thing.voiceover_validator;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * AudioPreprocessor の無音の判定を確認するテスト
+ */
+public class AudioPreprocessorTest {
+    private static final int RATE = 16_000;
+
+    @Test
+    public void voicedRangeKeepsSpeechWithPadding() {
+        // 1秒のルームトーン（-60dBFS程度）→ 0.5秒の音声 → 1秒のルームトーン
+        byte[] pcm = pcm(new double[] { 1.0, 0.5, 1.0 }, new double[] { 30, 8000, 30 });
+        int[] range = AudioPreprocessor.voicedRange(pcm, RATE, -45, 200);
+        assertNotNull(range);
+        assertEquals(RATE - RATE / 5, range[0], RATE / 50);
+        assertEquals(RATE * 3 / 2 + RATE / 5, range[1], RATE / 50);
+    }
+
+    @Test
+    public void voicedRangeIgnoresSilenceAndClicks() {
+        // ルームトーンの途中に20ミリ秒のクリック音があるだけのテイク
+        byte[] pcm = pcm(new double[] { 1.0, 0.02, 1.0 }, new double[] { 30, 20000, 30 });
+        assertNull(AudioPreprocessor.voicedRange(pcm, RATE, -45, 200));
+        assertNull(AudioPreprocessor.voicedRange(new byte[RATE * 2], RATE, -45, 200));
+    }
+
+    /**
+     * 区間ごとに指定した振幅の440Hzの正弦波を並べたPCM
+     */
+    private static byte[] pcm(double[] seconds, double[] amplitudes) {
+        int total = 0;
+        for (double s : seconds)
+            total += (int) (s * RATE);
+        byte[] pcm = new byte[total * 2];
+        int i = 0;
+        for (int k = 0; k < seconds.length; k++) {
+            for (int n = 0, end = (int) (seconds[k] * RATE); n < end; n++, i++) {
+                short v = (short) Math.round(amplitudes[k] * Math.sin(2 * Math.PI * 440 * i / RATE));
+                pcm[2 * i] = (byte) v;
+                pcm[2 * i + 1] = (byte) (v >> 8);
+            }
+        }
+        return pcm;
+    }
+}
@@ -0,0 +1,121 @@
+package koto_thing.voiceover_validator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * AutoMapper の完全一致・正規表現・あいまい一致による割り当てを確認するテスト
+ */
+public class AutoMapperTest {
+
+    private static final double EPS = 1e-9;
+
+    @Test
+    public void exactMatchHasFullConfidence() {
+        AutoMapper mapper = new AutoMapper(List.of("VO_001", "VO_002"), null);
+        AutoMapper.Match m = mapper.map("VO_002.wav");
+        assertEquals("VO_002", m.id());
+        assertEquals(1.0, m.confidence(), EPS);
+        assertEquals("exact", m.method());
+    }
+
+    @Test
+    public void caseAndWidthDifferencesLowerConfidence() {
+        AutoMapper mapper = new AutoMapper(List.of("VO_001", "VO_002"), null);
+        AutoMapper.Match lower = mapper.map("vo_001.wav");
+        assertEquals("VO_001", lower.id());
+        assertEquals(0.95, lower.confidence(), EPS);
+        assertEquals("exact", lower.method());
+
+        // 全角の英数字・記号
+        AutoMapper.Match wide = mapper.map("ＶＯ＿００２.wav");
+        assertEquals("VO_002", wide.id());
+        assertEquals(0.95, wide.confidence(), EPS);
+    }
+
+    @Test
+    public void regexUsesNamedGroupThenGroupOneThenWholeMatch() {
+        List<String> ids = List.of("A_001", "A_002");
+
+        AutoMapper named = new AutoMapper(ids, AutoMapper.compile("(take\\d+)_(?<id>A_\\d+)"));
+        AutoMapper.Match m = named.map("take3_A_001_final.wav");
+        assertEquals("A_001", m.id());
+        assertEquals(0.9, m.confidence(), EPS);
+        assertEquals("regex", m.method());
+
+        AutoMapper group1 = new AutoMapper(ids, AutoMapper.compile("scene\\d+_(A_\\d+)_"));
+        assertEquals("A_002", group1.map("scene2_A_002_take1.wav").id());
+
+        AutoMapper whole = new AutoMapper(ids, AutoMapper.compile("A_\\d+"));
+        assertEquals("A_002", whole.map("xx_A_002_yy.wav").id());
+
+        // 取り出した部分の大文字小文字が違う場合は完全一致と同じく少し下げる
+        AutoMapper folded = new AutoMapper(ids, AutoMapper.compile("(?i)(?<id>a_\\d+)"));
+        AutoMapper.Match f = folded.map("xx_a_001.wav");
+        assertEquals("A_001", f.id());
+        assertEquals(0.9 * 0.95, f.confidence(), EPS);
+    }
+
+    @Test
+    public void blankRegexIsIgnored() {
+        assertNull(AutoMapper.compile(null));
+        assertNull(AutoMapper.compile("  "));
+    }
+
+    @Test
+    public void fuzzyIgnoresLeadingZeros() {
+        assertArrayEquals(new String[] { "vo", "1" }, AutoMapper.tokens("VO_0001"));
+        assertArrayEquals(new String[] { "0" }, AutoMapper.tokens("000"));
+
+        AutoMapper mapper = new AutoMapper(List.of("VO_001", "VO_012"), null);
+        AutoMapper.Match m = mapper.map("vo-1.wav");
+        assertEquals("VO_001", m.id());
+        assertEquals("fuzzy", m.method());
+        // トークンがすべて重なり、対抗する候補も大きく離れている
+        assertEquals(0.8, m.confidence(), EPS);
+    }
+
+    @Test
+    public void unrelatedFileIsNotMapped() {
+        AutoMapper mapper = new AutoMapper(List.of("VO_001", "VO_002"), AutoMapper.compile("(?<id>B_\\d+)"));
+        assertNull(mapper.map("bgm_loop.wav"));
+        assertNull(mapper.map("___.wav"));
+    }
+
+    @Test
+    public void tokensSharedByTooManyIdsAreNotUsedForCandidates() {
+        // "vo" だけをトークンに持つIDは、"vo" の出現数が MAX_POSTINGS (256) 以下のときだけ候補になる
+        assertEquals("vo", mapWithCommonPrefix(255));
+        assertNull(mapWithCommonPrefix(256));
+    }
+
+    private static String mapWithCommonPrefix(int others) {
+        List<String> ids = new ArrayList<>();
+        ids.add("vo");
+        for (int i = 1; i <= others; i++)
+            ids.add("vo_" + i);
+        AutoMapper.Match m = new AutoMapper(ids, null).map("vo_take.wav");
+        return m != null ? m.id() : null;
+    }
+
+    @Test
+    public void nearTieLowersConfidence() {
+        // "a_1" は A_1_x と A_1_y に同じだけ重なる
+        AutoMapper.Match tie = new AutoMapper(List.of("A_1_x", "A_1_y"), null).map("a_1.wav");
+        assertNotNull(tie);
+        assertEquals("fuzzy", tie.method());
+
+        double ln2 = Math.log(2), w = Math.log(2.5);
+        double score = 2 * ln2 / (2 * ln2 + w);
+        assertEquals(0.8 * score * 0.5, tie.confidence(), EPS);
+
+        // 同じ重なり方でも対抗する候補がなければ下げない
+        AutoMapper.Match clear = new AutoMapper(List.of("A_1_x", "B_2_y"), null).map("a_1.wav");
+        assertEquals("A_1_x", clear.id());
+        assertTrue(clear.confidence() > tie.confidence() * 1.9);
+    }
+}
@@ -0,0 +1,154 @@
+package koto_thing.voiceover_validator;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * CsvReader の RFC 4180 の解釈と、文字コードの判定を確認するテスト
+ */
+public class CsvReaderTest {
+
+    private static List<String[]> readAll(byte[] content) throws Exception {
+        Path file = Files.createTempFile("vvt_test_", ".csv");
+        try {
+            Files.write(file, content);
+            List<String[]> rows = new ArrayList<>();
+            try (CsvReader reader = CsvReader.open(file)) {
+                String[] row;
+                while ((row = reader.next()) != null)
+                    rows.add(row);
+            }
+            return rows;
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static List<String[]> readAll(String content) throws Exception {
+        return readAll(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void quotedFieldKeepsCommaAndNewline() throws Exception {
+        List<String[]> rows = readAll("id,text\r\n001,\"こんにちは,\r\n世界\"\n002,\"a\nb\",末尾\n");
+        assertEquals(3, rows.size());
+        assertArrayEquals(new String[] { "id", "text" }, rows.get(0));
+        assertArrayEquals(new String[] { "001", "こんにちは,\r\n世界" }, rows.get(1));
+        assertArrayEquals(new String[] { "002", "a\nb", "末尾" }, rows.get(2));
+    }
+
+    @Test
+    public void doubledQuoteIsUnescaped() throws Exception {
+        List<String[]> rows = readAll("001,\"彼は\"\"はい\"\"と言った\",\"\"\"\"\n002,途中の\"はそのまま\n");
+        assertArrayEquals(new String[] { "001", "彼は\"はい\"と言った", "\"" }, rows.get(0));
+        assertArrayEquals(new String[] { "002", "途中の\"はそのまま" }, rows.get(1));
+    }
+
+    @Test
+    public void blankLinesAreSkipped() throws Exception {
+        List<String[]> rows = readAll("\n\r\nid,text\n\n\r\n001,あ\r\n\n002,\n\"\"\n");
+        assertEquals(4, rows.size());
+        assertArrayEquals(new String[] { "id", "text" }, rows.get(0));
+        assertArrayEquals(new String[] { "001", "あ" }, rows.get(1));
+        // 空のフィールドを持つ行や、クォートだけの行は空行として扱わない
+        assertArrayEquals(new String[] { "002", "" }, rows.get(2));
+        assertArrayEquals(new String[] { "" }, rows.get(3));
+    }
+
+    @Test
+    public void lastRecordWithoutNewlineIsRead() throws Exception {
+        List<String[]> rows = readAll("001,あ\n002,\"い\"");
+        assertEquals(2, rows.size());
+        assertArrayEquals(new String[] { "002", "い" }, rows.get(1));
+    }
+
+    @Test
+    public void bomIsDetectedAndSkipped() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[] { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF });
+        out.write("id,text\n001,あ\n".getBytes(StandardCharsets.UTF_8));
+
+        Path file = Files.createTempFile("vvt_test_", ".csv");
+        try {
+            Files.write(file, out.toByteArray());
+            try (CsvReader reader = CsvReader.open(file)) {
+                assertEquals(StandardCharsets.UTF_8, reader.charset());
+                // 先頭のフィールドにBOMが混ざらない
+                assertArrayEquals(new String[] { "id", "text" }, reader.next());
+                assertArrayEquals(new String[] { "001", "あ" }, reader.next());
+                assertNull(reader.next());
+                assertEquals(out.size(), reader.bytesRead());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void shiftJisFileFallsBackToWindows31J() throws Exception {
+        // ①（NEC特殊文字）は Shift_JIS にはなく Windows-31J にある
+        String text = "id,text\n001,こんにちは①\n";
+        byte[] sjis = text.getBytes(CsvReader.WINDOWS_31J);
+        assertEquals(CsvReader.WINDOWS_31J, CsvReader.detectCharset(sjis, sjis.length));
+
+        List<String[]> rows = readAll(sjis);
+        assertArrayEquals(new String[] { "001", "こんにちは①" }, rows.get(1));
+    }
+
+    @Test
+    public void utf8WithoutBomIsDetected() throws Exception {
+        byte[] utf8 = "id,text\n001,こんにちは①\n".getBytes(StandardCharsets.UTF_8);
+        assertEquals(StandardCharsets.UTF_8, CsvReader.detectCharset(utf8, utf8.length));
+        assertEquals(StandardCharsets.UTF_8, CsvReader.detectCharset(new byte[] { 'a', ',', 'b' }, 3));
+    }
+
+    @Test
+    public void characterCutAtSampleEndIsIgnored() {
+        // 「あ」(E3 81 82) の途中でサンプルが終わっても Windows-31J にしない
+        byte[] sample = { 'a', ',', (byte) 0xE3, (byte) 0x81, (byte) 0x82, ',', (byte) 0xE3, (byte) 0x81 };
+        assertEquals(StandardCharsets.UTF_8, CsvReader.detectCharset(sample, sample.length));
+        assertEquals(StandardCharsets.UTF_8, CsvReader.detectCharset(sample, 4));
+        // 有効なバイト数より後ろは見ない
+        byte[] padded = Arrays.copyOf(sample, 16);
+        padded[6] = (byte) 0xFF;
+        assertEquals(StandardCharsets.UTF_8, CsvReader.detectCharset(padded, 6));
+        assertEquals(CsvReader.WINDOWS_31J, CsvReader.detectCharset(padded, 7));
+    }
+
+    @Test
+    public void onlyFirst64KiBAreSampled() throws Exception {
+        // 64KiB の境界をまたぐ UTF-8 の文字は判定を崩さない
+        StringBuilder sb = new StringBuilder("id,text\n");
+        while (sb.length() < 64 * 1024 - 1)
+            sb.append('x');
+        sb.append("あ\n");
+        byte[] utf8 = sb.toString().getBytes(StandardCharsets.UTF_8);
+        assertTrue(utf8.length > 64 * 1024);
+        List<String[]> rows = readAll(utf8);
+        assertTrue(rows.get(1)[0].endsWith("xあ"));
+
+        // 判定に使うのは読み込みバッファ1回分ではなく先頭64KiB全体
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write("id,text\n".getBytes(StandardCharsets.US_ASCII));
+        while (out.size() < 60 * 1024)
+            out.write("002,abc\n".getBytes(StandardCharsets.US_ASCII));
+        out.write("001,".getBytes(StandardCharsets.US_ASCII));
+        out.write("セリフ".getBytes(CsvReader.WINDOWS_31J));
+        out.write('\n');
+        while (out.size() < 128 * 1024)
+            out.write("002,abc\n".getBytes(StandardCharsets.US_ASCII));
+        byte[] sjis = out.toByteArray();
+        assertEquals(CsvReader.WINDOWS_31J, CsvReader.detectCharset(sjis, 64 * 1024));
+        rows = readAll(sjis);
+        assertTrue(rows.stream().anyMatch(r -> r[0].equals("001") && r[1].equals("セリフ")));
+    }
+}
@@ -0,0 +1,73 @@
+package koto_thing.voiceover_validator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * テスト用の認識処理（Pythonワーカーの代わり）
+ * "認識:ID" を認識結果として返し、渡されたタスクのIDを順に記録する
+ */
+final class FakeRecognizer implements TaskProcessor {
+
+    // テストで使うワーカーの設定（プロセスは起動しない）
+    static final PythonWorkerPool.Config CONFIG =
+            new PythonWorkerPool.Config("python", "RecognizeAndCompare.py", "whisper", "ja", "small", 1);
+
+    private final List<String> calls = new CopyOnWriteArrayList<>();
+    private final Set<String> failing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * テスト用のタスク（音声ファイルがなければ "audio-ID" を書き込んで作る）
+     * @param dir 音声ファイルを置くフォルダ
+     * @param id タスクのID
+     * @param extension 音声ファイルの拡張子（".wav" など）
+     * @return タスク（セリフは "セリフID"）
+     * @throws IOException ファイルを作れなかった場合
+     */
+    static ProcessingTask task(Path dir, String id, String extension) throws IOException {
+        Path audio = dir.resolve(id + extension);
+        if (!Files.exists(audio))
+            Files.write(audio, ("audio-" + id).getBytes(StandardCharsets.UTF_8));
+        return new ProcessingTask(id, audio.toString(), "セリフ" + id);
+    }
+
+    static ProcessingTask task(Path dir, String id) throws IOException {
+        return task(dir, id, ".wav");
+    }
+
+    /**
+     * 指定したIDのタスクだけエラーを返すようにする（空なら全件成功）
+     * @param ids エラーにするタスクのID
+     */
+    void failing(String... ids) {
+        failing.clear();
+        failing.addAll(List.of(ids));
+    }
+
+    /**
+     * これまでに渡されたタスクのID
+     * @return 渡された順のID
+     */
+    List<String> calls() {
+        return calls;
+    }
+
+    @Override
+    public PythonResult process(ProcessingTask task) {
+        calls.add(task.id);
+        PythonResult r = new PythonResult();
+        r.id = task.id;
+        r.script_text = task.scriptText;
+        if (failing.contains(task.id))
+            r.error = "failed";
+        else
+            r.recognized_text = "認識:" + task.id;
+        return r;
+    }
+}
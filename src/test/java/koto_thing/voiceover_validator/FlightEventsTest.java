@@ -0,0 +1,63 @@
+package koto_thing.voiceover_validator;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 実行の記録に、タスクごとのJFRイベントが入ることを確認するテスト
+ */
+public class FlightEventsTest {
+
+    @Test
+    public void recordingContainsOneDispatchEventPerTask() throws Exception {
+        // 音声ファイルは存在しないパスにし、ファイルサイズが -1 になることも確かめる
+        List<ProcessingTask> tasks = new ArrayList<>();
+        for (int i = 0; i < 6; i++)
+            tasks.add(new ProcessingTask("t" + i, "missing/t" + i + ".wav", ""));
+
+        TaskProcessor echo = task -> {
+            PythonResult r = new PythonResult();
+            r.id = task.id;
+            if (task.id.equals("t3"))
+                r.error = "failed";
+            return r;
+        };
+
+        Path file = Files.createTempFile("vvt_test_", ".jfr");
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable(FlightEvents.TaskDispatch.class);
+            recording.start();
+            new ShardedDispatcher(echo, 2, task -> 1).run(tasks, (index, res) -> {}, () -> false);
+            recording.stop();
+            recording.dump(file);
+            events = RecordingFile.readAllEvents(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+
+        Set<String> ids = new TreeSet<>();
+        String errorStatus = null;
+        for (RecordedEvent e : events) {
+            if (!e.getEventType().getName().equals("koto_thing.voiceover_validator.TaskDispatch"))
+                continue;
+            ids.add(e.getString("taskId"));
+            assertEquals(-1, e.getLong("fileSize"));
+            if (e.getString("taskId").equals("t3"))
+                errorStatus = e.getString("status");
+        }
+        assertEquals(Set.of("t0", "t1", "t2", "t3", "t4", "t5"), ids);
+        assertEquals("error", errorStatus);
+    }
+}
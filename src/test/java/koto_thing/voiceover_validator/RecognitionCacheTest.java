@@ -0,0 +1,48 @@
+package koto_thing.voiceover_validator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RecognitionCache のキーに無音カットの設定が入ることを確認するテスト
+ */
+public class RecognitionCacheTest {
+
+    private static final PythonWorkerPool.Config CONFIG = FakeRecognizer.CONFIG;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void keyKeepsOldFormatWithoutTrim() {
+        AudioPreprocessor.Settings off = new AudioPreprocessor.Settings(false, -45, 200);
+        assertEquals("abc/whisper/small/ja", RecognitionCache.key("abc", CONFIG, off.key()));
+        assertEquals("abc/whisper/small/ja/trim:-45.0:200",
+                RecognitionCache.key("abc", CONFIG, AudioPreprocessor.Settings.DEFAULT.key()));
+    }
+
+    @Test
+    public void changingTrimSettingsRecognizesWavAgainButNotMp3() throws Exception {
+        FakeRecognizer worker = new FakeRecognizer();
+        RecognitionCache cache = new RecognitionCache(dir.toFile());
+        AudioPreprocessor.Settings loose = new AudioPreprocessor.Settings(true, -45, 200);
+        AudioPreprocessor.Settings tight = new AudioPreprocessor.Settings(true, -30, 50);
+        ProcessingTask a = FakeRecognizer.task(dir, "a", ".wav");
+        ProcessingTask b = FakeRecognizer.task(dir, "b", ".mp3");
+
+        cache.wrap(worker, CONFIG, loose).process(a);
+        cache.wrap(worker, CONFIG, loose).process(b);
+        assertEquals("認識:a", cache.wrap(worker, CONFIG, loose).process(a).recognized_text);
+        assertEquals(List.of("a", "b"), worker.calls());
+
+        // WAVは切り出し方が変わるので認識し直し、Java側で変換しないmp3はキャッシュを使う
+        cache.wrap(worker, CONFIG, tight).process(a);
+        assertEquals("認識:b", cache.wrap(worker, CONFIG, tight).process(b).recognized_text);
+        assertEquals(List.of("a", "b", "a"), worker.calls());
+    }
+}
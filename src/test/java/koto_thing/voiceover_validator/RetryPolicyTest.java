@@ -0,0 +1,108 @@
+package koto_thing.voiceover_validator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RetryPolicy の再試行と、Quarantine による隔離を確認するテスト
+ */
+public class RetryPolicyTest {
+
+    // 待ち時間を短くした設定（3回まで試行）
+    private static final RetryPolicy POLICY = new RetryPolicy(0, 3, 1);
+    private static final ProcessingTask TASK = new ProcessingTask("a", "missing/a.wav", "セリフ");
+
+    private final Quarantine quarantine = new Quarantine(RetryPolicy.QUARANTINE_STRIKES);
+    // 次に返す結果（空になったら成功を返す）
+    private final Deque<PythonResult> outcomes = new ArrayDeque<>();
+    private int calls;
+
+    private final TaskProcessor worker = task -> {
+        calls++;
+        PythonResult r = outcomes.poll();
+        if (r != null)
+            return r;
+        PythonResult ok = new PythonResult();
+        ok.id = task.id;
+        ok.recognized_text = "セリフ";
+        return ok;
+    };
+
+    private static PythonResult failure(String reason, boolean retryable, boolean workerFailure) {
+        PythonResult r = PythonResult.error(TASK, reason);
+        r.retryable = retryable;
+        r.workerFailure = workerFailure;
+        return r;
+    }
+
+    private void enqueue(int n, String reason, boolean retryable, boolean workerFailure) {
+        for (int i = 0; i < n; i++)
+            outcomes.add(failure(reason, retryable, workerFailure));
+    }
+
+    @Test
+    public void nonRetryableErrorIsReturnedAtOnce() throws Exception {
+        enqueue(1, "音声ファイルを読み込めません", false, false);
+        PythonResult res = POLICY.wrap(worker, quarantine).process(TASK);
+        assertEquals(1, calls);
+        assertEquals("音声ファイルを読み込めません", res.error);
+    }
+
+    @Test
+    public void retryableErrorIsRetriedUpToMaxAttempts() throws Exception {
+        enqueue(5, "通信エラー", true, false);
+        PythonResult res = POLICY.wrap(worker, quarantine).process(TASK);
+        assertEquals(3, calls);
+        assertEquals("通信エラー (3回試行)", res.error);
+        // ワーカーの異常ではないので隔離しない
+        assertEquals(0, quarantine.size());
+    }
+
+    @Test
+    public void retrySucceedsAfterTransientError() throws Exception {
+        enqueue(1, "通信エラー", true, false);
+        PythonResult res = POLICY.wrap(worker, quarantine).process(TASK);
+        assertEquals(2, calls);
+        assertNull(res.error);
+    }
+
+    @Test
+    public void repeatedWorkerFailuresQuarantineFileAndSkipNextCall() throws Exception {
+        enqueue(RetryPolicy.QUARANTINE_STRIKES, "タイムアウトしました", true, true);
+        TaskProcessor stage = POLICY.wrap(worker, quarantine);
+        PythonResult res = stage.process(TASK);
+        assertEquals(RetryPolicy.QUARANTINE_STRIKES, calls);
+        assertEquals("タイムアウトしました (2回試行, 隔離しました)", res.error);
+        assertEquals(1, quarantine.size());
+
+        // 隔離したファイルはワーカーに渡さない
+        PythonResult skipped = stage.process(TASK);
+        assertEquals(RetryPolicy.QUARANTINE_STRIKES, calls);
+        assertTrue(skipped.error.startsWith("隔離済みのためスキップ: タイムアウトしました"), skipped.error);
+    }
+
+    @Test
+    public void successResetsWorkerFailureCount() throws Exception {
+        // 再試行しない設定で、実行をまたいで1回ずつ異常になる場合
+        TaskProcessor stage = new RetryPolicy(0, 1, 1).wrap(worker, quarantine);
+        for (int run = 0; run < 3; run++) {
+            enqueue(1, "ワーカーが異常終了しました", true, true);
+            assertNotNull(stage.process(TASK).error);
+            assertNull(stage.process(TASK).error);
+        }
+        assertEquals(6, calls);
+        assertEquals(0, quarantine.size());
+        assertNull(quarantine.reason(TASK.audioPath));
+
+        // 成功を挟まずに続いた場合は隔離する
+        enqueue(2, "ワーカーが異常終了しました", true, true);
+        List<String> errors = List.of(stage.process(TASK).error, stage.process(TASK).error);
+        assertEquals("ワーカーが異常終了しました (隔離しました)", errors.get(1));
+        assertEquals(1, quarantine.size());
+    }
+}
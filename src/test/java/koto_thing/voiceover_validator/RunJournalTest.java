@@ -0,0 +1,189 @@
+package koto_thing.voiceover_validator;
+
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RunJournal の記録・再生と、クラッシュ後の読み込みを確認するテスト
+ */
+public class RunJournalTest {
+
+    private static final PythonWorkerPool.Config CONFIG = FakeRecognizer.CONFIG;
+    private static final AudioPreprocessor.Settings AUDIO = AudioPreprocessor.Settings.DEFAULT;
+
+    @TempDir
+    Path dir;
+    private Path journalDir;
+    private List<ProcessingTask> tasks;
+    // "bad" だけエラーを返す
+    private final FakeRecognizer worker = new FakeRecognizer();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        journalDir = dir.resolve("journal");
+        tasks = new ArrayList<>();
+        for (String id : new String[] { "a", "b", "bad" })
+            tasks.add(FakeRecognizer.task(dir, id));
+        worker.failing("bad");
+    }
+
+    private void runAll(boolean resume) throws Exception {
+        try (RunJournal journal = RunJournal.open(journalDir, CONFIG, AUDIO, tasks, resume)) {
+            TaskProcessor stage = journal.wrap(worker);
+            for (ProcessingTask t : tasks)
+                stage.process(t);
+        }
+    }
+
+    @Test
+    public void resumeReplaysRecordedResultsButNotErrors() throws Exception {
+        runAll(false);
+        assertEquals(3, worker.calls().size());
+        // エラーになったタスクは記録しない
+        assertEquals(2, RunJournal.countResumable(journalDir, CONFIG, AUDIO, tasks));
+
+        worker.calls().clear();
+        try (RunJournal journal = RunJournal.open(journalDir, CONFIG, AUDIO, tasks, true)) {
+            assertEquals(2, journal.resumable());
+            TaskProcessor stage = journal.wrap(worker);
+            PythonResult a = stage.process(tasks.get(0));
+            PythonResult bad = stage.process(tasks.get(2));
+
+            assertTrue(a.replayed);
+            assertEquals("認識:a", a.recognized_text);
+            assertEquals("セリフa", a.script_text);
+            assertFalse(bad.replayed);
+            assertEquals(1, journal.replayed());
+        }
+        assertEquals(1, worker.calls().size());
+    }
+
+    @Test
+    public void openWithoutResumeDiscardsRecord() throws Exception {
+        runAll(false);
+        try (RunJournal journal = RunJournal.open(journalDir, CONFIG, AUDIO, tasks, false)) {
+            assertEquals(0, journal.resumable());
+        }
+        assertEquals(0, RunJournal.countResumable(journalDir, CONFIG, AUDIO, tasks));
+    }
+
+    @Test
+    public void tornLastLineIsTruncatedBeforeAppending() throws Exception {
+        runAll(false);
+        Path file = RunJournal.pathFor(journalDir, CONFIG, AUDIO, tasks);
+        // 書き込み途中でクラッシュした行
+        Files.writeString(file, "{\"key\":\"0123\",\"resu", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        // 再開後に追記した結果が、切れた行とつながらずに読めること
+        worker.calls().clear();
+        worker.failing();
+        runAll(true);
+        assertEquals(1, worker.calls().size());
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        for (String line : lines)
+            assertTrue(JsonParser.parseString(line).isJsonObject(), line);
+        assertEquals(3, RunJournal.countResumable(journalDir, CONFIG, AUDIO, tasks));
+    }
+
+    @Test
+    public void changedAudioSizeOrTimeInvalidatesKey() throws Exception {
+        runAll(false);
+        ProcessingTask a = tasks.get(0);
+        Path audio = Path.of(a.audioPath);
+        String before = RunJournal.key(a);
+
+        Files.setLastModifiedTime(audio, FileTime.fromMillis(Files.getLastModifiedTime(audio).toMillis() + 5_000));
+        String touched = RunJournal.key(a);
+        assertNotEquals(before, touched);
+
+        Files.write(audio, "longer content".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(audio, FileTime.fromMillis(Files.getLastModifiedTime(audio).toMillis() + 5_000));
+        assertNotEquals(touched, RunJournal.key(a));
+
+        // 入力が変わったので、前回の記録からは再開しない
+        assertEquals(0, RunJournal.countResumable(journalDir, CONFIG, AUDIO, tasks));
+    }
+
+    @Test
+    public void finishDeletesJournal() throws Exception {
+        RunJournal journal = RunJournal.open(journalDir, CONFIG, AUDIO, tasks, false);
+        journal.wrap(worker).process(tasks.get(0));
+        Path file = RunJournal.pathFor(journalDir, CONFIG, AUDIO, tasks);
+        assertTrue(Files.isRegularFile(file));
+
+        journal.finish();
+        assertFalse(Files.exists(file));
+        assertEquals(0, RunJournal.countResumable(journalDir, CONFIG, AUDIO, tasks));
+    }
+
+    @Test
+    public void resultsInFlightWhenCancelledAreRecorded() throws Exception {
+        tasks.add(FakeRecognizer.task(dir, "c"));
+        tasks.add(FakeRecognizer.task(dir, "d"));
+        worker.failing();
+        // 2件が処理中になったところで止める
+        CountDownLatch inFlight = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        TaskProcessor slow = task -> {
+            inFlight.countDown();
+            release.await();
+            return worker.process(task);
+        };
+
+        AtomicBoolean cancelled = new AtomicBoolean();
+        RunJournal journal = RunJournal.open(journalDir, CONFIG, AUDIO, tasks, false);
+        try {
+            CompletableFuture<List<PythonResult>> run = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return new ShardedDispatcher(journal.wrap(slow), 2, task -> 1).run(tasks, (index, res) -> {}, cancelled::get);
+                } catch (Exception ex) {
+                    throw new RuntimeException(ex);
+                }
+            });
+            assertTrue(inFlight.await(5, TimeUnit.SECONDS));
+            cancelled.set(true);
+            release.countDown();
+
+            // 処理中だった分が終わるのを待ってから閉じる
+            assertEquals(2, run.get(5, TimeUnit.SECONDS).size());
+        } finally {
+            journal.close();
+        }
+        assertEquals(2, worker.calls().size());
+        assertEquals(2, RunJournal.countResumable(journalDir, CONFIG, AUDIO, tasks));
+    }
+
+    @Test
+    public void resultsAfterCloseAreNotRecorded() throws Exception {
+        RunJournal journal = RunJournal.open(journalDir, CONFIG, AUDIO, tasks, false);
+        TaskProcessor stage = journal.wrap(worker);
+        stage.process(tasks.get(0));
+        journal.close();
+        // 閉じた後に届いた結果は捨てられる（閉じる前に処理中の分を待つ必要がある）
+        assertEquals("認識:b", stage.process(tasks.get(1)).recognized_text);
+        assertEquals(1, RunJournal.countResumable(journalDir, CONFIG, AUDIO, tasks));
+    }
+
+    @Test
+    public void trimSettingsSelectSeparateJournal() {
+        AudioPreprocessor.Settings off = new AudioPreprocessor.Settings(false, -45, 200);
+        assertNotEquals(RunJournal.pathFor(journalDir, CONFIG, AUDIO, tasks), RunJournal.pathFor(journalDir, CONFIG, off, tasks));
+    }
+}
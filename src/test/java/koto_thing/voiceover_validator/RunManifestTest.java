@@ -0,0 +1,148 @@
+package koto_thing.voiceover_validator;
+
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RunManifest の差分の分類（新規・台本変更・音声変更・引き継ぎ）と、保存する記録の範囲を確認するテスト
+ */
+public class RunManifestTest {
+
+    private static final PythonWorkerPool.Config CONFIG = FakeRecognizer.CONFIG;
+    private static final AudioPreprocessor.Settings AUDIO = AudioPreprocessor.Settings.DEFAULT;
+
+    @TempDir
+    Path dir;
+    private Path manifestDir;
+    private Path script;
+    private final FakeRecognizer worker = new FakeRecognizer();
+
+    @BeforeEach
+    public void setUp() {
+        manifestDir = dir.resolve("manifest");
+        script = dir.resolve("script.csv");
+    }
+
+    private ProcessingTask task(String id) throws Exception {
+        return FakeRecognizer.task(dir, id);
+    }
+
+    /**
+     * タスクを全件処理して保存し、差分の内訳を返す
+     */
+    private String run(boolean incremental, List<ProcessingTask> tasks) throws Exception {
+        return run(incremental, tasks, tasks);
+    }
+
+    private String run(boolean incremental, List<ProcessingTask> all, List<ProcessingTask> processed) throws Exception {
+        RunManifest manifest = RunManifest.open(manifestDir, CONFIG, AUDIO, script, incremental);
+        TaskProcessor stage = manifest.wrap(worker);
+        for (ProcessingTask t : processed)
+            stage.process(t);
+        manifest.save(all);
+        return manifest.summary();
+    }
+
+    private static void shiftMtime(Path file) throws Exception {
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 10_000));
+    }
+
+    @Test
+    public void classifiesAddedChangedAndCarriedTasks() throws Exception {
+        ProcessingTask a = task("a");
+        ProcessingTask b = task("b");
+        ProcessingTask c = task("c");
+        run(false, List.of(a, b, c));
+
+        // b は台本を直し、c は録り直し（サイズが変わる）、d は新規
+        ProcessingTask b2 = new ProcessingTask("b", b.audioPath, "セリフb（修正）");
+        Files.write(Path.of(c.audioPath), "re-recorded c".getBytes(StandardCharsets.UTF_8));
+        ProcessingTask d = task("d");
+
+        worker.calls().clear();
+        String summary = run(true, List.of(a, b2, c, d));
+        assertEquals("新規 1件, 音声変更 1件, 台本変更 1件, 引き継ぎ 1件", summary);
+        assertEquals(List.of("b", "c", "d"), worker.calls());
+    }
+
+    @Test
+    public void carriedResultIsMarkedReplayed() throws Exception {
+        ProcessingTask a = task("a");
+        run(false, List.of(a));
+
+        RunManifest manifest = RunManifest.open(manifestDir, CONFIG, AUDIO, script, true);
+        PythonResult res = manifest.wrap(worker).process(a);
+        assertTrue(res.replayed);
+        assertEquals("認識:a", res.recognized_text);
+        assertEquals(1, manifest.carried());
+    }
+
+    @Test
+    public void mtimeOnlyChangeFallsBackToContentHash() throws Exception {
+        ProcessingTask a = task("a");
+        ProcessingTask b = task("b");
+        run(false, List.of(a, b));
+
+        // a はコピーし直しただけ（内容は同じ）、b は同じサイズのまま内容が変わった
+        shiftMtime(Path.of(a.audioPath));
+        Files.write(Path.of(b.audioPath), "audio-X".getBytes(StandardCharsets.UTF_8));
+        shiftMtime(Path.of(b.audioPath));
+
+        worker.calls().clear();
+        assertEquals("新規 0件, 音声変更 1件, 台本変更 0件, 引き継ぎ 1件", run(true, List.of(a, b)));
+        assertEquals(List.of("b"), worker.calls());
+
+        // 更新日時を記録し直したので、次回も引き継ぐ
+        worker.calls().clear();
+        assertEquals("新規 0件, 音声変更 0件, 台本変更 0件, 引き継ぎ 2件", run(true, List.of(a, b)));
+        assertTrue(worker.calls().isEmpty());
+    }
+
+    @Test
+    public void saveDropsTasksRemovedFromScript() throws Exception {
+        ProcessingTask a = task("a");
+        ProcessingTask b = task("b");
+        run(false, List.of(a, b));
+        run(false, List.of(a));
+
+        Path file = RunManifest.pathFor(manifestDir, CONFIG, AUDIO, script);
+        String json = Files.readString(file, StandardCharsets.UTF_8);
+        assertEquals(1, JsonParser.parseString(json).getAsJsonObject().getAsJsonArray("entries").size());
+
+        // 台本に戻した b は新規として扱う
+        assertEquals("新規 1件, 音声変更 0件, 台本変更 0件, 引き継ぎ 1件", run(true, List.of(a, b)));
+    }
+
+    @Test
+    public void unprocessedAndFailedTasksKeepPreviousRecord() throws Exception {
+        ProcessingTask a = task("a");
+        ProcessingTask b = task("b");
+        ProcessingTask c = task("c");
+        run(false, List.of(a, b, c));
+
+        // 差分検証なしの実行で、a はエラー、b まで処理したところで中止
+        worker.failing("a");
+        run(false, List.of(a, b, c), List.of(a, b));
+        worker.failing();
+
+        worker.calls().clear();
+        assertEquals("新規 0件, 音声変更 0件, 台本変更 0件, 引き継ぎ 3件", run(true, List.of(a, b, c)));
+        assertTrue(worker.calls().isEmpty());
+    }
+
+    @Test
+    public void trimSettingsSelectSeparateManifest() {
+        AudioPreprocessor.Settings off = new AudioPreprocessor.Settings(false, -45, 200);
+        assertNotEquals(RunManifest.pathFor(manifestDir, CONFIG, AUDIO, script), RunManifest.pathFor(manifestDir, CONFIG, off, script));
+    }
+}
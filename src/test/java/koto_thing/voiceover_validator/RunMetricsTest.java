@@ -0,0 +1,82 @@
+package koto_thing.voiceover_validator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RunMetrics の分位点の精度と、処理段階ごとの集計・書き出しを確認するテスト
+ */
+public class RunMetricsTest {
+
+    @Test
+    public void histogramPercentilesStayWithinBucketError() {
+        RunMetrics.Histogram h = new RunMetrics.Histogram();
+        // 1ms〜10000ms を1msずつ
+        for (int ms = 1; ms <= 10_000; ms++)
+            h.record(ms * 1_000_000L);
+
+        assertEquals(10_000, h.count());
+        assertEquals(10_000_000_000L, h.max());
+        for (double q : new double[] { 0.5, 0.9, 0.99 }) {
+            double expected = q * 10_000 * 1e6;
+            double actual = h.percentile(q);
+            assertTrue(actual >= expected, "q=" + q + " actual=" + actual);
+            assertTrue(actual <= expected * 1.035, "q=" + q + " actual=" + actual);
+        }
+        assertEquals(10_000_000_000L, h.percentile(1.0));
+    }
+
+    @Test
+    public void bucketIndexAndUpperBoundAgree() {
+        for (long v : new long[] { 0, 1, 63, 64, 65, 127, 128, 1000, 123_456, 9_999_999_999L }) {
+            int i = RunMetrics.Histogram.index(v);
+            assertTrue(RunMetrics.Histogram.upperBound(i) >= v, "v=" + v);
+            if (i > 0)
+                assertTrue(RunMetrics.Histogram.upperBound(i - 1) < v, "v=" + v);
+        }
+    }
+
+    @Test
+    public void wrapRecordsStagesAndSkipsReplayedResults() throws Exception {
+        Map<String, String> labels = new LinkedHashMap<>();
+        labels.put("host", "pc1");
+        labels.put("engine", "Whisper");
+        RunMetrics metrics = new RunMetrics(labels);
+
+        TaskProcessor stages = metrics.wrap(task -> {
+            PythonResult r = new PythonResult();
+            r.id = task.id;
+            r.replayed = task.id.startsWith("old");
+            r.addTime(RunMetrics.Stage.RECOGNIZE, 40_000_000L);
+            r.addTime(RunMetrics.Stage.SCORE, 2_000_000L);
+            if (task.id.equals("ng"))
+                r.error = "failed";
+            return r;
+        });
+
+        metrics.start();
+        for (String id : new String[] { "a", "b", "ng", "old1" })
+            stages.process(new ProcessingTask(id, id + ".wav", ""));
+        metrics.finish();
+
+        assertEquals(4, metrics.tasks());
+        assertEquals(1, metrics.errors());
+        assertEquals(1, metrics.replayed());
+        assertEquals(3, metrics.histogram(RunMetrics.Stage.RECOGNIZE).count());
+        assertEquals(3, metrics.histogram(RunMetrics.Stage.TOTAL).count());
+        assertEquals(3, metrics.histogram(RunMetrics.Stage.QUEUE).count());
+        assertEquals(0, metrics.histogram(RunMetrics.Stage.DECODE).count());
+
+        String prom = metrics.toPrometheus();
+        assertTrue(prom.contains("vvt_stage_duration_seconds{host=\"pc1\",engine=\"Whisper\",stage=\"score\",quantile=\"0.5\"} 0.002"), prom);
+        assertTrue(prom.contains("vvt_stage_duration_seconds_count{host=\"pc1\",engine=\"Whisper\",stage=\"recognize\"} 3"), prom);
+        assertTrue(prom.contains("vvt_tasks_total{host=\"pc1\",engine=\"Whisper\"} 4"), prom);
+        assertFalse(prom.contains("stage=\"decode\""), prom);
+
+        assertEquals(3, metrics.toJson().getAsJsonObject("stages").getAsJsonObject("score").get("count").getAsInt());
+    }
+}
@@ -0,0 +1,45 @@
+package koto_thing.voiceover_validator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ShardedDispatcher の割り当て（長いものから順）と並べ直しを確認するテスト
+ */
+public class ShardedDispatcherTest {
+
+    @Test
+    public void planPutsLongestTasksFirstAndBalancesLoad() {
+        // 先頭から交互に配ると 90+30+1+1 と 30+30+1+1 に偏るが、長い順なら 92 と 92 になる
+        double[] costs = { 1, 1, 90, 1, 1, 30, 30, 30 };
+        List<ConcurrentLinkedDeque<Integer>> queues = ShardedDispatcher.plan(costs, 2);
+        assertEquals(2, queues.size());
+        assertEquals(List.of(2, 0, 3), new ArrayList<>(queues.get(0)));
+        assertEquals(List.of(5, 6, 7, 1, 4), new ArrayList<>(queues.get(1)));
+    }
+
+    @Test
+    public void runReturnsResultsInTaskOrder() throws Exception {
+        List<ProcessingTask> tasks = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+            tasks.add(new ProcessingTask(String.valueOf(i), "a" + i + ".wav", ""));
+
+        TaskProcessor echo = task -> {
+            Thread.sleep(Integer.parseInt(task.id) % 3);
+            PythonResult r = new PythonResult();
+            r.id = task.id;
+            return r;
+        };
+        ShardedDispatcher dispatcher = new ShardedDispatcher(echo, 4, task -> Integer.parseInt(task.id) % 5);
+        List<PythonResult> results = dispatcher.run(tasks, (index, res) -> assertEquals(tasks.get(index).id, res.id), () -> false);
+
+        assertEquals(20, results.size());
+        for (int i = 0; i < 20; i++)
+            assertEquals(String.valueOf(i), results.get(i).id);
+    }
+}
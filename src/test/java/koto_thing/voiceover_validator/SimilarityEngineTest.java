@@ -0,0 +1,91 @@
+package koto_thing.voiceover_validator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SimilarityEngine が difflib.SequenceMatcher と同じ結果を返すことを確認するテスト
+ * 期待値は test_data の台本（test_script.csv / test_batch_input.json）を元に Python 3 の difflib で算出したもの
+ */
+public class SimilarityEngineTest {
+    private final SimilarityEngine engine = SimilarityEngine.difflibCompatible();
+
+    @Test
+    public void ratioMatchesDifflibOnTestDataScripts() {
+        Object[][] cases = {
+                { "おめでとうございます", "おめでとうございます", 1.0 },
+                { "おめでとうございます", "お目出度うございます", 0.7 },
+                { "合格です", "合格です", 1.0 },
+                { "合格です", "ごうかくです", 0.4 },
+                { "こんにちは、これはテストです", "こんにちはこれはテストです", 0.9629629629629629 },
+                { "今日は良い天気ですね", "今日はいい天気ですね", 0.9 },
+                { "音声認識のテストを行います", "音声認識のテストをおこないます", 0.8571428571428571 },
+                { "複雑な文章での認識精度を確認しています", "複雑な文章での認識制度を確認しています", 0.9473684210526315 },
+                { "数字の123と456を正確に認識できるでしょうか", "数字の百二十三と四百五十六を正確に認識できるでしょうか", 0.7058823529411765 },
+                { "これはテストです", "", 0.0 },
+                { "", "", 1.0 },
+                { "コンピュータ", "こんぴゅーた", 0.16666666666666666 },
+                { "hello", "さようなら", 0.0 },
+        };
+
+        for (Object[] c : cases) {
+            assertEquals((double) c[2], engine.ratio((String) c[0], (String) c[1]), 0.0, c[0] + " / " + c[1]);
+        }
+    }
+
+    @Test
+    public void autojunkMatchesDifflibOnLongLines() {
+        // 長さ200以上では difflib の autojunk により頻出文字が照合から外れる
+        String a = "あいうえお".repeat(50);
+        String b = "あいうえお".repeat(30) + "かきくけこ" + "あいうえお".repeat(19);
+
+        assertEquals(0.6, engine.ratio(a, b), 0.0);
+        assertEquals(0.98, new SimilarityEngine(SimilarityEngine.Mode.NO_AUTOJUNK).ratio(a, b), 0.0);
+    }
+
+    @Test
+    public void opcodesMatchDifflib() {
+        List<SimilarityEngine.Opcode> ops = engine.opcodes("数字の123と456を正確に認識できるでしょうか", "数字の百二十三と四百五十六を正確に認識できるでしょうか");
+
+        assertEquals(List.of(
+                new SimilarityEngine.Opcode(SimilarityEngine.Tag.EQUAL, 0, 3, 0, 3),
+                new SimilarityEngine.Opcode(SimilarityEngine.Tag.REPLACE, 3, 6, 3, 7),
+                new SimilarityEngine.Opcode(SimilarityEngine.Tag.EQUAL, 6, 7, 7, 8),
+                new SimilarityEngine.Opcode(SimilarityEngine.Tag.REPLACE, 7, 10, 8, 13),
+                new SimilarityEngine.Opcode(SimilarityEngine.Tag.EQUAL, 10, 24, 13, 27)), ops);
+    }
+
+    @Test
+    public void diffShowsCharacterLevelChanges() {
+        String[] diff = engine.diff("こんにちは、これはテストです", "こんにちはこれはテストです");
+
+        assertArrayEquals(new String[] { "  こんにちは", "- 、", "  これはテストです" }, diff);
+    }
+
+    @Test
+    public void scoreUsesNormalizedTextFromProfile() {
+        ScoringProfile profile = new ScoringProfile(0.9, true, true, true);
+        PythonResult res = new PythonResult();
+        res.script_text = "コンピュータ、テスト！";
+        res.recognized_text = "ｺﾝﾋﾟｭｰﾀ てすと";
+
+        engine.score(res, profile);
+
+        assertEquals(1.0, res.similarity, 0.0);
+        assertEquals("success", profile.status(res.similarity));
+        assertEquals("warning", profile.status(0.89));
+    }
+
+    @Test
+    public void scoreLeavesErrorResultsUntouched() {
+        PythonResult res = PythonResult.error(new ProcessingTask("1", "a.wav", "合格です"), "failed");
+
+        engine.score(res);
+
+        assertEquals(0.0, res.similarity);
+        assertEquals("failed", res.error);
+    }
+}
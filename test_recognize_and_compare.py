@@ -88,6 +88,37 @@ class TestRecognizeAndCompare(unittest.TestCase):
             with self.assertRaises(Exception):
                 recognize_audio_google(self.test_audio_path, "ja-JP")
             
+    @patch('RecognizeAndCompare.sr')
+    def test_recognize_audio_google_request_error_is_retryable(self, mock_sr):
+        """通信エラーは再試行可能として返すテスト"""
+        class RequestError(Exception):
+            pass
+
+        mock_recognizer = MagicMock()
+        mock_sr.Recognizer.return_value = mock_recognizer
+        mock_recognizer.recognize_google.side_effect = RequestError("connection reset")
+        task = {"id": "test001", "audioPath": self.test_audio_path, "scriptText": self.test_text1}
+
+        result = process_task(task, "google", "ja-JP", "none")
+        self.assertIn("connection reset", result["error"])
+        self.assertTrue(result["retryable"])
+
+        mock_recognizer.recognize_google.side_effect = ValueError("unknown value")
+        result = process_task(task, "google", "ja-JP", "none")
+        self.assertFalse(result["retryable"])
+
+    @patch('RecognizeAndCompare.sr')
+    def test_recognize_audio_google_uses_decoded_pcm(self, mock_sr):
+        """Java側で変換済みのPCMを渡した場合はファイルを読まないことのテスト"""
+        mock_recognizer = MagicMock()
+        mock_recognizer.recognize_google.return_value = self.test_text1
+        mock_sr.Recognizer.return_value = mock_recognizer
+
+        result = recognize_audio_google(self.test_audio_path, "ja-JP", b"\x00\x00\x01\x00", 16000)
+        self.assertEqual(result, self.test_text1)
+        mock_sr.AudioData.assert_called_once_with(b"\x00\x00\x01\x00", 16000, 2)
+        mock_sr.AudioFile.assert_not_called()
+
     @patch('RecognizeAndCompare.whisper')  # whisperモジュール全体をパッチ
     def test_recognize_audio_whisper_success(self, mock_whisper):
         """Whisper音声認識の成功テスト"""
@@ -131,6 +162,38 @@ class TestRecognizeAndCompare(unittest.TestCase):
             self.assertEqual(result["recognized_text"], self.test_text1)
             self.assertIsNone(result["error"])
 
+    def test_process_task_decodes_pcm_field(self):
+        """タスクの "pcm" フィールド（base64）が認識に渡されることのテスト"""
+        task = {
+            "id": "test001",
+            "audioPath": self.test_audio_path,
+            "scriptText": self.test_text1,
+            "pcm": "AAABAA==",
+            "sampleRate": 16000
+        }
+
+        with patch('RecognizeAndCompare.recognize_audio_google', return_value=self.test_text1) as mock_google:
+            result = process_task(task, "google", "ja-JP", "none")
+            self.assertIsNone(result["error"])
+            mock_google.assert_called_once_with(self.test_audio_path, "ja-JP", b"\x00\x00\x01\x00", 16000)
+
+    def test_process_task_reports_stages(self):
+        """処理段階の通知のテスト"""
+        task = {
+            "id": "test001",
+            "audioPath": self.test_audio_path,
+            "scriptText": self.test_text1
+        }
+        stages = []
+
+        with patch('RecognizeAndCompare.recognize_audio_google', return_value=self.test_text1):
+            process_task(task, "google", "ja-JP", "none", on_stage=stages.append)
+            self.assertEqual(stages, ["decode", "recognize", "score"])
+
+            stages.clear()
+            process_task(task, "google", "ja-JP", "none", score=False, on_stage=stages.append)
+            self.assertEqual(stages, ["decode", "recognize"])
+
 
 class TestIntegration(unittest.TestCase):
     """統合テストケース"""